@@ -1,4 +1,5 @@
 import axios from 'axios'
+import type { ConversationPage } from '@/types'
 
 // 自定义错误类
 class ApiErrorClass extends Error {
@@ -102,10 +103,10 @@ export const chatAPI = {
     }
   },
 
-  // 获取所有对话列表
-  getConversations: async (): Promise<Array<{conversationId: string, messages: any[]}>> => {
+  // 游标分页获取对话列表
+  getConversations: async (cursor?: string, size = 20): Promise<ConversationPage> => {
     try {
-      const response = await apiClient.get('/chat/conversations')
+      const response = await apiClient.get('/chat/conversations', { params: { cursor, size } })
       return response.data
     } catch (error) {
       console.error('获取对话列表失败:', error)
@@ -138,70 +139,90 @@ export const chatAPI = {
   sendMessageWithConversationStream: async (
       conversationId: string,
       message: string,
-      onDelta: (chunk: string) => void
+      onDelta: (chunk: string) => void,
+      // 重试同一条消息时传入相同的 requestId，服务端不会重复写入历史
+      requestId: string = crypto.randomUUID()
   ): Promise<void> => {
     const baseUrl = import.meta.env.VITE_API_BASE_URL || '/api';
     const url = `${baseUrl}/chat/chatMemory`;
 
-    const controller = new AbortController();
-
-    try {
-      const response = await fetch(url, {
-        method: 'POST',
-        headers: {
-          'Content-Type': 'application/json',
-          Accept: 'text/event-stream',
-        },
-        body: JSON.stringify({
-          conversationId,
-          inputMsg: message,
-        }),
-        signal: controller.signal,
-      });
-
-      if (!response.ok || !response.body) {
-        throw new Error(`请求失败: ${response.status}`);
-      }
+    // 最后收到的事件ID，连接中断后带 Last-Event-ID 重连，从服务端缓冲续传
+    let lastEventId: string | undefined;
+    let finished = false;
+
+    for (let attempt = 0; !finished; attempt++) {
+      const controller = new AbortController();
+      try {
+        const response = await fetch(url, {
+          method: 'POST',
+          headers: {
+            'Content-Type': 'application/json',
+            // 排队已满等错误以 JSON 返回
+            Accept: 'text/event-stream, application/json',
+            ...(lastEventId ? {'Last-Event-ID': lastEventId} : {}),
+          },
+          body: JSON.stringify({
+            conversationId,
+            inputMsg: message,
+            requestId,
+          }),
+          signal: controller.signal,
+        });
+
+        if (!response.ok || !response.body) {
+          throw new Error(`请求失败: ${response.status}`);
+        }
 
-      const reader = response.body.getReader();
-      const decoder = new TextDecoder('utf-8');
+        const reader = response.body.getReader();
+        const decoder = new TextDecoder('utf-8');
 
-      let buffer = '';
-      let finished = false;
+        let buffer = '';
 
-      while (!finished) {
-        const {done, value} = await reader.read();
-        if (done) break;
+        while (!finished) {
+          const {done, value} = await reader.read();
+          if (done) break;
 
-        buffer += decoder.decode(value, {stream: true});
+          buffer += decoder.decode(value, {stream: true});
 
-        // 拆分 SSE 消息块（每个事件用 \n\n 结束）
-        const events = buffer.split('\n\n');
-        buffer = events.pop() || ''; // 保留最后不完整的部分
+          // 拆分 SSE 消息块（每个事件用 \n\n 结束）
+          const events = buffer.split('\n\n');
+          buffer = events.pop() || ''; // 保留最后不完整的部分
 
-        for (const event of events) {
-          const lines = event.split('\n');
-          const dataLines = lines
-              .filter(line => line.startsWith('data:'))
-              .map(line => line.replace(/^data:\s*/, ''));
+          for (const event of events) {
+            const lines = event.split('\n');
+            const idLine = lines.find(line => line.startsWith('id:'));
+            if (idLine) {
+              lastEventId = idLine.substring(3).trim();
+            }
+            const dataLines = lines
+                .filter(line => line.startsWith('data:'))
+                .map(line => line.replace(/^data:\s*/, ''));
 
-          const message = dataLines.join('\n').trim();
+            const message = dataLines.join('\n').trim();
 
-          if (message === '[DONE]') {
-            finished = true;
-            break;
-          }
+            if (message === '[DONE]') {
+              finished = true;
+              break;
+            }
 
-          if (message) {
-            onDelta(message);
+            if (message) {
+              onDelta(message);
+            }
           }
         }
+        if (!finished) {
+          throw new Error('连接已中断');
+        }
+      } catch (error) {
+        // 只重连一次，且必须已经收到过事件ID
+        if (finished || attempt > 0 || !lastEventId) {
+          console.error('流式请求出错:', error);
+          throw error;
+        }
+        console.warn('流式连接中断，尝试续传:', error);
+      } finally {
+        controller.abort();
       }
-    } catch (error) {
-      console.error('流式请求出错:', error);
-      throw error;
-    } finally {
-      controller.abort();
     }
   },
 
@@ -40,6 +40,12 @@ export interface ConversationSummary {
   messageCount: number
 }
 
+// 对话列表游标分页结果
+export interface ConversationPage {
+  items: ConversationSummary[]
+  nextCursor?: string
+}
+
 // 知识文件类型
 export interface KnowledgeFile {
   id: number
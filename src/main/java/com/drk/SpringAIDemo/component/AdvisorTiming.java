@@ -0,0 +1,211 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Advisor 耗时与追踪
+ * <p>
+ * 用 {@link #wrap(Advisor)} 包装已有的 Advisor，不修改其实现：通过替换传给它的调用链，
+ * 分别测出 Advisor 自身在调用下游之前（before）和下游返回之后（after）花费的时间，
+ * 记录到 chat.advisor.duration{advisor,phase,mode,outcome}，并为每次执行创建名为 chat.advisor 的 Observation（接入追踪后即为 span）。
+ * before + after 超过 budget-ms 时输出告警并累加 chat.advisor.over.budget。
+ * 流式调用中 after 为下游结束到该 Advisor 结束的时间（例如记忆 Advisor 在结束时汇总并保存回复）。
+ * 完成、取消和出错都会记录，outcome 标签取值同 ChatMetrics（completed / cancelled / error）。
+ * @Author drk
+ * @Date 2026/10/18 23:10
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class AdvisorTiming {
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    @Value("${chat.advisor.timing.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 单个 Advisor 自身耗时（before + after）的预算（毫秒）
+     */
+    @Value("${chat.advisor.timing.budget-ms:200}")
+    private long budgetMs;
+
+    public AdvisorTiming(MeterRegistry meterRegistry, ObjectProvider<ObservationRegistry> observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP);
+    }
+
+    /**
+     * 包装 Advisor；未启用或 Advisor 不同时支持 call 和 stream 时原样返回
+     */
+    public Advisor wrap(Advisor advisor) {
+        if (!enabled || advisor instanceof TimedAdvisor
+                || !(advisor instanceof CallAdvisor && advisor instanceof StreamAdvisor)) {
+            return advisor;
+        }
+        return new TimedAdvisor(advisor);
+    }
+
+    public List<Advisor> wrap(Advisor... advisors) {
+        return wrap(Arrays.asList(advisors));
+    }
+
+    public List<Advisor> wrap(List<Advisor> advisors) {
+        return advisors.stream().map(this::wrap).toList();
+    }
+
+    private void record(String advisor, String mode, String outcome, long beforeNanos, long afterNanos, Observation observation) {
+        timer(advisor, "before", mode, outcome).record(beforeNanos, TimeUnit.NANOSECONDS);
+        timer(advisor, "after", mode, outcome).record(afterNanos, TimeUnit.NANOSECONDS);
+        long selfMs = TimeUnit.NANOSECONDS.toMillis(beforeNanos + afterNanos);
+        observation.highCardinalityKeyValue("before.ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(beforeNanos)));
+        observation.highCardinalityKeyValue("after.ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(afterNanos)));
+        if (selfMs > budgetMs) {
+            observation.lowCardinalityKeyValue("over.budget", "true");
+            Counter.builder("chat.advisor.over.budget").tag("advisor", advisor).tag("mode", mode).register(meterRegistry).increment();
+            log.warn("Advisor {} ({}) 耗时 {} ms，超过预算 {} ms", advisor, mode, selfMs, budgetMs);
+        }
+    }
+
+    private Timer timer(String advisor, String phase, String mode, String outcome) {
+        return Timer.builder("chat.advisor.duration")
+                .tag("advisor", advisor)
+                .tag("phase", phase)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Observation observation(String advisor, String mode) {
+        return Observation.createNotStarted("chat.advisor", observationRegistry)
+                .contextualName("advisor " + advisor)
+                .lowCardinalityKeyValue("advisor", advisor)
+                .lowCardinalityKeyValue("mode", mode)
+                .lowCardinalityKeyValue("over.budget", "false");
+    }
+
+    /**
+     * 包装后的 Advisor，名称和顺序与原 Advisor 相同
+     */
+    final class TimedAdvisor implements CallAdvisor, StreamAdvisor {
+
+        private final Advisor delegate;
+
+        private TimedAdvisor(Advisor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            Observation observation = observation(getName(), "call").start();
+            long entry = System.nanoTime();
+            long[] marks = {0, 0};
+            CallAdvisorChain timedChain = new CallAdvisorChain() {
+                @Override
+                public ChatClientResponse nextCall(ChatClientRequest nextRequest) {
+                    marks[0] = System.nanoTime();
+                    try {
+                        return chain.nextCall(nextRequest);
+                    } finally {
+                        marks[1] = System.nanoTime();
+                    }
+                }
+
+                @Override
+                public List<CallAdvisor> getCallAdvisors() {
+                    return chain.getCallAdvisors();
+                }
+
+                @Override
+                public ObservationRegistry getObservationRegistry() {
+                    return chain.getObservationRegistry();
+                }
+            };
+            try (Observation.Scope scope = observation.openScope()) {
+                ChatClientResponse response = ((CallAdvisor) delegate).adviseCall(request, timedChain);
+                record(getName(), "call", ChatMetrics.COMPLETED, entry, marks, observation);
+                return response;
+            } catch (RuntimeException e) {
+                record(getName(), "call", ChatMetrics.ERROR, entry, marks, observation);
+                observation.error(e);
+                throw e;
+            } finally {
+                observation.stop();
+            }
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            return Flux.defer(() -> {
+                Observation observation = observation(getName(), "stream").start();
+                long entry = System.nanoTime();
+                long[] marks = {0, 0};
+                StreamAdvisorChain timedChain = new StreamAdvisorChain() {
+                    @Override
+                    public Flux<ChatClientResponse> nextStream(ChatClientRequest nextRequest) {
+                        marks[0] = System.nanoTime();
+                        return chain.nextStream(nextRequest)
+                                .doOnTerminate(() -> marks[1] = System.nanoTime())
+                                .doOnCancel(() -> marks[1] = System.nanoTime());
+                    }
+
+                    @Override
+                    public List<StreamAdvisor> getStreamAdvisors() {
+                        return chain.getStreamAdvisors();
+                    }
+
+                    @Override
+                    public ObservationRegistry getObservationRegistry() {
+                        return chain.getObservationRegistry();
+                    }
+                };
+                Flux<ChatClientResponse> responses = ((StreamAdvisor) delegate).adviseStream(request, timedChain)
+                        .doOnError(observation::error);
+                return ChatMetricsAdvisor.doOnOutcome(responses, outcome -> record(getName(), "stream", outcome, entry, marks, observation))
+                        .doFinally(signal -> observation.stop());
+            });
+        }
+
+        /**
+         * @param marks 调用下游和下游结束的时间点，没有调用下游时全部计入 before
+         */
+        private void record(String advisor, String mode, String outcome, long entry, long[] marks, Observation observation) {
+            long exit = System.nanoTime();
+            long before = (marks[0] == 0 ? exit : marks[0]) - entry;
+            long after = marks[1] == 0 ? 0 : exit - marks[1];
+            AdvisorTiming.this.record(advisor, mode, outcome, before, after, observation);
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public int getOrder() {
+            return delegate.getOrder();
+        }
+    }
+}
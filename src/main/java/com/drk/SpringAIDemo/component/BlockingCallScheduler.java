@@ -0,0 +1,76 @@
+package com.drk.SpringAIDemo.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * 阻塞调用使用的 Reactor 调度器
+ * <p>
+ * 记忆读取（MySQL）、向量检索和模型路由中的阻塞调用都在这里执行。
+ * spring.threads.virtual.enabled 为 true 且运行在 JDK 21 及以上时，每个任务一个虚拟线程，
+ * 数千个并发的慢调用不会占用同样多的平台线程；同一开关也让 Spring Boot 用虚拟线程处理 Tomcat 请求，
+ * 所以 /ask、/films、/image 和知识库接口中的阻塞调用（包括 InMySqlChatMemory 的 JDBC 调用）同样运行在虚拟线程上。
+ * 未启用或 JDK 不支持时使用 Schedulers.boundedElastic()。
+ * @Author drk
+ * @Date 2026/10/19 00:10
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class BlockingCallScheduler {
+
+    private final Scheduler scheduler;
+    private final boolean virtual;
+
+    @Autowired
+    public BlockingCallScheduler(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this(virtualThreads, BlockingCallScheduler::virtualScheduler);
+    }
+
+    /**
+     * @param virtualSchedulerFactory 创建虚拟线程调度器，JDK 不支持时返回 null
+     */
+    BlockingCallScheduler(boolean virtualThreads, Supplier<Scheduler> virtualSchedulerFactory) {
+        Scheduler virtualScheduler = virtualThreads ? virtualSchedulerFactory.get() : null;
+        this.virtual = virtualScheduler != null;
+        this.scheduler = virtual ? virtualScheduler : Schedulers.boundedElastic();
+    }
+
+    /**
+     * 创建虚拟线程调度器，JDK 不支持时返回 null
+     */
+    static Scheduler virtualScheduler() {
+        try {
+            VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("chat-virtual-");
+            // 空闲的虚拟线程很快回收，线程池不设上限，取消时可中断
+            return Schedulers.fromExecutorService(Executors.newCachedThreadPool(executor.getVirtualThreadFactory()), "chat-virtual");
+        } catch (UnsupportedOperationException e) {
+            log.warn("当前 JDK {} 不支持虚拟线程，阻塞调用使用 boundedElastic", Runtime.version().feature());
+            return null;
+        }
+    }
+
+    public Scheduler get() {
+        return scheduler;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (virtual) {
+            scheduler.dispose();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.exception.AdmissionRejectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模型接口准入控制
+ * <p>
+ * 按接口类别（流式、阻塞、图片、向量）分别限制并发，并发上限随上游耗时自适应：
+ * 耗时不超过该类别的 target-latency-ms 时上限缓慢增加（每次 +1/上限），超过时按 backoff-ratio 成倍下降，
+ * 始终保持在 [min-concurrency, max-concurrency] 之间。每个客户端另有令牌桶限流。
+ * <p>
+ * 对话类别（流式、阻塞）的耗时取 ChatMetrics 的模型阶段（{@link #recordModelLatency}），
+ * 不含对话排队（ConversationTurnSequencer）和 SSE 写出，避免慢客户端或同一会话排队把并发上限压低；
+ * 图片和向量接口没有这两部分，直接取请求耗时。
+ * 超出限制的请求立即以 AdmissionRejectedException 拒绝，由 AdmissionFilter 返回 429 和 Retry-After。
+ * @Author drk
+ * @Date 2026/10/18 21:30
+ * @Version 1.0
+ */
+@Component
+public class ChatAdmissionControl {
+
+    /**
+     * 接口类别
+     */
+    public enum EndpointClass {
+        STREAMING, BLOCKING, IMAGE, EMBEDDING;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 耗时样本来自模型调用而不是请求耗时的类别
+     */
+    private static final Set<EndpointClass> MODEL_SAMPLED = EnumSet.of(EndpointClass.STREAMING, EndpointClass.BLOCKING);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<EndpointClass, AdaptiveLimit> limits = new EnumMap<>(EndpointClass.class);
+    private Cache<String, TokenBucket> buckets;
+
+    @Value("${chat.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.admission.streaming.max-concurrency:64}")
+    private int streamingMaxConcurrency;
+
+    @Value("${chat.admission.streaming.target-latency-ms:120000}")
+    private long streamingTargetLatencyMs;
+
+    @Value("${chat.admission.blocking.max-concurrency:32}")
+    private int blockingMaxConcurrency;
+
+    @Value("${chat.admission.blocking.target-latency-ms:30000}")
+    private long blockingTargetLatencyMs;
+
+    @Value("${chat.admission.image.max-concurrency:4}")
+    private int imageMaxConcurrency;
+
+    @Value("${chat.admission.image.target-latency-ms:60000}")
+    private long imageTargetLatencyMs;
+
+    @Value("${chat.admission.embedding.max-concurrency:32}")
+    private int embeddingMaxConcurrency;
+
+    @Value("${chat.admission.embedding.target-latency-ms:2000}")
+    private long embeddingTargetLatencyMs;
+
+    /**
+     * 自适应并发上限的下限
+     */
+    @Value("${chat.admission.min-concurrency:2}")
+    private int minConcurrency;
+
+    /**
+     * 上游变慢时并发上限的缩减比例
+     */
+    @Value("${chat.admission.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    /**
+     * 并发已满时建议客户端等待的秒数
+     */
+    @Value("${chat.admission.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    /**
+     * 每个客户端每秒补充的令牌数，0 表示不限流
+     */
+    @Value("${chat.admission.client.rate-per-second:2}")
+    private double clientRatePerSecond;
+
+    /**
+     * 每个客户端令牌桶容量（允许的突发请求数）
+     */
+    @Value("${chat.admission.client.burst:20}")
+    private int clientBurst;
+
+    /**
+     * 最多跟踪的客户端数
+     */
+    @Value("${chat.admission.client.max-clients:10000}")
+    private long maxClients;
+
+    public ChatAdmissionControl(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        limits.put(EndpointClass.STREAMING, new AdaptiveLimit(minConcurrency, streamingMaxConcurrency, streamingTargetLatencyMs, backoffRatio));
+        limits.put(EndpointClass.BLOCKING, new AdaptiveLimit(minConcurrency, blockingMaxConcurrency, blockingTargetLatencyMs, backoffRatio));
+        limits.put(EndpointClass.IMAGE, new AdaptiveLimit(minConcurrency, imageMaxConcurrency, imageTargetLatencyMs, backoffRatio));
+        limits.put(EndpointClass.EMBEDDING, new AdaptiveLimit(minConcurrency, embeddingMaxConcurrency, embeddingTargetLatencyMs, backoffRatio));
+        limits.forEach((endpointClass, limit) -> {
+            Gauge.builder("chat.admission.limit", limit, AdaptiveLimit::limit).tag("class", endpointClass.tag()).register(meterRegistry);
+            Gauge.builder("chat.admission.inflight", limit, AdaptiveLimit::inflight).tag("class", endpointClass.tag()).register(meterRegistry);
+        });
+        buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 申请执行许可
+     * @param endpointClass 接口类别
+     * @param clientId 客户端标识
+     * @return 许可，请求结束后必须调用 {@link Permit#release()}
+     * @throws AdmissionRejectedException 超出客户端限流或并发上限
+     */
+    public Permit acquire(EndpointClass endpointClass, String clientId) {
+        if (clientRatePerSecond > 0) {
+            long waitNanos = buckets.get(clientId, key -> new TokenBucket(clientBurst))
+                    .tryConsume(clientRatePerSecond, clientBurst, System.nanoTime());
+            if (waitNanos > 0) {
+                reject(endpointClass, "rate");
+                throw new AdmissionRejectedException("请求过于频繁，请稍后重试", Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+            }
+        }
+        AdaptiveLimit limit = limits.get(endpointClass);
+        if (!limit.tryAcquire()) {
+            reject(endpointClass, "concurrency");
+            throw new AdmissionRejectedException("服务繁忙，请稍后重试", retryAfterSeconds);
+        }
+        return new Permit(limit, !MODEL_SAMPLED.contains(endpointClass), System.nanoTime());
+    }
+
+    /**
+     * 记录一次模型调用耗时，调整对话类别的并发上限
+     * @param endpointClass 请求准入时的类别，与模型的调用方式无关（如响应式接口流式调用模型，但按阻塞类别准入）
+     * @param latencyNanos 模型阶段耗时
+     */
+    public void recordModelLatency(EndpointClass endpointClass, long latencyNanos) {
+        if (MODEL_SAMPLED.contains(endpointClass)) {
+            limits.get(endpointClass).sample(latencyNanos);
+        }
+    }
+
+    private void reject(EndpointClass endpointClass, String reason) {
+        Counter.builder("chat.admission.rejected")
+                .tag("class", endpointClass.tag())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 执行许可，重复释放只生效一次
+     */
+    public static final class Permit {
+
+        private final AdaptiveLimit limit;
+        private final boolean sampleOnRelease;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(AdaptiveLimit limit, boolean sampleOnRelease, long startNanos) {
+            this.limit = limit;
+            this.sampleOnRelease = sampleOnRelease;
+            this.startNanos = startNanos;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                limit.release();
+                if (sampleOnRelease) {
+                    limit.sample(System.nanoTime() - startNanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * 随请求耗时调整的并发上限（加性增、乘性减）
+     */
+    static final class AdaptiveLimit {
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final long targetLatencyNanos;
+        private final double backoffRatio;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private volatile double limit;
+
+        AdaptiveLimit(int minLimit, int maxLimit, long targetLatencyMs, double backoffRatio) {
+            this.minLimit = Math.min(minLimit, maxLimit);
+            this.maxLimit = maxLimit;
+            this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+            this.backoffRatio = backoffRatio;
+            this.limit = maxLimit;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = inflight.get();
+                if (current >= (int) limit) {
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            inflight.decrementAndGet();
+        }
+
+        synchronized void sample(long latencyNanos) {
+            if (latencyNanos > targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+
+        double limit() {
+            return limit;
+        }
+
+        int inflight() {
+            return inflight.get();
+        }
+    }
+
+    /**
+     * 单个客户端的令牌桶
+     */
+    static final class TokenBucket {
+
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(int burst) {
+            this.tokens = burst;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * 尝试取一个令牌
+         * @return 0 表示成功，否则为下一个令牌可用前需要等待的纳秒数
+         */
+        synchronized long tryConsume(double ratePerSecond, int burst, long nowNanos) {
+            tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * ratePerSecond / 1_000_000_000d);
+            lastRefillNanos = nowNanos;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerSecond * 1_000_000_000d);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.drk.SpringAIDemo.component;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 闲置对话冷存储
+ * <p>
+ * 定时把长时间未活跃的对话从 chat_memory 移到本地磁盘的压缩段文件中（只追加），
+ * 每个对话一条记录：[对话ID长度][对话ID][数据长度][GZIP(JSON)]。偏移索引以追加日志 index.log 保存，启动时回放到内存。
+ * 对话再次被访问时由 InMySqlChatMemory 调用 rehydrate 透明恢复到 chat_memory。
+ * @Author drk
+ * @Date 2026/10/18 15:20
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ChatMemoryArchive {
+
+    private static final String INDEX_FILE = "index.log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMessageService chatMessageService;
+    private final ChatSessionService chatSessionService;
+    private final ChatMemoryCache chatMemoryCache;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.memory.archive.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 段文件目录
+     */
+    @Value("${chat.memory.archive.path:./chat-archive}")
+    private String archivePath;
+
+    /**
+     * 对话闲置多少天后归档
+     */
+    @Value("${chat.memory.archive.idle-days:30}")
+    private long idleDays;
+
+    /**
+     * 单个段文件的最大字节数，超过后滚动到新文件
+     */
+    @Value("${chat.memory.archive.segment-max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    /**
+     * 每次扫描最多归档的对话数
+     */
+    @Value("${chat.memory.archive.conversations-per-run:100}")
+    private int conversationsPerRun;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final Object writeLock = new Object();
+    private final AtomicLong archiveBytes = new AtomicLong();
+    private final AtomicLong hotConversations = new AtomicLong();
+    private Path baseDir;
+    private int currentSegment;
+    private Timer rehydrateTimer;
+
+    public ChatMemoryArchive(@Lazy ChatMessageService chatMessageService,
+                             @Lazy ChatSessionService chatSessionService,
+                             ChatMemoryCache chatMemoryCache,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.chatMessageService = chatMessageService;
+        this.chatSessionService = chatSessionService;
+        this.chatMemoryCache = chatMemoryCache;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        baseDir = Paths.get(archivePath);
+        Files.createDirectories(baseDir);
+        loadIndex();
+
+        Gauge.builder("chat.memory.tier.conversations", index, Map::size).tag("tier", "archive").register(meterRegistry);
+        Gauge.builder("chat.memory.tier.conversations", hotConversations, AtomicLong::get).tag("tier", "hot").register(meterRegistry);
+        Gauge.builder("chat.memory.tier.bytes", archiveBytes, AtomicLong::get).tag("tier", "archive").register(meterRegistry);
+        rehydrateTimer = Timer.builder("chat.memory.archive.rehydrate")
+                .description("归档对话恢复耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        log.info("对话冷存储已启用, path={}, 已归档对话数={}", baseDir.toAbsolutePath(), index.size());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.memory.archive.scan-interval-ms:3600000}")
+    public void archiveIdleConversations() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusDays(idleDays);
+        for (ChatSessionEntity session : chatSessionService.listIdle(before, conversationsPerRun)) {
+            try {
+                archive(session.getSessionId());
+            } catch (RuntimeException e) {
+                log.error("对话归档失败, conversationId={}", session.getSessionId(), e);
+            }
+        }
+        hotConversations.set(chatSessionService.count(new QueryWrapper<ChatSessionEntity>().eq("archived", 0)));
+    }
+
+    /**
+     * 把对话当前的全部消息写入段文件并从 chat_memory 删除
+     * @param conversationId 对话ID
+     */
+    public void archive(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            if (index.containsKey(conversationId)) {
+                return;
+            }
+            List<ChatMessageEntity> messages = chatMessageService.listAllOrdered(conversationId, 500);
+            if (!messages.isEmpty()) {
+                Location location = append(conversationId, encode(messages));
+                index.put(conversationId, location);
+            }
+            chatMessageService.removeArchived(conversationId, messages);
+            chatMemoryCache.invalidate(conversationId);
+            log.debug("对话已归档, conversationId={}, 消息数={}", conversationId, messages.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 对话已归档时恢复到 chat_memory，未归档时直接返回
+     * @param conversationId 对话ID
+     */
+    public void rehydrate(String conversationId) {
+        if (!enabled || !index.containsKey(conversationId)) {
+            return;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            Location location = index.get(conversationId);
+            if (location == null) {
+                return;
+            }
+            rehydrateTimer.record(() -> {
+                List<ChatMessageEntity> messages = decode(read(location, conversationId));
+                chatMessageService.restoreArchived(conversationId, messages);
+                remove(conversationId);
+                chatMemoryCache.invalidate(conversationId);
+                log.debug("归档对话已恢复, conversationId={}, 消息数={}", conversationId, messages.size());
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃对话的归档数据（删除对话时调用）
+     * @param conversationId 对话ID
+     */
+    public void discard(String conversationId) {
+        if (!enabled || !index.containsKey(conversationId)) {
+            return;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            remove(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private Location append(String conversationId, byte[] payload) {
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(8 + id.length + payload.length);
+        record.putInt(id.length).put(id).putInt(payload.length).put(payload).flip();
+        synchronized (writeLock) {
+            try {
+                Path segment = segmentPath(currentSegment);
+                if (Files.exists(segment) && Files.size(segment) + record.remaining() > segmentMaxBytes) {
+                    segment = segmentPath(++currentSegment);
+                }
+                long offset;
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    offset = channel.size();
+                    int length = record.remaining();
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                    channel.force(true);
+                    archiveBytes.addAndGet(length);
+                    Location location = new Location(currentSegment, offset, length);
+                    appendIndex("PUT\t" + conversationId + "\t" + location.segment() + "\t" + location.offset() + "\t" + location.length());
+                    return location;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入归档段文件失败", e);
+            }
+        }
+    }
+
+    private byte[] read(Location location, String conversationId) {
+        try (FileChannel channel = FileChannel.open(segmentPath(location.segment()), StandardOpenOption.READ)) {
+            ByteBuffer record = ByteBuffer.allocate(location.length());
+            while (record.hasRemaining() && channel.read(record, location.offset() + record.position()) >= 0) {
+                // 读满整条记录
+            }
+            record.flip();
+            byte[] id = new byte[record.getInt()];
+            record.get(id);
+            if (!conversationId.equals(new String(id, StandardCharsets.UTF_8))) {
+                throw new IllegalStateException("归档索引与段文件不一致, conversationId=" + conversationId);
+            }
+            byte[] payload = new byte[record.getInt()];
+            record.get(payload);
+            return payload;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档段文件失败", e);
+        }
+    }
+
+    private void remove(String conversationId) {
+        synchronized (writeLock) {
+            appendIndex("DEL\t" + conversationId);
+            index.remove(conversationId);
+        }
+    }
+
+    private void appendIndex(String line) {
+        try {
+            Files.writeString(baseDir.resolve(INDEX_FILE), line + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入归档索引失败", e);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path indexFile = baseDir.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 5 && "PUT".equals(parts[0])) {
+                    index.put(parts[1], new Location(Integer.parseInt(parts[2]), Long.parseLong(parts[3]), Integer.parseInt(parts[4])));
+                } else if (parts.length == 2 && "DEL".equals(parts[0])) {
+                    index.remove(parts[1]);
+                }
+            }
+        }
+        try (var files = Files.list(baseDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().startsWith(SEGMENT_PREFIX)).toList()) {
+                String name = file.getFileName().toString();
+                int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                currentSegment = Math.max(currentSegment, number);
+                archiveBytes.addAndGet(Files.size(file));
+            }
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return baseDir.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private byte[] encode(List<ChatMessageEntity> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("归档消息序列化失败", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<ChatMessageEntity> decode(byte[] payload) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return objectMapper.readValue(gzip, new TypeReference<List<ChatMessageEntity>>() {});
+        } catch (IOException e) {
+            throw new UncheckedIOException("归档消息反序列化失败", e);
+        }
+    }
+
+    /**
+     * 记录在段文件中的位置
+     */
+    private record Location(int segment, long offset, int length) {
+    }
+}
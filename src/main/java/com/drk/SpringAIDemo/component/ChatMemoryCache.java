@@ -0,0 +1,138 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 热点对话缓存
+ * <p>
+ * 按 conversationId 缓存已反序列化的消息，容量和过期时间均有上限。
+ * add 时追加到已缓存的对话，clear 时失效；命中率通过 Micrometer 的 cache.gets 指标暴露（cache=chatMemory）。
+ * @Author drk
+ * @Date 2026/10/18 11:05
+ * @Version 1.0
+ */
+@Component
+public class ChatMemoryCache {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.memory.cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 最多缓存的对话数
+     */
+    @Value("${chat.memory.cache.max-conversations:1000}")
+    private long maxConversations;
+
+    /**
+     * 对话多久未访问后过期（分钟）
+     */
+    @Value("${chat.memory.cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private Cache<String, List<CachedMessage>> cache;
+
+    public ChatMemoryCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chatMemory");
+    }
+
+    /**
+     * 读取对话消息，未命中时通过 loader 从数据库加载并放入缓存
+     * @param conversationId 对话ID
+     * @param loader 数据库加载逻辑
+     * @param converter 实体到消息的转换
+     * @return 缓存的消息（包含对应的实体，供调用方按时间过滤）
+     */
+    public List<CachedMessage> get(String conversationId,
+                                   Supplier<List<ChatMessageEntity>> loader,
+                                   Function<ChatMessageEntity, Message> converter) {
+        if (!enabled) {
+            return wrap(loader.get(), converter);
+        }
+        return cache.get(conversationId, key -> List.copyOf(wrap(loader.get(), converter)));
+    }
+
+    /**
+     * 把新写入的消息追加到已缓存的对话，未缓存的对话不做处理
+     * @param conversationId 对话ID
+     * @param entities 新写入的消息
+     * @param converter 实体到消息的转换
+     * @param limit 缓存中每个对话最多保留的条数，0 表示不限制
+     */
+    public void append(String conversationId, List<ChatMessageEntity> entities,
+                       Function<ChatMessageEntity, Message> converter, int limit) {
+        if (!enabled) {
+            return;
+        }
+        cache.asMap().computeIfPresent(conversationId, (key, cached) -> {
+            List<CachedMessage> merged = new ArrayList<>(cached);
+            for (ChatMessageEntity entity : entities) {
+                // 加载和追加并发时，新消息可能已经被 loader 读到，这里按实体身份或ID去重
+                if (cached.stream().noneMatch(c -> c.isSameRow(entity))) {
+                    merged.add(new CachedMessage(entity, converter.apply(entity)));
+                }
+            }
+            if (limit > 0 && merged.size() > limit) {
+                // 首条为压缩摘要时保留摘要，只裁剪后面的消息
+                int pinned = InMySqlChatMemory.isSummary(merged.get(0).entity()) ? 1 : 0;
+                List<CachedMessage> trimmed = new ArrayList<>(merged.subList(0, pinned));
+                trimmed.addAll(merged.subList(Math.max(pinned, merged.size() - limit), merged.size()));
+                merged = trimmed;
+            }
+            return List.copyOf(merged);
+        });
+    }
+
+    /**
+     * 使指定对话的缓存失效
+     */
+    public void invalidate(String conversationId) {
+        if (enabled) {
+            cache.invalidate(conversationId);
+        }
+    }
+
+    private List<CachedMessage> wrap(List<ChatMessageEntity> entities, Function<ChatMessageEntity, Message> converter) {
+        List<CachedMessage> result = new ArrayList<>(entities.size());
+        for (ChatMessageEntity entity : entities) {
+            result.add(new CachedMessage(entity, converter.apply(entity)));
+        }
+        return result;
+    }
+
+    /**
+     * 缓存条目：已反序列化的消息及其来源行
+     */
+    public record CachedMessage(ChatMessageEntity entity, Message message) {
+
+        boolean isSameRow(ChatMessageEntity other) {
+            return entity == other || (entity.getId() != null && Objects.equals(entity.getId(), other.getId()));
+        }
+    }
+}
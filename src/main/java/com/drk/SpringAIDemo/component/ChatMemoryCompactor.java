@@ -0,0 +1,173 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 长对话滚动压缩
+ * <p>
+ * 后台定时扫描消息数超过阈值的对话，把较早的消息（连同已有摘要）交给模型总结，
+ * 在一个事务内删除这些消息并写入一条 SYSTEM 摘要，InMySqlChatMemory.get 会把摘要放在上下文最前面。
+ * 同一对话按最小间隔限流；替换时校验被压缩的消息仍然全部存在，并发压缩时只有一个会成功。
+ * @Author drk
+ * @Date 2026/10/18 14:40
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ChatMemoryCompactor {
+
+    /**
+     * 摘要消息的元数据标记
+     */
+    public static final String SUMMARY_METADATA = "{\"summary\": true}";
+
+    private static final String SUMMARY_PROMPT =
+            "请将以下对话历史压缩为一段简洁的摘要，保留关键事实、用户偏好、已得出的结论和尚未完成的任务，" +
+                    "不要添加对话中没有的信息。\n\n";
+
+    private final ChatMessageService chatMessageService;
+    private final ChatSessionService chatSessionService;
+    private final ChatModel chatModel;
+    private final ChatMemoryCache chatMemoryCache;
+    private final TokenCountEstimator tokenCountEstimator;
+
+    @Value("${chat.memory.compaction.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 消息数超过该值的对话才会被压缩
+     */
+    @Value("${chat.memory.compaction.threshold-messages:100}")
+    private int thresholdMessages;
+
+    /**
+     * 压缩后保留的最近消息条数
+     */
+    @Value("${chat.memory.compaction.keep-messages:20}")
+    private int keepMessages;
+
+    /**
+     * 单次最多压缩的消息条数，超长对话会分多轮滚动压缩
+     */
+    @Value("${chat.memory.compaction.max-batch:200}")
+    private int maxBatch;
+
+    /**
+     * 同一对话两次压缩的最小间隔（分钟）
+     */
+    @Value("${chat.memory.compaction.min-interval-minutes:10}")
+    private long minIntervalMinutes;
+
+    /**
+     * 每次扫描最多处理的对话数
+     */
+    @Value("${chat.memory.compaction.conversations-per-run:10}")
+    private int conversationsPerRun;
+
+    private final Map<String, Long> lastCompactedAt = new ConcurrentHashMap<>();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public ChatMemoryCompactor(@Lazy ChatMessageService chatMessageService,
+                               @Lazy ChatSessionService chatSessionService,
+                               @Qualifier("openAiChatModel") ChatModel chatModel,
+                               ChatMemoryCache chatMemoryCache,
+                               TokenCountEstimator tokenCountEstimator) {
+        this.chatMessageService = chatMessageService;
+        this.chatSessionService = chatSessionService;
+        this.chatModel = chatModel;
+        this.chatMemoryCache = chatMemoryCache;
+        this.tokenCountEstimator = tokenCountEstimator;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.memory.compaction.scan-interval-ms:60000}")
+    public void compactLargeConversations() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastCompactedAt.values().removeIf(last -> now - last >= minIntervalMinutes * 60_000);
+        for (ChatSessionEntity session : chatSessionService.listLargerThan(thresholdMessages, conversationsPerRun)) {
+            try {
+                compact(session.getSessionId(), session.getMessageCount());
+            } catch (RuntimeException e) {
+                log.error("对话压缩失败, conversationId={}", session.getSessionId(), e);
+            }
+        }
+    }
+
+    /**
+     * 压缩指定对话，限流或已有任务在执行时直接跳过
+     * @param conversationId 对话ID
+     * @param messageCount 当前消息条数
+     * @return 是否完成压缩
+     */
+    public boolean compact(String conversationId, int messageCount) {
+        long now = System.currentTimeMillis();
+        Long last = lastCompactedAt.get(conversationId);
+        if (last != null && now - last < minIntervalMinutes * 60_000) {
+            return false;
+        }
+        if (!running.add(conversationId)) {
+            return false;
+        }
+        try {
+            lastCompactedAt.put(conversationId, now);
+            int count = Math.min(messageCount - keepMessages, maxBatch);
+            if (count < 2) {
+                return false;
+            }
+            List<ChatMessageEntity> oldest = chatMessageService.listOldest(conversationId, count);
+            if (oldest.size() < 2) {
+                return false;
+            }
+
+            ChatMessageEntity lastCompacted = oldest.get(oldest.size() - 1);
+            ChatMessageEntity summary = new ChatMessageEntity();
+            summary.setId(lastCompacted.getId());
+            summary.setCreatedAt(lastCompacted.getCreatedAt());
+            summary.setConversationId(conversationId);
+            summary.setMessageType("SYSTEM");
+            summary.setContent(summarize(oldest));
+            summary.setMetadata(SUMMARY_METADATA);
+            summary.setTokenCount(tokenCountEstimator.estimate(summary.getContent()));
+
+            boolean replaced = chatMessageService.replaceWithSummary(conversationId, oldest, summary);
+            if (replaced) {
+                chatMemoryCache.invalidate(conversationId);
+                log.info("对话压缩完成, conversationId={}, 压缩消息数={}", conversationId, oldest.size());
+            }
+            return replaced;
+        } finally {
+            running.remove(conversationId);
+        }
+    }
+
+    private String summarize(List<ChatMessageEntity> messages) {
+        StringBuilder transcript = new StringBuilder(SUMMARY_PROMPT);
+        for (ChatMessageEntity message : messages) {
+            String role = switch (message.getMessageType()) {
+                case "SYSTEM" -> "此前摘要";
+                case "USER" -> "用户";
+                default -> "助手";
+            };
+            transcript.append(role).append("：").append(message.getContent()).append('\n');
+        }
+        return "以下是较早对话的摘要：\n" + chatModel.call(transcript.toString());
+    }
+}
@@ -0,0 +1,343 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 对话记忆异步写缓冲（write-behind）
+ * <p>
+ * 消息先进入有界队列，由后台线程按条数或时间阈值跨对话批量落库；
+ * 未落库的消息按对话保存一份快照，保证同一对话的 get 能读到自己刚写入的消息。
+ * 队列满时退化为在调用线程同步落库，应用关闭时会把剩余消息全部刷盘。
+ * <p>
+ * 每批通过 {@link ChatMessageService#saveMessages} 在一个事务中写入，失败时整批回滚，重试不会产生重复行。
+ * 数据库不可用等与消息无关的失败不丢弃消息：该批保留在队列之外优先重试，按刷盘间隔指数退避，
+ * 期间新消息继续进入队列，队列满后由调用线程同步落库形成背压。
+ * 只有违反数据约束时才把批次二分逐段重写，单独写入仍违反约束的消息记录日志后丢弃，不再阻塞后续消息。
+ * enqueue 不会抛出落库异常。
+ * @Author drk
+ * @Date 2026/10/18 10:12
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ChatMemoryWriteBehindBuffer {
+
+    private final ChatMessageService chatMessageService;
+
+    @Value("${chat.memory.write-behind.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 队列容量
+     */
+    @Value("${chat.memory.write-behind.capacity:10000}")
+    private int capacity;
+
+    /**
+     * 单批最多落库条数，队列达到该条数时立即触发刷盘
+     */
+    @Value("${chat.memory.write-behind.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 定时刷盘间隔（毫秒）
+     */
+    @Value("${chat.memory.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    /**
+     * 重试退避上限
+     */
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private BlockingDeque<ChatMessageEntity> queue;
+    private final Map<String, List<ChatMessageEntity>> pendingByConversation = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * 上次失败待重试的批次，不占队列容量，下次刷盘时最先写入；受 flushLock 保护
+     */
+    private List<ChatMessageEntity> failedBatch = new ArrayList<>();
+    private int consecutiveFailures;
+    private volatile long retryAtNanos;
+    private ScheduledExecutorService flusher;
+
+    public ChatMemoryWriteBehindBuffer(@Lazy ChatMessageService chatMessageService) {
+        this.chatMessageService = chatMessageService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingDeque<>(capacity);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("对话记忆异步写已启用, capacity={}, batchSize={}, flushIntervalMs={}", capacity, batchSize, flushIntervalMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 写入缓冲队列，队列已满时在当前线程同步落库，落库失败只记录日志
+     */
+    public void enqueue(List<ChatMessageEntity> entities) {
+        for (ChatMessageEntity entity : entities) {
+            pendingByConversation.compute(entity.getConversationId(), (k, pending) -> {
+                List<ChatMessageEntity> list = pending == null ? new CopyOnWriteArrayList<>() : pending;
+                list.add(entity);
+                return list;
+            });
+            if (!queue.offerLast(entity)) {
+                log.warn("对话记忆写缓冲已满, 同步落库, conversationId={}", entity.getConversationId());
+                flush();
+                if (!queue.offerLast(entity)) {
+                    saveDirectly(entity);
+                }
+            }
+        }
+        if (queue.size() >= batchSize) {
+            flusher.execute(this::scheduledFlush);
+        }
+    }
+
+    /**
+     * 把尚未落库的消息合并到数据库读取结果之后，按ID去重
+     * @param fromDb 数据库读取结果（按时间正序）
+     * @param snapshot 读数据库之前获取的未落库快照
+     * @return 合并后的消息列表
+     */
+    public List<ChatMessageEntity> merge(List<ChatMessageEntity> fromDb, List<ChatMessageEntity> snapshot) {
+        if (snapshot.isEmpty()) {
+            return fromDb;
+        }
+        Set<Long> dbIds = new HashSet<>();
+        fromDb.forEach(entity -> dbIds.add(entity.getId()));
+        List<ChatMessageEntity> merged = new ArrayList<>(fromDb);
+        for (ChatMessageEntity entity : snapshot) {
+            if (entity.getId() == null || !dbIds.contains(entity.getId())) {
+                merged.add(entity);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 获取指定对话尚未落库的消息快照，需在读数据库之前调用
+     */
+    public List<ChatMessageEntity> pendingSnapshot(String conversationId) {
+        if (!enabled) {
+            return List.of();
+        }
+        List<ChatMessageEntity> pending = pendingByConversation.get(conversationId);
+        return pending == null ? List.of() : List.copyOf(pending);
+    }
+
+    /**
+     * 丢弃指定对话尚未落库的消息（清空对话时调用，避免删除后又被写回）
+     */
+    public void discard(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            queue.removeIf(entity -> Objects.equals(entity.getConversationId(), conversationId));
+            failedBatch.removeIf(entity -> Objects.equals(entity.getConversationId(), conversationId));
+            pendingByConversation.remove(conversationId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 把上次失败的批次和队列中的消息全部落库，不等待重试退避；遇到非数据问题的失败时停止本次刷盘
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (!failedBatch.isEmpty()) {
+                List<ChatMessageEntity> retry = failedBatch;
+                failedBatch = new ArrayList<>();
+                if (!persist(retry)) {
+                    return;
+                }
+            }
+            List<ChatMessageEntity> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                if (!persist(batch)) {
+                    return;
+                }
+                batch = new ArrayList<>(batchSize);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        int remaining = queue.size() + failedBatch.size();
+        if (remaining == 0) {
+            log.info("对话记忆异步写已关闭, 剩余消息已落库");
+        } else {
+            log.error("对话记忆异步写已关闭, {} 条消息落库失败未能写入", remaining);
+        }
+    }
+
+    private void saveDirectly(ChatMessageEntity entity) {
+        flushLock.lock();
+        try {
+            RuntimeException error = save(List.of(entity));
+            if (error != null) {
+                log.error("对话记忆同步落库失败, 丢弃消息, conversationId={}", entity.getConversationId(), error);
+                removePending(List.of(entity));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void scheduledFlush() {
+        if (System.nanoTime() - retryAtNanos >= 0) {
+            flush();
+        }
+    }
+
+    /**
+     * 写入一批消息
+     * @return false 表示遇到连接类等非数据问题，未写入的消息已留待下次重试
+     */
+    private boolean persist(List<ChatMessageEntity> batch) {
+        RuntimeException error = save(batch);
+        if (error == null) {
+            consecutiveFailures = 0;
+            retryAtNanos = 0;
+            return true;
+        }
+        if (!rowSpecific(error)) {
+            retryLater(batch, error);
+            return false;
+        }
+        log.error("对话记忆批量落库违反数据约束, 拆分批次查找无法写入的消息, size={}", batch.size(), error);
+        Deque<List<ChatMessageEntity>> parts = new ArrayDeque<>();
+        parts.push(batch);
+        boolean whole = true;
+        while (!parts.isEmpty()) {
+            List<ChatMessageEntity> part = parts.pop();
+            RuntimeException partError = whole ? error : save(part);
+            whole = false;
+            if (partError == null) {
+                continue;
+            }
+            if (!rowSpecific(partError)) {
+                List<ChatMessageEntity> rest = new ArrayList<>(part);
+                parts.forEach(rest::addAll);
+                retryLater(rest, partError);
+                return false;
+            }
+            if (part.size() == 1) {
+                ChatMessageEntity entity = part.get(0);
+                log.error("对话记忆落库违反数据约束, 丢弃消息, conversationId={}, messageType={}",
+                        entity.getConversationId(), entity.getMessageType(), partError);
+                removePending(part);
+                continue;
+            }
+            int middle = part.size() / 2;
+            parts.push(new ArrayList<>(part.subList(middle, part.size())));
+            parts.push(new ArrayList<>(part.subList(0, middle)));
+        }
+        consecutiveFailures = 0;
+        retryAtNanos = 0;
+        return true;
+    }
+
+    /**
+     * 数据库不可用等与具体消息无关的失败：保留这批消息，按刷盘间隔指数退避后重试，不丢弃
+     */
+    private void retryLater(List<ChatMessageEntity> batch, RuntimeException error) {
+        consecutiveFailures++;
+        long backoffMs = Math.min(flushIntervalMs << Math.min(consecutiveFailures, 10), MAX_BACKOFF_MS);
+        retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        log.warn("对话记忆批量落库失败(连续 {} 次), {} 条消息将在 {}ms 后重试", consecutiveFailures, batch.size(), backoffMs, error);
+        failedBatch = batch;
+    }
+
+    /**
+     * 只有违反约束等数据本身的问题才会在重试后依然失败，可以丢弃对应的消息
+     */
+    static boolean rowSpecific(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof DataIntegrityViolationException || e instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在一个事务中写入，失败时清掉回滚前分配的ID
+     * @return 失败原因，成功时为 null
+     */
+    private RuntimeException save(List<ChatMessageEntity> batch) {
+        try {
+            chatMessageService.saveMessages(batch);
+        } catch (RuntimeException e) {
+            batch.forEach(entity -> entity.setId(null));
+            return e;
+        }
+        removePending(batch);
+        return null;
+    }
+
+    private void removePending(List<ChatMessageEntity> flushed) {
+        for (ChatMessageEntity entity : flushed) {
+            pendingByConversation.computeIfPresent(entity.getConversationId(), (k, pending) -> {
+                pending.removeIf(e -> e == entity);
+                return pending.isEmpty() ? null : pending;
+            });
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话接口性能指标
+ * <p>
+ * 每次请求记录首 token 耗时（chat.request.ttft）、总耗时（chat.request.duration）、
+ * 记忆读取 / 向量检索 / 模型三段耗时（chat.request.phase，记忆和检索并行预取时为两者各自的耗时）、生成速度（chat.tokens.rate，token/秒）
+ * 以及提示词和输出 token 数（chat.tokens.prompt / chat.tokens.completion）。
+ * 标签为 endpoint、model、rag（是否检索到文档）、mode（call / stream）、outcome（completed / cancelled / error），
+ * 耗时均发布百分位直方图。
+ * 模型未返回 token 用量时按输出文本估算。
+ * 模型阶段耗时同时作为 ChatAdmissionControl 调整对话并发上限的样本。
+ * @Author drk
+ * @Date 2026/10/18 22:40
+ * @Version 1.0
+ */
+@Component
+public class ChatMetrics {
+
+    /**
+     * 未指定接口或模型时的标签值
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * outcome 标签值
+     */
+    public static final String COMPLETED = "completed";
+    public static final String CANCELLED = "cancelled";
+    public static final String ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final ChatAdmissionControl admissionControl;
+
+    public ChatMetrics(MeterRegistry meterRegistry, TokenCountEstimator tokenCountEstimator) {
+        this(meterRegistry, tokenCountEstimator, null);
+    }
+
+    /**
+     * @param admissionControl 接收模型阶段耗时，可以为 null
+     */
+    @Autowired
+    public ChatMetrics(MeterRegistry meterRegistry, TokenCountEstimator tokenCountEstimator, ChatAdmissionControl admissionControl) {
+        this.meterRegistry = meterRegistry;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * 一次请求各阶段的时间点（System.nanoTime），由 ChatMetricsAdvisor 在调用链的不同位置写入
+     */
+    public static final class Timings {
+
+        final String endpoint;
+        final boolean stream;
+        final ChatAdmissionControl.EndpointClass admissionClass;
+        final long start = System.nanoTime();
+        volatile long retrievalStart;
+        volatile long modelStart;
+        volatile long firstToken;
+        volatile long modelEnd;
+        volatile long prefetchedMemory = -1;
+        volatile long prefetchedRetrieval = -1;
+
+        public Timings(String endpoint, boolean stream) {
+            this(endpoint, stream, null);
+        }
+
+        /**
+         * @param admissionClass 请求准入时的类别，模型耗时作为该类别并发上限的样本；为空时按调用方式取流式或阻塞
+         */
+        public Timings(String endpoint, boolean stream, ChatAdmissionControl.EndpointClass admissionClass) {
+            this.endpoint = endpoint == null ? UNKNOWN : endpoint;
+            this.stream = stream;
+            this.admissionClass = admissionClass != null ? admissionClass
+                    : stream ? ChatAdmissionControl.EndpointClass.STREAMING : ChatAdmissionControl.EndpointClass.BLOCKING;
+        }
+
+        /**
+         * 记录模型调用开始，阻塞调用的首 token 时间即模型返回时间
+         */
+        public void modelStarted() {
+            modelStart = System.nanoTime();
+        }
+
+        public void firstToken() {
+            if (firstToken == 0) {
+                firstToken = System.nanoTime();
+            }
+        }
+
+        public void modelFinished() {
+            modelEnd = System.nanoTime();
+            firstToken();
+        }
+
+        /**
+         * 模型调用出错或被取消，只记录结束时间，不补首 token
+         */
+        public void modelStopped() {
+            if (modelEnd == 0) {
+                modelEnd = System.nanoTime();
+            }
+        }
+
+        /**
+         * 记忆和检索并行读取时各自的耗时，代替按时间点计算的两段
+         */
+        public void prefetched(long memoryNanos, long retrievalNanos) {
+            prefetchedRetrieval = retrievalNanos;
+            prefetchedMemory = memoryNanos;
+        }
+    }
+
+    /**
+     * 请求正常完成时记录
+     */
+    public void record(Timings timings, ChatResponse response, boolean rag, String completionText) {
+        record(timings, response, rag, completionText, COMPLETED);
+    }
+
+    /**
+     * 请求结束时记录
+     * @param timings 各阶段时间点
+     * @param response 模型响应（流式为最后一个带元数据的响应），可以为 null
+     * @param rag 是否检索到文档
+     * @param completionText 输出文本（取消或出错时为已生成的部分），模型未返回用量时用于估算 token 数
+     * @param outcome {@link #COMPLETED}、{@link #CANCELLED} 或 {@link #ERROR}
+     */
+    public void record(Timings timings, ChatResponse response, boolean rag, String completionText, String outcome) {
+        long end = System.nanoTime();
+        String model = response == null || response.getMetadata() == null || response.getMetadata().getModel() == null
+                || response.getMetadata().getModel().isBlank() ? UNKNOWN : response.getMetadata().getModel();
+        Tags tags = Tags.of("endpoint", timings.endpoint, "model", model, "rag", String.valueOf(rag),
+                "mode", timings.stream ? "stream" : "call", "outcome", outcome);
+
+        timer("chat.request.duration", tags).record(end - timings.start, TimeUnit.NANOSECONDS);
+        if (timings.firstToken > 0) {
+            timer("chat.request.ttft", tags).record(timings.firstToken - timings.start, TimeUnit.NANOSECONDS);
+        }
+
+        long modelStart = timings.modelStart > 0 ? timings.modelStart : timings.start;
+        long modelEnd = timings.modelEnd > 0 ? timings.modelEnd : end;
+        long retrievalStart = timings.retrievalStart > 0 ? timings.retrievalStart : modelStart;
+        boolean prefetched = timings.prefetchedMemory >= 0;
+        timer("chat.request.phase", tags.and("phase", "memory"))
+                .record(prefetched ? timings.prefetchedMemory : retrievalStart - timings.start, TimeUnit.NANOSECONDS);
+        timer("chat.request.phase", tags.and("phase", "retrieval"))
+                .record(prefetched ? timings.prefetchedRetrieval : modelStart - retrievalStart, TimeUnit.NANOSECONDS);
+        timer("chat.request.phase", tags.and("phase", "model")).record(modelEnd - modelStart, TimeUnit.NANOSECONDS);
+        // 取消的请求模型耗时被截断，不作为并发上限的样本
+        if (admissionControl != null && !CANCELLED.equals(outcome)) {
+            admissionControl.recordModelLatency(timings.admissionClass, modelEnd - modelStart);
+        }
+
+        Usage usage = response == null || response.getMetadata() == null ? null : response.getMetadata().getUsage();
+        Integer promptTokens = usage == null ? null : usage.getPromptTokens();
+        Integer completionTokens = usage == null ? null : usage.getCompletionTokens();
+        if ((completionTokens == null || completionTokens == 0) && completionText != null && !completionText.isEmpty()) {
+            completionTokens = tokenCountEstimator.estimate(completionText);
+        }
+        if (promptTokens != null && promptTokens > 0) {
+            summary("chat.tokens.prompt", "tokens", tags).record(promptTokens);
+        }
+        if (completionTokens != null && completionTokens > 0) {
+            summary("chat.tokens.completion", "tokens", tags).record(completionTokens);
+            // 生成速度按首 token 之后的时间计算，不含排队和首 token 等待
+            long generationNanos = modelEnd - (timings.firstToken > 0 && timings.stream ? timings.firstToken : modelStart);
+            if (generationNanos > 0) {
+                summary("chat.tokens.rate", "tokens/s", tags).record(completionTokens * 1_000_000_000d / generationNanos);
+            }
+        }
+    }
+
+    /**
+     * 不经过 ChatClient 的接口（直接调用模型、图片、向量）只记录总耗时
+     */
+    public void recordDuration(String endpoint, String model, long startNanos) {
+        Tags tags = Tags.of("endpoint", endpoint, "model", model == null ? UNKNOWN : model, "rag", "false", "mode", "call",
+                "outcome", COMPLETED);
+        timer("chat.request.duration", tags).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 响应中是否带有检索到的文档
+     */
+    public static boolean ragUsed(ChatResponse response, Map<String, Object> context) {
+        Object documents = context == null ? null : context.get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+        if (documents == null && response != null && response.getMetadata() != null) {
+            documents = response.getMetadata().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+        }
+        return documents instanceof Collection<?> collection && !collection.isEmpty();
+    }
+
+    private Timer timer(String name, Tags tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary summary(String name, String unit, Tags tags) {
+        return DistributionSummary.builder(name)
+                .baseUnit(unit)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
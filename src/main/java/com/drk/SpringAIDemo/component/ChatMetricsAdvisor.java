@@ -0,0 +1,197 @@
+package com.drk.SpringAIDemo.component;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 对话指标采集 Advisor
+ * <p>
+ * 同一个类在调用链中放三处：REQUEST 在最外层创建计时并在结束时写入 ChatMetrics，
+ * RETRIEVAL 放在记忆 Advisor（order 1）和 QuestionAnswerAdvisor（order 5）之间标记检索开始，
+ * MODEL 放在最内层紧挨模型调用，标记模型开始、首 token 和结束。
+ * 请求完成、被取消（客户端断开）或出错时都会记录，以 outcome 标签区分。
+ * 记忆和检索由 ConversationContextPrefetch 并行读取时，两段耗时由预取通过 {@link #prefetched} 写入。
+ * 接口名通过 advisor 参数 {@link #ENDPOINT} 传入；准入类别与调用方式不一致时（如响应式接口以流式调用模型、按阻塞类别准入）
+ * 通过 {@link #ADMISSION_CLASS} 传入，模型耗时作为该类别并发上限的样本。
+ * @Author drk
+ * @Date 2026/10/18 22:50
+ * @Version 1.0
+ */
+public class ChatMetricsAdvisor implements CallAdvisor, StreamAdvisor {
+
+    /**
+     * 请求参数：接口名，作为指标的 endpoint 标签
+     */
+    public static final String ENDPOINT = "chat_metrics_endpoint";
+
+    /**
+     * 请求参数：准入类别（ChatAdmissionControl.EndpointClass），未设置时按调用方式取流式或阻塞
+     */
+    public static final String ADMISSION_CLASS = "chat_metrics_admission_class";
+
+    private static final String TIMINGS = "chat_metrics_timings";
+
+    public enum Phase {
+        REQUEST(Ordered.HIGHEST_PRECEDENCE),
+        RETRIEVAL(3),
+        MODEL(Ordered.LOWEST_PRECEDENCE - 1);
+
+        private final int order;
+
+        Phase(int order) {
+            this.order = order;
+        }
+    }
+
+    private final ChatMetrics chatMetrics;
+    private final Phase phase;
+
+    public ChatMetricsAdvisor(ChatMetrics chatMetrics, Phase phase) {
+        this.chatMetrics = chatMetrics;
+        this.phase = phase;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        if (phase == Phase.REQUEST) {
+            ChatMetrics.Timings timings = new ChatMetrics.Timings(endpoint(request), false, admissionClass(request));
+            ChatClientResponse response;
+            try {
+                response = chain.nextCall(request.mutate().context(TIMINGS, timings).build());
+            } catch (RuntimeException e) {
+                chatMetrics.record(timings, null, false, null, ChatMetrics.ERROR);
+                throw e;
+            }
+            ChatResponse chatResponse = response.chatResponse();
+            chatMetrics.record(timings, chatResponse, ChatMetrics.ragUsed(chatResponse, response.context()), text(chatResponse));
+            return response;
+        }
+        ChatMetrics.Timings timings = timings(request);
+        if (timings == null) {
+            return chain.nextCall(request);
+        }
+        if (phase == Phase.RETRIEVAL) {
+            timings.retrievalStart = System.nanoTime();
+            return chain.nextCall(request);
+        }
+        timings.modelStarted();
+        ChatClientResponse response;
+        try {
+            response = chain.nextCall(request);
+        } catch (RuntimeException e) {
+            timings.modelStopped();
+            throw e;
+        }
+        timings.modelFinished();
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        if (phase == Phase.REQUEST) {
+            return Flux.defer(() -> {
+                ChatMetrics.Timings timings = new ChatMetrics.Timings(endpoint(request), true, admissionClass(request));
+                StringBuilder text = new StringBuilder();
+                AtomicReference<ChatResponse> last = new AtomicReference<>();
+                AtomicBoolean rag = new AtomicBoolean();
+                Flux<ChatClientResponse> responses = chain.nextStream(request.mutate().context(TIMINGS, timings).build())
+                        .doOnNext(response -> {
+                            ChatResponse chatResponse = response.chatResponse();
+                            String chunk = text(chatResponse);
+                            if (chunk != null) {
+                                text.append(chunk);
+                            }
+                            if (chatResponse != null) {
+                                last.set(chatResponse);
+                            }
+                            if (ChatMetrics.ragUsed(chatResponse, response.context())) {
+                                rag.set(true);
+                            }
+                        });
+                return doOnOutcome(responses, outcome -> chatMetrics.record(timings, last.get(), rag.get(), text.toString(), outcome));
+            });
+        }
+        return Flux.defer(() -> {
+            ChatMetrics.Timings timings = timings(request);
+            if (timings == null) {
+                return chain.nextStream(request);
+            }
+            if (phase == Phase.RETRIEVAL) {
+                timings.retrievalStart = System.nanoTime();
+                return chain.nextStream(request);
+            }
+            timings.modelStarted();
+            return chain.nextStream(request)
+                    .doOnNext(response -> {
+                        String chunk = text(response.chatResponse());
+                        if (chunk != null && !chunk.isEmpty()) {
+                            timings.firstToken();
+                        }
+                    })
+                    .doOnComplete(timings::modelFinished)
+                    .doOnError(e -> timings.modelStopped())
+                    .doOnCancel(timings::modelStopped);
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "ChatMetricsAdvisor-" + phase.name();
+    }
+
+    @Override
+    public int getOrder() {
+        return phase.order;
+    }
+
+    private static String endpoint(ChatClientRequest request) {
+        Object endpoint = request.context().get(ENDPOINT);
+        return endpoint == null ? null : endpoint.toString();
+    }
+
+    private static ChatAdmissionControl.EndpointClass admissionClass(ChatClientRequest request) {
+        return request.context().get(ADMISSION_CLASS) instanceof ChatAdmissionControl.EndpointClass endpointClass ? endpointClass : null;
+    }
+
+    /**
+     * 记忆和检索已由 ConversationContextPrefetch 并行完成时，记录两者各自的耗时；
+     * 此时检索在 RETRIEVAL 标记之前就已结束，按标记计算会把检索计入记忆阶段
+     */
+    static void prefetched(ChatClientRequest request, long memoryNanos, long retrievalNanos) {
+        ChatMetrics.Timings timings = timings(request);
+        if (timings != null) {
+            timings.prefetched(memoryNanos, retrievalNanos);
+        }
+    }
+
+    /**
+     * 流结束时按结果（completed / cancelled / error）回调一次。
+     * 在结束信号传给下游之前回调，而不是 doFinally：后者在下游处理完结束信号之后才执行，
+     * 会把外层的收尾耗时算进来，订阅方拿到结束信号时指标也可能尚未写入
+     */
+    static <T> Flux<T> doOnOutcome(Flux<T> flux, Consumer<String> callback) {
+        return flux.doOnComplete(() -> callback.accept(ChatMetrics.COMPLETED))
+                .doOnError(e -> callback.accept(ChatMetrics.ERROR))
+                .doOnCancel(() -> callback.accept(ChatMetrics.CANCELLED));
+    }
+
+    private static ChatMetrics.Timings timings(ChatClientRequest request) {
+        return request.context().get(TIMINGS) instanceof ChatMetrics.Timings timings ? timings : null;
+    }
+
+    private static String text(ChatResponse response) {
+        return response == null || response.getResult() == null || response.getResult().getOutput() == null
+                ? null : response.getResult().getOutput().getText();
+    }
+}
@@ -0,0 +1,96 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 相同请求合并调用
+ * <p>
+ * 以 接口 + 规范化后的提示词 + 选项 的哈希为键，同一时刻相同的请求只有第一个调用模型，
+ * 其余请求等待并共享同一个结果（包括异常）。调用结束后立即移除，不做结果缓存。
+ * 请求数和被合并的请求数通过 chat.singleflight.requests / chat.singleflight.coalesced 暴露，两者之比即合并率。
+ * @Author drk
+ * @Date 2026/10/18 20:00
+ * @Version 1.0
+ */
+@Component
+public class ChatSingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.singleflight.enabled:true}")
+    private boolean enabled;
+
+    public ChatSingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("chat.singleflight.inflight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 执行调用，相同键的并发请求共享结果
+     * @param endpoint 接口名，同时作为指标标签
+     * @param prompt 提示词
+     * @param options 影响结果的其他参数（模型选项、输出类型等），没有时传 null
+     * @param call 实际的模型调用
+     * @return 调用结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String endpoint, String prompt, Object options, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Counter.builder("chat.singleflight.requests").tag("endpoint", endpoint).register(meterRegistry).increment();
+        String key = key(endpoint, prompt, options);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            Counter.builder("chat.singleflight.coalesced").tag("endpoint", endpoint).register(meterRegistry).increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            T result = call.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 规范化提示词：去掉首尾空白，连续空白合并为一个空格
+     */
+    static String normalize(String prompt) {
+        return prompt == null ? "" : prompt.strip().replaceAll("\\s+", " ");
+    }
+
+    static String key(String endpoint, String prompt, Object options) {
+        String raw = endpoint + '\n' + normalize(prompt) + '\n' + (options == null ? "" : options);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.config.ChatConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientMessageAggregator;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 对话上下文并行预取
+ * <p>
+ * 多轮对话原先由 MessageChatMemoryAdvisor 读取历史（MySQL）后，再由 QuestionAnswerAdvisor 向量化问题并检索 Qdrant，
+ * 两者互不依赖却串行阻塞。{@link #advisors} 返回的合并 Advisor 在同一位置并行发起两次读取，都返回后再组装提示词：
+ * 历史消息在前，用户消息按 qaAdvisor 的模板补充检索结果，记忆中仍保存原始用户消息和回复，与原来的两个 Advisor 行为一致。
+ * 两次读取都在 BlockingCallScheduler 上执行。预取后请求上下文带有检索结果，默认 Advisor 中的 qaAdvisor 需用 {@link #unlessPrefetched} 包装以跳过重复检索。
+ * 指标：chat.context.prefetch{part=memory|retrieval|total}，以及并行节省的时间 chat.context.prefetch.saved；
+ * 请求指标 chat.request.phase 的 memory / retrieval 阶段同样取两次读取各自的耗时（两者重叠）。
+ * @Author drk
+ * @Date 2026/10/18 23:30
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ConversationContextPrefetch {
+
+    /**
+     * 请求上下文中标记已预取检索结果
+     */
+    static final String PREFETCHED = "conversation_context_prefetched";
+
+    private final VectorStore vectorStore;
+    private final MeterRegistry meterRegistry;
+    private final BlockingCallScheduler blockingCallScheduler;
+    private final SearchRequest searchRequest = ChatConfig.qaSearchRequest();
+    private final PromptTemplate promptTemplate = ChatConfig.qaPromptTemplate();
+
+    @Value("${chat.context.prefetch.enabled:true}")
+    private boolean enabled;
+
+    public ConversationContextPrefetch(VectorStore vectorStore, MeterRegistry meterRegistry, BlockingCallScheduler blockingCallScheduler) {
+        this.vectorStore = vectorStore;
+        this.meterRegistry = meterRegistry;
+        this.blockingCallScheduler = blockingCallScheduler;
+    }
+
+    /**
+     * 多轮对话使用的记忆和检索 Advisor；未启用时为原来的 MessageChatMemoryAdvisor，检索由默认的 qaAdvisor 完成
+     * @param chatMemory 对话记忆
+     * @param conversationId 对话ID
+     * @param order 在调用链中的顺序
+     */
+    public List<Advisor> advisors(ChatMemory chatMemory, String conversationId, int order) {
+        if (!enabled) {
+            return List.of(MessageChatMemoryAdvisor.builder(chatMemory).order(order).conversationId(conversationId)
+                    .scheduler(blockingCallScheduler.get()).build());
+        }
+        return List.of(new PrefetchAdvisor(chatMemory, conversationId, order));
+    }
+
+    /**
+     * 包装 qaAdvisor：请求已由预取完成检索时直接调用下游
+     */
+    public static Advisor unlessPrefetched(QuestionAnswerAdvisor qaAdvisor) {
+        return new SkipWhenPrefetched(qaAdvisor);
+    }
+
+    private record Context(List<Message> history, List<Document> documents, long memoryNanos, long retrievalNanos) {
+    }
+
+    /**
+     * 读取结果及其在工作线程上的耗时，随 zip 的结果一起传回
+     */
+    private record Timed<T>(T value, long nanos) {
+
+        static <T> Timed<T> of(Callable<T> callable) throws Exception {
+            long begin = System.nanoTime();
+            T value = callable.call();
+            return new Timed<>(value, System.nanoTime() - begin);
+        }
+    }
+
+    private Mono<Context> fetch(ChatMemory chatMemory, String conversationId, ChatClientRequest request) {
+        long start = System.nanoTime();
+        Mono<Timed<List<Message>>> history = Mono.fromCallable(() -> Timed.of(() -> chatMemory.get(conversationId)))
+                .subscribeOn(blockingCallScheduler.get());
+        Mono<Timed<List<Document>>> documents = Mono.fromCallable(() -> Timed.of(() -> {
+                    List<Document> found = vectorStore.similaritySearch(searchRequest(request));
+                    return found == null ? List.<Document>of() : found;
+                }))
+                .subscribeOn(blockingCallScheduler.get());
+        return Mono.zip(history, documents, (messages, found) ->
+                        new Context(messages.value(), found.value(), messages.nanos(), found.nanos()))
+                .doOnNext(context -> {
+                    long total = System.nanoTime() - start;
+                    timer("chat.context.prefetch", "memory").record(context.memoryNanos(), TimeUnit.NANOSECONDS);
+                    timer("chat.context.prefetch", "retrieval").record(context.retrievalNanos(), TimeUnit.NANOSECONDS);
+                    timer("chat.context.prefetch", "total").record(total, TimeUnit.NANOSECONDS);
+                    Timer.builder("chat.context.prefetch.saved").register(meterRegistry)
+                            .record(Math.max(0, context.memoryNanos() + context.retrievalNanos() - total), TimeUnit.NANOSECONDS);
+                    // 请求指标的记忆和检索阶段改用两次读取各自的耗时
+                    ChatMetricsAdvisor.prefetched(request, context.memoryNanos(), context.retrievalNanos());
+                });
+    }
+
+    private SearchRequest searchRequest(ChatClientRequest request) {
+        SearchRequest.Builder builder = SearchRequest.from(searchRequest).query(request.prompt().getUserMessage().getText());
+        Object filter = request.context().get(QuestionAnswerAdvisor.FILTER_EXPRESSION);
+        if (filter != null && StringUtils.hasText(filter.toString())) {
+            builder.filterExpression(new FilterExpressionTextParser().parse(filter.toString()));
+        }
+        return builder.build();
+    }
+
+    private Timer timer(String name, String part) {
+        return Timer.builder(name)
+                .tag("part", part)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 合并的记忆和检索 Advisor，每个请求一个实例
+     */
+    final class PrefetchAdvisor implements CallAdvisor, StreamAdvisor {
+
+        private final ChatMemory chatMemory;
+        private final String conversationId;
+        private final int order;
+
+        private PrefetchAdvisor(ChatMemory chatMemory, String conversationId, int order) {
+            this.chatMemory = chatMemory;
+            this.conversationId = conversationId;
+            this.order = order;
+        }
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            ChatClientRequest prepared = prepare(request, fetch(chatMemory, conversationId, request).block());
+            ChatClientResponse response = chain.nextCall(prepared);
+            return complete(response);
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            Flux<ChatClientResponse> responses = fetch(chatMemory, conversationId, request)
+                    .map(context -> prepare(request, context))
+                    .flatMapMany(chain::nextStream);
+            return new ChatClientMessageAggregator().aggregateChatClientResponse(responses, this::complete);
+        }
+
+        /**
+         * 组装提示词：历史消息 + 本次消息，用户消息补充检索结果；记忆中保存原始用户消息
+         */
+        private ChatClientRequest prepare(ChatClientRequest request, Context context) {
+            UserMessage userMessage = request.prompt().getUserMessage();
+            List<Message> messages = new ArrayList<>(context.history());
+            messages.addAll(request.prompt().getInstructions());
+            chatMemory.add(conversationId, userMessage);
+
+            String documentContext = context.documents().stream()
+                    .map(Document::getText)
+                    .collect(Collectors.joining(System.lineSeparator()));
+            String augmented = promptTemplate.render(Map.of("query", userMessage.getText(),
+                    "question_answer_context", documentContext));
+            Prompt prompt = request.prompt().mutate().messages(messages).build().augmentUserMessage(augmented);
+
+            Map<String, Object> requestContext = new HashMap<>(request.context());
+            requestContext.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, context.documents());
+            requestContext.put(PREFETCHED, Boolean.TRUE);
+            return request.mutate().prompt(prompt).context(requestContext).build();
+        }
+
+        /**
+         * 保存回复并在响应元数据中带上检索结果
+         */
+        private ChatClientResponse complete(ChatClientResponse response) {
+            ChatResponse chatResponse = response.chatResponse();
+            if (chatResponse != null) {
+                chatMemory.add(conversationId, chatResponse.getResults().stream().map(g -> (Message) g.getOutput()).toList());
+            }
+            ChatResponse.Builder builder = chatResponse == null ? ChatResponse.builder() : ChatResponse.builder().from(chatResponse);
+            builder.metadata(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, response.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS));
+            return ChatClientResponse.builder().chatResponse(builder.build()).context(response.context()).build();
+        }
+
+        @Override
+        public String getName() {
+            return "ConversationContextPrefetch";
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+    }
+
+    /**
+     * 已预取时跳过检索的 qaAdvisor，名称和顺序与 qaAdvisor 相同
+     */
+    private record SkipWhenPrefetched(QuestionAnswerAdvisor delegate) implements CallAdvisor, StreamAdvisor {
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            return request.context().containsKey(PREFETCHED) ? chain.nextCall(request) : delegate.adviseCall(request, chain);
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            return request.context().containsKey(PREFETCHED) ? chain.nextStream(request) : delegate.adviseStream(request, chain);
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public int getOrder() {
+            return delegate.getOrder();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.exception.ConversationBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话轮次串行执行
+ * <p>
+ * 同一对话的多个请求（例如两个标签页同时发送）按到达顺序逐个执行，前一轮读取历史、生成并写回记忆后，
+ * 下一轮才开始读取历史；不同对话之间完全并行。每个对话最多 max-queued 个请求排队，超出时立即拒绝。
+ * 轮次被取消后仍要完成的写入（如保存被截断的回复）通过 {@link #holdTurnUntil} 挂到该轮上，写入完成后才让出执行权。
+ * 空闲的对话不保留任何状态。
+ * @Author drk
+ * @Date 2026/10/18 21:00
+ * @Version 1.0
+ */
+@Component
+public class ConversationTurnSequencer {
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Counter rejectedCounter;
+    private final Timer waitTimer;
+
+    @Value("${chat.conversation.sequencer.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每个对话除正在执行的一轮外最多排队的请求数
+     */
+    @Value("${chat.conversation.sequencer.max-queued:4}")
+    private int maxQueued;
+
+    public ConversationTurnSequencer(MeterRegistry meterRegistry) {
+        this.rejectedCounter = Counter.builder("chat.conversation.turns.rejected").register(meterRegistry);
+        this.waitTimer = Timer.builder("chat.conversation.turns.wait").register(meterRegistry);
+        Gauge.builder("chat.conversation.turns.active", lanes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 把一轮对话排入该对话的队列
+     * <p>
+     * 调用时先检查队列，已满时直接抛出异常，便于在响应开始前返回 429；排队名额在订阅时才占用，
+     * 从未被订阅的流（例如没有客户端接手就被丢弃的可续传流）不会占着名额。
+     * 订阅时队列已满则以 ConversationBusyException 结束。订阅后等到前面的轮次结束才订阅 turn，
+     * turn 结束、出错或被取消时让出执行权。等待中取消订阅会释放名额。
+     * @param conversationId 对话ID
+     * @param turn 一轮对话，必须是惰性的（订阅时才读取历史）
+     * @return 按顺序执行的流
+     * @throws ConversationBusyException 该对话排队的请求已达上限
+     */
+    public <T> Flux<T> sequence(String conversationId, Flux<T> turn) {
+        if (!enabled) {
+            return turn;
+        }
+        Lane current = lanes.get(conversationId);
+        if (current != null && current.pending > maxQueued) {
+            rejectedCounter.increment();
+            throw new ConversationBusyException(conversationId);
+        }
+        return Flux.defer(() -> {
+            Waiter waiter = new Waiter();
+            TurnHold hold = new TurnHold();
+            return Mono.<Void>create(sink -> {
+                        if (!reserve(conversationId)) {
+                            rejectedCounter.increment();
+                            sink.error(new ConversationBusyException(conversationId));
+                            return;
+                        }
+                        waiter.sink = sink;
+                        waiter.waitStart = System.nanoTime();
+                        sink.onCancel(() -> abandon(conversationId, waiter));
+                        enqueue(conversationId, waiter);
+                    })
+                    .thenMany(Flux.defer(() -> turn).contextWrite(Context.of(TurnHold.class, hold)))
+                    .doFinally(signal -> {
+                        if (waiter.granted) {
+                            // 取消时上游的 doOnCancel 先于这里执行，挂上的写入都已登记
+                            List<Mono<Void>> held = hold.close();
+                            if (held.isEmpty()) {
+                                release(conversationId);
+                            } else {
+                                Mono.when(held).doFinally(s -> release(conversationId)).subscribe();
+                            }
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 让当前轮次等 work 完成后再让出执行权
+     * <p>
+     * 在 sequence 返回的流内部调用时（从订阅上下文中找到所属轮次），work 在轮次结束后订阅，完成后下一轮才开始；
+     * 不在其中（未启用串行）或轮次已经结束时立即订阅。work 需自行处理错误。
+     * @param context 轮次内操作符的订阅上下文
+     * @param work 轮次结束前必须完成的写入
+     */
+    public static void holdTurnUntil(ContextView context, Mono<Void> work) {
+        TurnHold hold = context.getOrDefault(TurnHold.class, null);
+        if (hold == null || !hold.add(work)) {
+            work.subscribe();
+        }
+    }
+
+    /**
+     * 占用一个排队名额
+     * @return 队列已满时返回 false
+     */
+    private boolean reserve(String conversationId) {
+        boolean[] accepted = {false};
+        lanes.compute(conversationId, (key, lane) -> {
+            if (lane == null) {
+                lane = new Lane();
+            }
+            if (lane.pending <= maxQueued) {
+                lane.pending++;
+                accepted[0] = true;
+            }
+            return lane.pending == 0 ? null : lane;
+        });
+        return accepted[0];
+    }
+
+    private void enqueue(String conversationId, Waiter waiter) {
+        lanes.compute(conversationId, (key, lane) -> {
+            if (lane.running) {
+                lane.waiters.addLast(waiter);
+            } else {
+                lane.running = true;
+                waiter.granted = true;
+            }
+            return lane;
+        });
+        if (waiter.granted) {
+            grant(waiter);
+        }
+    }
+
+    private void release(String conversationId) {
+        Waiter[] next = {null};
+        lanes.compute(conversationId, (key, lane) -> {
+            lane.pending--;
+            next[0] = lane.waiters.pollFirst();
+            if (next[0] == null) {
+                lane.running = false;
+            } else {
+                next[0].granted = true;
+            }
+            return lane.pending == 0 ? null : lane;
+        });
+        // 在 compute 之外唤醒下一轮，避免下一轮同步执行时重入 compute
+        if (next[0] != null) {
+            grant(next[0]);
+        }
+    }
+
+    /**
+     * 等待中被取消：移出队列并释放名额，已经获得执行权的由 doFinally 释放
+     */
+    private void abandon(String conversationId, Waiter waiter) {
+        lanes.computeIfPresent(conversationId, (key, lane) -> {
+            if (lane.waiters.remove(waiter)) {
+                lane.pending--;
+            }
+            return lane.pending == 0 ? null : lane;
+        });
+    }
+
+    private void grant(Waiter waiter) {
+        waitTimer.record(System.nanoTime() - waiter.waitStart, TimeUnit.NANOSECONDS);
+        waiter.sink.success();
+    }
+
+    int activeConversations() {
+        return lanes.size();
+    }
+
+    /**
+     * 单个对话的执行队列，只在 lanes.compute 中修改
+     */
+    private static final class Lane {
+
+        /**
+         * 已占用名额的轮次数，包括正在执行的一轮；sequence 在 compute 之外读取做提前检查
+         */
+        private volatile int pending;
+        private boolean running;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+    }
+
+    /**
+     * 一轮对话结束前必须完成的写入
+     */
+    private static final class TurnHold {
+
+        private final List<Mono<Void>> works = new ArrayList<>();
+        private boolean closed;
+
+        synchronized boolean add(Mono<Void> work) {
+            if (closed) {
+                return false;
+            }
+            works.add(work);
+            return true;
+        }
+
+        synchronized List<Mono<Void>> close() {
+            closed = true;
+            return List.copyOf(works);
+        }
+    }
+
+    private static final class Waiter {
+
+        private MonoSink<Void> sink;
+        private long waitStart;
+        private volatile boolean granted;
+    }
+}
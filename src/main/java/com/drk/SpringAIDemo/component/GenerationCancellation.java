@@ -0,0 +1,168 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 生成取消处理
+ * <p>
+ * 客户端断开后 ResumableStreamRegistry 取消生成，记忆 Advisor 只在流正常结束时保存回复，被取消的回复会丢失。
+ * {@link #advisor} 返回的 Advisor 放在记忆 Advisor 内侧，流被取消时把已生成的部分作为助手消息保存，
+ * 元数据 {@link #TRUNCATED} 为 true。截断的回复不带幂等键写入，客户端用同一 requestId 重试时会重新生成；
+ * 取消可能发生在任意线程（如断开宽限期的定时器），写入在 BlockingCallScheduler 上执行，
+ * 并通过 {@link ConversationTurnSequencer#holdTurnUntil} 挂到当前轮次上，写入完成前同一对话的下一轮不会读取历史。
+ * 指标：chat.generation.cancelled 取消次数，chat.generation.tokens.saved 估算节省的输出 token 数
+ * （按最近完成的回复平均长度减去已生成的长度估算）。
+ * @Author drk
+ * @Date 2026/10/18 23:50
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class GenerationCancellation {
+
+    /**
+     * 助手消息元数据：回复因取消而不完整
+     */
+    public static final String TRUNCATED = "truncated";
+
+    /**
+     * 平均回复长度的平滑系数
+     */
+    private static final double ALPHA = 0.1;
+
+    private final TokenCountEstimator tokenCountEstimator;
+    private final BlockingCallScheduler blockingCallScheduler;
+    private final Counter cancelled;
+    private final DistributionSummary tokensSaved;
+    private volatile double averageCompletionTokens;
+
+    public GenerationCancellation(MeterRegistry meterRegistry, TokenCountEstimator tokenCountEstimator,
+                                  BlockingCallScheduler blockingCallScheduler) {
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.blockingCallScheduler = blockingCallScheduler;
+        this.cancelled = Counter.builder("chat.generation.cancelled").register(meterRegistry);
+        this.tokensSaved = DistributionSummary.builder("chat.generation.tokens.saved")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 保存被取消回复的 Advisor，每个请求一个实例
+     * @param chatMemory 对话记忆，与记忆 Advisor 使用同一个
+     * @param conversationId 对话ID
+     * @param order 在调用链中的顺序，需大于记忆 Advisor
+     */
+    public Advisor advisor(ChatMemory chatMemory, String conversationId, int order) {
+        return new TruncationAdvisor(chatMemory, conversationId, order);
+    }
+
+    private void completed(int tokens) {
+        double average = averageCompletionTokens;
+        averageCompletionTokens = average == 0 ? tokens : average + ALPHA * (tokens - average);
+    }
+
+    /**
+     * @return 保存被截断回复的写入，没有生成内容时为空
+     */
+    private Mono<Void> truncated(ChatMemory chatMemory, String conversationId, String partial) {
+        int generated = partial.isEmpty() ? 0 : tokenCountEstimator.estimate(partial);
+        cancelled.increment();
+        tokensSaved.record(Math.max(0, averageCompletionTokens - generated));
+        log.info("对话 {} 的生成已取消，保存已生成的 {} 个 token", conversationId, generated);
+        if (partial.isEmpty()) {
+            return Mono.empty();
+        }
+        ChatMemory target = chatMemory instanceof IdempotentChatMemory idempotent ? idempotent.withoutRequestId() : chatMemory;
+        return Mono.<Void>fromRunnable(() -> target.add(conversationId, List.of(new AssistantMessage(partial, Map.of(TRUNCATED, true)))))
+                .subscribeOn(blockingCallScheduler.get())
+                .doOnError(e -> log.warn("保存对话 {} 被截断的回复失败", conversationId, e))
+                .onErrorComplete();
+    }
+
+    final class TruncationAdvisor implements CallAdvisor, StreamAdvisor {
+
+        private final ChatMemory chatMemory;
+        private final String conversationId;
+        private final int order;
+
+        private TruncationAdvisor(ChatMemory chatMemory, String conversationId, int order) {
+            this.chatMemory = chatMemory;
+            this.conversationId = conversationId;
+            this.order = order;
+        }
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            return chain.nextCall(request);
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            return Flux.deferContextual(context -> {
+                StringBuilder text = new StringBuilder();
+                AtomicBoolean finished = new AtomicBoolean();
+                return chain.nextStream(request)
+                        .doOnNext(response -> {
+                            String chunk = text(response.chatResponse());
+                            if (chunk != null) {
+                                synchronized (text) {
+                                    text.append(chunk);
+                                }
+                            }
+                        })
+                        .doOnComplete(() -> {
+                            if (finished.compareAndSet(false, true) && !text.isEmpty()) {
+                                completed(tokenCountEstimator.estimate(text.toString()));
+                            }
+                        })
+                        .doOnError(e -> finished.set(true))
+                        .doOnCancel(() -> {
+                            // 取消可能与 onNext 在不同线程
+                            if (finished.compareAndSet(false, true)) {
+                                String partial;
+                                synchronized (text) {
+                                    partial = text.toString();
+                                }
+                                ConversationTurnSequencer.holdTurnUntil(context, truncated(chatMemory, conversationId, partial));
+                            }
+                        });
+            });
+        }
+
+        @Override
+        public String getName() {
+            return "GenerationCancellation";
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+    }
+
+    private static String text(ChatResponse response) {
+        return response == null || response.getResult() == null || response.getResult().getOutput() == null
+                ? null : response.getResult().getOutput().getText();
+    }
+}
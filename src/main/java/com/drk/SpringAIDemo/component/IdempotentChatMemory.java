@@ -0,0 +1,58 @@
+package com.drk.SpringAIDemo.component;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 带客户端请求ID的对话记忆
+ * <p>
+ * 每个请求创建一个实例交给 MessageChatMemoryAdvisor：读取和清空委托给配置的对话记忆，
+ * 写入时带上请求ID生成幂等键，客户端重试同一请求不会重复写入消息。
+ * @Author drk
+ * @Date 2026/10/18 18:10
+ * @Version 1.0
+ */
+public class IdempotentChatMemory implements ChatMemory {
+
+    /**
+     * 请求ID最大长度，与 message_key 列长度对应
+     */
+    public static final int MAX_REQUEST_ID_LENGTH = 64;
+
+    private final ChatMemory delegate;
+    private final InMySqlChatMemory inMySqlChatMemory;
+    private final String requestId;
+
+    public IdempotentChatMemory(ChatMemory delegate, InMySqlChatMemory inMySqlChatMemory, String requestId) {
+        if (requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            throw new IllegalArgumentException("requestId 长度不能超过 " + MAX_REQUEST_ID_LENGTH);
+        }
+        this.delegate = delegate;
+        this.inMySqlChatMemory = inMySqlChatMemory;
+        this.requestId = requestId;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        inMySqlChatMemory.add(conversationId, messages, requestId);
+    }
+
+    /**
+     * 不带请求ID写入的对话记忆。被取消的回复不完整，不能占用幂等键，否则重试时会被当作完整回复直接返回
+     */
+    public ChatMemory withoutRequestId() {
+        return delegate;
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return delegate.get(conversationId);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+    }
+}
@@ -4,21 +4,31 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.pojo.ConversationPage;
 
 import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import com.drk.SpringAIDemo.utils.MessageCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.SystemMessage;
-import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @Author drk
@@ -29,93 +39,164 @@ import java.util.stream.Collectors;
 public class InMySqlChatMemory implements ChatMemory {
 
 
+    /**
+     * 全量读取历史时每页的条数
+     */
+    private static final int HISTORY_PAGE_SIZE = 500;
+
+    /**
+     * 导入时每批写入的条数
+     */
+    private static final int IMPORT_BATCH_SIZE = 500;
+
     private final ChatMessageService chatMessageService;
+    private final ChatSessionService chatSessionService;
     private final ObjectMapper objectMapper;
+    private final ChatMemoryWriteBehindBuffer writeBehindBuffer;
+    private final ChatMemoryCache chatMemoryCache;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final ChatMemoryArchive chatMemoryArchive;
+    private final MessageCodec messageCodec;
+
+    /**
+     * 是否启用窗口读取，启用后 get 只返回最近的消息，供 MessageChatMemoryAdvisor 拼接上下文
+     */
+    @Value("${chat.memory.window.enabled:true}")
+    private boolean windowEnabled;
+
+    /**
+     * 窗口内最多保留的消息条数
+     */
+    @Value("${chat.memory.window.max-messages:20}")
+    private int windowMaxMessages;
+
+    /**
+     * 窗口时间范围（分钟），0 表示不限制
+     */
+    @Value("${chat.memory.window.since-minutes:0}")
+    private long windowSinceMinutes;
+
     // 使用构造函数注入，并添加 @Lazy 注解
     @Autowired
-    public InMySqlChatMemory(@Lazy ChatMessageService chatMessageService, ObjectMapper objectMapper) {
+    public InMySqlChatMemory(@Lazy ChatMessageService chatMessageService, @Lazy ChatSessionService chatSessionService, ObjectMapper objectMapper,
+                             ChatMemoryWriteBehindBuffer writeBehindBuffer, ChatMemoryCache chatMemoryCache,
+                             TokenCountEstimator tokenCountEstimator, ChatMemoryArchive chatMemoryArchive,
+                             MessageCodec messageCodec) {
         this.chatMessageService = chatMessageService;
+        this.chatSessionService = chatSessionService;
         this.objectMapper = objectMapper;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.chatMemoryCache = chatMemoryCache;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.chatMemoryArchive = chatMemoryArchive;
+        this.messageCodec = messageCodec;
     }
 
 
 
     @Override
     public void add(String conversationId, List<Message> messages) {
+        add(conversationId, messages, null);
+    }
+
+    /**
+     * 写入消息，requestId 不为空时按 requestId:消息类型:序号 生成幂等键，客户端重试同一请求时不会重复写入
+     * @param conversationId 对话ID
+     * @param messages 消息
+     * @param requestId 客户端请求ID，可为空
+     */
+    public void add(String conversationId, List<Message> messages, String requestId) {
+        // 已归档的对话先恢复，新消息才能接在原有历史之后
+        chatMemoryArchive.rehydrate(conversationId);
         var memoriesList=new ArrayList<ChatMessageEntity>();
+        Map<String, Integer> typeCounters = new HashMap<>();
         messages.forEach(message -> {
             var chatMessageEntity=new ChatMessageEntity();
             chatMessageEntity.setConversationId(conversationId);
-            chatMessageEntity.setMessageType(message.getMessageType().name());
-            chatMessageEntity.setContent(message.getText());
-            try {
-                chatMessageEntity.setMetadata(objectMapper.writeValueAsString(message.getMetadata()));
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException("Failed to serialize metadata to JSON", e);
+            if (requestId != null) {
+                String type = message.getMessageType().name();
+                chatMessageEntity.setMessageKey(messageKey(requestId, type, typeCounters.merge(type, 1, Integer::sum) - 1));
             }
+            // 元数据、工具调用和 token 用量一并编码，读取时原样还原
+            messageCodec.encode(message, chatMessageEntity);
+            // token 数只在写入时计算一次，按预算裁剪历史时无需重复分词
+            chatMessageEntity.setTokenCount(message.getText() == null ? 0 : tokenCountEstimator.estimate(message.getText()));
             memoriesList.add(chatMessageEntity);
         });
-        chatMessageService.saveBatch(memoriesList);
+        if (requestId != null) {
+            Set<String> stored = storedKeys(conversationId, memoriesList);
+            memoriesList.removeIf(entity -> stored.contains(entity.getMessageKey()));
+            if (memoriesList.isEmpty()) {
+                return;
+            }
+        }
+        // 开启异步写时只入队，由后台线程跨对话批量落库
+        if (writeBehindBuffer.isEnabled()) {
+            writeBehindBuffer.enqueue(memoriesList);
+        } else {
+            chatMessageService.saveMessages(memoriesList);
+        }
+        chatMemoryCache.append(conversationId, memoriesList, this::toMessage, windowEnabled ? windowMaxMessages : 0);
     }
 
+    /**
+     * 获取模型上下文使用的历史消息；启用窗口时只读取最近的消息，单轮开销与对话长度无关。
+     * 活跃对话直接命中 ChatMemoryCache，不再访问数据库
+     */
     @Override
     public List<Message> get(String conversationId) {
-        List<ChatMessageEntity> list = chatMessageService.list(new QueryWrapper<ChatMessageEntity>().eq("conversation_id", conversationId));
-        if (CollectionUtils.isEmpty(list)){
-            return List.of();
-        }
-
-        return list.stream().map(chatMessageEntity -> {
-            String type = chatMessageEntity.getMessageType();
-            String content = chatMessageEntity.getContent();
-            Message message;
-            switch (type) {
-                case "SYSTEM":
-                    message = new SystemMessage(content);
-                    break;
-                case "USER":
-                    message = new UserMessage(content);
-                    break;
-                case "ASSISTANT":
-                    message = new AssistantMessage(content);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unknown message type: " + type);
-            }
-            return message;
-        }).toList();
-
+        chatMemoryArchive.rehydrate(conversationId);
+        List<ChatMemoryCache.CachedMessage> cached = chatMemoryCache.get(conversationId, () -> loadContext(conversationId), this::toMessage);
+        LocalDateTime since = windowSince();
+        // 压缩摘要不受时间窗口限制
+        return cached.stream()
+                .filter(c -> since == null || isSummary(c.entity()) || c.entity().getCreatedAt() == null || !c.entity().getCreatedAt().isBefore(since))
+                .map(ChatMemoryCache.CachedMessage::message)
+                .toList();
     }
 
     @Override
     public void clear(String conversationId) {
+        writeBehindBuffer.discard(conversationId);
+        chatMemoryArchive.discard(conversationId);
         chatMessageService.remove(new QueryWrapper<ChatMessageEntity>().eq(StringUtils.isNoneBlank(conversationId),"conversation_id", conversationId));
+        chatSessionService.remove(new QueryWrapper<ChatSessionEntity>().eq(StringUtils.isNoneBlank(conversationId),"session_id", conversationId));
+        chatMemoryCache.invalidate(conversationId);
     }
 
     /**
-     * 获取所有用户对话列表
+     * 查找客户端请求已经生成并保存的回复，供重试请求直接返回
+     * @param conversationId 对话ID
+     * @param requestId 客户端请求ID
+     * @return 已保存的助手回复，不存在时为空
      */
-    public List<Map<String, Object>>  findConversationIds() {
-        return chatMessageService.list()
-                .stream()
-                .filter(chatMessageEntity -> chatMessageEntity.getMessageType().equals("USER"))
-                .collect(Collectors.groupingBy(ChatMessageEntity::getConversationId))
-                .entrySet()
-                .stream()
-                .map(entry -> {
-                    Map<String, Object> map = new HashMap<>();
-                    map.put("conversationId", entry.getKey());
-                    map.put("messages", entry.getValue());
-                    return map;
-                })
-                .collect(Collectors.toList());
+    public Optional<String> findReply(String conversationId, String requestId) {
+        ChatMessageEntity probe = new ChatMessageEntity();
+        probe.setConversationId(conversationId);
+        probe.setMessageKey(messageKey(requestId, "ASSISTANT", 0));
+        return writeBehindBuffer.pendingSnapshot(conversationId).stream()
+                .filter(pending -> probe.getMessageKey().equals(pending.getMessageKey()))
+                .findFirst()
+                .or(() -> chatMessageService.listByMessageKeys(List.of(probe)).stream().findFirst())
+                .map(ChatMessageEntity::getContent);
+    }
+
+    /**
+     * 游标分页获取对话列表，数据来自增量维护的 chat_sessions 摘要表，不再扫描 chat_memory
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页条数
+     */
+    public ConversationPage findConversations(String cursor, int size) {
+        return chatSessionService.listConversations(cursor, size);
     }
 
     /**
      * 根据对话ID获取消息列表
      */
     public List<Message> findByConversationId(String conversationId) {
-        return get(conversationId);
+        chatMemoryArchive.rehydrate(conversationId);
+        List<ChatMessageEntity> pending = writeBehindBuffer.pendingSnapshot(conversationId);
+        return toMessages(writeBehindBuffer.merge(chatMessageService.listAllOrdered(conversationId, HISTORY_PAGE_SIZE), pending));
     }
 
     /**
@@ -124,4 +205,139 @@ public class InMySqlChatMemory implements ChatMemory {
     public void deleteByConversationId(String conversationId) {
         clear(conversationId);
     }
+
+    /**
+     * 以 NDJSON 格式流式导出消息，每行一条，内存占用与消息总数无关
+     * @param conversationId 对话ID，为空时按时间范围导出所有对话（仍在冷存储中的对话不包含在内）
+     * @param from 起始时间（包含）
+     * @param to 结束时间（不包含）
+     * @param out 输出流，由调用方关闭
+     */
+    public void exportMessages(String conversationId, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        if (conversationId != null) {
+            chatMemoryArchive.rehydrate(conversationId);
+        }
+        chatMessageService.exportMessages(conversationId, from, to, entity -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(entity));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException("写出导出数据失败", e);
+            }
+        });
+        out.flush();
+    }
+
+    /**
+     * 从 NDJSON 流批量导入消息，沿用原ID，重复导入同一文件不会产生重复消息
+     * @param in 输入流，每行一条消息
+     * @return 新写入的消息条数
+     */
+    public int importMessages(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<ChatMessageEntity> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int imported = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            batch.add(parseImportLine(line, lineNumber));
+            if (batch.size() >= IMPORT_BATCH_SIZE) {
+                imported += importBatch(batch);
+                batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += importBatch(batch);
+        }
+        return imported;
+    }
+
+    private ChatMessageEntity parseImportLine(String line, int lineNumber) {
+        ChatMessageEntity entity;
+        try {
+            entity = objectMapper.readValue(line, ChatMessageEntity.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("第 " + lineNumber + " 行不是有效的消息 JSON", e);
+        }
+        if (StringUtils.isAnyBlank(entity.getConversationId(), entity.getMessageType()) || entity.getContent() == null) {
+            throw new IllegalArgumentException("第 " + lineNumber + " 行缺少 conversationId、messageType 或 content");
+        }
+        // created_at 为空时由数据库取当前时间，避免应用与数据库时区不一致
+        if (entity.getTokenCount() == null) {
+            entity.setTokenCount(tokenCountEstimator.estimate(entity.getContent()));
+        }
+        return entity;
+    }
+
+    private int importBatch(List<ChatMessageEntity> batch) {
+        List<ChatMessageEntity> imported = chatMessageService.importMessages(batch);
+        imported.stream().map(ChatMessageEntity::getConversationId).distinct().forEach(chatMemoryCache::invalidate);
+        return imported.size();
+    }
+
+    /**
+     * 从数据库加载模型上下文，合并尚未落库的消息
+     */
+    private List<ChatMessageEntity> loadContext(String conversationId) {
+        // 未落库快照必须在读库之前获取，合并时按ID去重
+        List<ChatMessageEntity> pending = writeBehindBuffer.pendingSnapshot(conversationId);
+        if (!windowEnabled) {
+            return writeBehindBuffer.merge(chatMessageService.listAllOrdered(conversationId, HISTORY_PAGE_SIZE), pending);
+        }
+        List<ChatMessageEntity> list = writeBehindBuffer.merge(chatMessageService.listLatestWindow(conversationId, windowSince(), windowMaxMessages), pending);
+        if (list.size() > windowMaxMessages) {
+            list = list.subList(list.size() - windowMaxMessages, list.size());
+        }
+        // 窗口读满说明可能还有更早的消息，被压缩的部分以摘要形式放在最前面
+        if (list.size() == windowMaxMessages && !isSummary(list.get(0))) {
+            ChatMessageEntity summary = chatMessageService.getSummary(conversationId);
+            if (summary != null) {
+                List<ChatMessageEntity> withSummary = new ArrayList<>(list.size() + 1);
+                withSummary.add(summary);
+                withSummary.addAll(list);
+                return withSummary;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 已落库或仍在写缓冲中的幂等键
+     */
+    private Set<String> storedKeys(String conversationId, List<ChatMessageEntity> keyed) {
+        Set<String> stored = new HashSet<>();
+        writeBehindBuffer.pendingSnapshot(conversationId).forEach(pending -> stored.add(pending.getMessageKey()));
+        chatMessageService.listByMessageKeys(keyed).forEach(row -> stored.add(row.getMessageKey()));
+        return stored;
+    }
+
+    static String messageKey(String requestId, String messageType, int index) {
+        return requestId + ":" + messageType + ":" + index;
+    }
+
+    /**
+     * chat_memory 中只有压缩摘要会以 SYSTEM 类型存储
+     */
+    static boolean isSummary(ChatMessageEntity entity) {
+        return "SYSTEM".equals(entity.getMessageType());
+    }
+
+    private LocalDateTime windowSince() {
+        return windowEnabled && windowSinceMinutes > 0 ? LocalDateTime.now().minusMinutes(windowSinceMinutes) : null;
+    }
+
+    private List<Message> toMessages(List<ChatMessageEntity> list) {
+        if (CollectionUtils.isEmpty(list)){
+            return List.of();
+        }
+        return list.stream().map(this::toMessage).toList();
+    }
+
+    Message toMessage(ChatMessageEntity chatMessageEntity) {
+        return messageCodec.decode(chatMessageEntity);
+    }
 }
@@ -0,0 +1,321 @@
+package com.drk.SpringAIDemo.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并行执行工具调用并缓存确定性工具的结果
+ * <p>
+ * 模型在一轮回复中请求多个工具时，Spring AI 默认的 ToolCallingManager 依次执行。
+ * 这里先在 BlockingCallScheduler 上并行执行本轮的全部工具调用（每轮最多 chat.tool.parallel.max-concurrency 个同时执行），
+ * 再交给默认实现按原顺序组装工具响应，returnDirect、异常处理和调用追踪与原来一致。
+ * chat.tool.cache.ttl 中配置了过期时间的工具视为确定性工具，相同参数的结果在过期前直接复用，跨轮次和跨对话共享；
+ * 未配置的工具（如查询当前时间、设置闹钟）每次都执行。
+ * 指标：chat.tool.cache{tool,result=hit|miss}，本轮工具总耗时 chat.tool.batch 和并行节省的时间 chat.tool.batch.saved；
+ * 单个工具的耗时见 ToolCallbackRegistry 的 chat.tool.duration。
+ * @Author drk
+ * @Date 2026/10/19 01:10
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final BlockingCallScheduler blockingCallScheduler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.tool.parallel.enabled:true}")
+    private boolean parallel;
+
+    /**
+     * 每轮最多同时执行的工具调用数
+     */
+    @Value("${chat.tool.parallel.max-concurrency:4}")
+    private int maxConcurrency;
+
+    /**
+     * 工具结果的过期时间，格式为 工具名=时长，如 maps_geo=1h；MCP 工具可以不带客户端前缀
+     */
+    @Value("${chat.tool.cache.ttl:}")
+    private List<String> ttlPolicies;
+
+    @Value("${chat.tool.cache.max-entries:1000}")
+    private long maxEntries;
+
+    private final Map<String, Duration> ttls = new LinkedHashMap<>();
+    private Cache<Key, String> cache;
+
+    public ParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                      ObjectProvider<ObservationRegistry> observationRegistry,
+                                      BlockingCallScheduler blockingCallScheduler,
+                                      MeterRegistry meterRegistry) {
+        this.delegate = ToolCallingManager.builder()
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                .build();
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.blockingCallScheduler = blockingCallScheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String policy : ttlPolicies) {
+            int separator = policy.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("chat.tool.cache.ttl 格式应为 工具名=时长: " + policy);
+            }
+            ttls.put(policy.substring(0, separator).trim(), DurationStyle.detectAndParse(policy.substring(separator + 1).trim()));
+        }
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<Key, String>() {
+                    @Override
+                    public long expireAfterCreate(Key key, String value, long currentTime) {
+                        return key.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, String value, long currentTime, long currentDuration) {
+                        return key.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, String value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "toolResults");
+        if (!ttls.isEmpty()) {
+            log.info("工具结果缓存：{}", ttls);
+        }
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(output -> !CollectionUtils.isEmpty(output.getToolCalls()))
+                .findFirst()
+                .orElse(null);
+        if (assistantMessage == null) {
+            return delegate.executeToolCalls(prompt, chatResponse);
+        }
+        List<ToolCallback> toolCallbacks = prompt.getOptions() instanceof ToolCallingChatOptions options
+                ? options.getToolCallbacks() : List.of();
+        Map<String, ToolCallback> resolved = new LinkedHashMap<>();
+        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+            ToolCallback callback = resolved.computeIfAbsent(toolCall.name(), name -> toolCallbacks.stream()
+                    .filter(tool -> name.equals(tool.getToolDefinition().name()))
+                    .findFirst()
+                    .orElseGet(() -> toolCallbackResolver.resolve(name)));
+            if (callback == null) {
+                // 由默认实现报告找不到工具
+                return delegate.executeToolCalls(prompt, chatResponse);
+            }
+        }
+
+        Map<Key, Deque<Outcome>> outcomes = execute(assistantMessage.getToolCalls(), resolved, toolContext(prompt, assistantMessage));
+
+        ToolCallingChatOptions options = prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
+                ? toolCallingChatOptions.copy() : new DefaultToolCallingChatOptions();
+        options.setToolCallbacks(resolved.values().stream()
+                .map(callback -> (ToolCallback) new CompletedToolCallback(callback, outcomes))
+                .toList());
+        return delegate.executeToolCalls(prompt.mutate().chatOptions(options).build(), chatResponse);
+    }
+
+    /**
+     * 执行本轮的全部工具调用，结果按调用顺序保存，供默认实现依次取用
+     */
+    private Map<Key, Deque<Outcome>> execute(List<AssistantMessage.ToolCall> toolCalls, Map<String, ToolCallback> resolved,
+                                             ToolContext toolContext) {
+        long start = System.nanoTime();
+        List<Outcome> results;
+        if (!parallel || toolCalls.size() == 1) {
+            results = toolCalls.stream().map(toolCall -> call(resolved.get(toolCall.name()), toolCall, toolContext)).toList();
+        } else {
+            results = Flux.fromIterable(toolCalls)
+                    .flatMapSequential(toolCall -> Mono.fromCallable(() -> call(resolved.get(toolCall.name()), toolCall, toolContext))
+                            .subscribeOn(blockingCallScheduler.get()), Math.max(1, maxConcurrency))
+                    .collectList()
+                    .block();
+        }
+        long total = System.nanoTime() - start;
+
+        Map<Key, Deque<Outcome>> outcomes = new HashMap<>();
+        long sum = 0;
+        for (Outcome outcome : results) {
+            outcomes.computeIfAbsent(outcome.key(), key -> new ArrayDeque<>()).add(outcome);
+            sum += outcome.nanos();
+        }
+        Timer.builder("chat.tool.batch")
+                .tag("parallel", String.valueOf(parallel && toolCalls.size() > 1))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(total, TimeUnit.NANOSECONDS);
+        Timer.builder("chat.tool.batch.saved").register(meterRegistry)
+                .record(Math.max(0, sum - total), TimeUnit.NANOSECONDS);
+        return outcomes;
+    }
+
+    private Outcome call(ToolCallback callback, AssistantMessage.ToolCall toolCall, ToolContext toolContext) {
+        Key key = new Key(toolCall.name(), toolCall.arguments(), ttl(toolCall.name()));
+        if (key.ttl() != null) {
+            String cached = cache.getIfPresent(key);
+            counter(toolCall.name(), cached != null ? "hit" : "miss").increment();
+            if (cached != null) {
+                return new Outcome(key, cached, null, 0);
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            String result = callback.call(toolCall.arguments(), toolContext);
+            if (key.ttl() != null && result != null) {
+                cache.put(key, result);
+            }
+            return new Outcome(key, result, null, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new Outcome(key, null, e, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 工具的缓存时间，未配置时返回 null；配置中的名称可以是 MCP 工具去掉客户端前缀后的名称
+     */
+    Duration ttl(String toolName) {
+        Duration ttl = ttls.get(toolName);
+        if (ttl != null) {
+            return ttl;
+        }
+        for (Map.Entry<String, Duration> entry : ttls.entrySet()) {
+            if (toolName.endsWith("_" + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Counter counter(String tool, String result) {
+        return Counter.builder("chat.tool.cache")
+                .tag("tool", tool)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 与默认实现相同的工具上下文：配置了 toolContext 时附带工具调用前的对话历史
+     */
+    private static ToolContext toolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions options) || CollectionUtils.isEmpty(options.getToolContext())) {
+            return new ToolContext(Map.of());
+        }
+        List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+        history.add(assistantMessage);
+        Map<String, Object> context = new HashMap<>(options.getToolContext());
+        context.put(ToolContext.TOOL_CALL_HISTORY, history);
+        return new ToolContext(context);
+    }
+
+    private record Key(String tool, String arguments, Duration ttl) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && tool.equals(other.tool) && Objects.equals(arguments, other.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tool, arguments);
+        }
+    }
+
+    private record Outcome(Key key, String result, RuntimeException error, long nanos) {
+    }
+
+    /**
+     * 返回已执行结果的工具回调，工具定义和元数据（returnDirect）与原工具相同
+     */
+    private record CompletedToolCallback(ToolCallback delegate, Map<Key, Deque<Outcome>> outcomes) implements ToolCallback {
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            Deque<Outcome> queue = outcomes.get(new Key(delegate.getToolDefinition().name(), toolInput, null));
+            Outcome outcome = queue == null ? null : queue.poll();
+            if (outcome == null) {
+                return delegate.call(toolInput, toolContext);
+            }
+            if (outcome.error() != null) {
+                throw outcome.error();
+            }
+            return outcome.result();
+        }
+    }
+}
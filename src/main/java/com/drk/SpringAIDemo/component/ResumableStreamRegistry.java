@@ -0,0 +1,223 @@
+package com.drk.SpringAIDemo.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可续传的 SSE 流
+ * <p>
+ * 每次生成分配一个 streamId，生成过程与客户端连接解耦，输出写入有界的重放缓冲。
+ * 每帧的事件ID为 streamId:序号；客户端断线后带 Last-Event-ID 重连，直接从缓冲中续传，
+ * 生成中的流继续实时推送，不再重新调用模型。结束后的流保留 ttl-seconds 后清除。
+ * 所有客户端都断开且 disconnect-grace-ms 内没有重连时取消生成，取消信号沿调用链传到模型的 HTTP 流；
+ * 注册后一直没有客户端订阅的流同样在 disconnect-grace-ms 后结束，随后按 ttl-seconds 清除。
+ * 生成按模型的速度写入缓冲，不受客户端读取速度限制；每个客户端最多积压 max-frames 帧未写出，
+ * 超出后不再为该连接缓冲新帧，写完已缓冲的帧后以错误结束（生成不受影响，客户端可带 Last-Event-ID 续传），
+ * 缓冲不会因慢客户端无限增长。未启用续传（或流数量达到上限）时直接输出，慢客户端的积压上限同样为 max-frames。
+ * @Author drk
+ * @Date 2026/10/18 19:30
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ResumableStreamRegistry {
+
+    /**
+     * 续传失败（缓冲已淘汰）时发送的事件内容，客户端收到后应重新发起请求
+     */
+    public static final String EXPIRED_DATA = "data: {\"error\": \"stream expired\"}\n\n";
+
+    private final Map<String, ResumableStream> streamCache = new ConcurrentHashMap<>();
+
+    @Value("${chat.stream.resume.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每个流最多保留的帧数，也是每个客户端最多积压的未写出帧数
+     */
+    @Value("${chat.stream.resume.max-frames:2048}")
+    private int maxFrames;
+
+    /**
+     * 流结束后保留的时间（秒）
+     */
+    @Value("${chat.stream.resume.ttl-seconds:120}")
+    private long ttlSeconds;
+
+    /**
+     * 同时保留的流数量上限，超出后新的生成不再支持续传
+     */
+    @Value("${chat.stream.resume.max-streams:10000}")
+    private int maxStreams;
+
+    /**
+     * 所有客户端断开后等待重连的时间（毫秒），超时仍无客户端则取消生成；小于 0 表示不取消
+     */
+    @Value("${chat.stream.resume.disconnect-grace-ms:10000}")
+    private long disconnectGraceMs;
+
+    /**
+     * 开始一次可续传的生成
+     * @param frames 已包含结束标记和错误事件的帧
+     * @return 推送给当前客户端的事件流
+     */
+    public Flux<ServerSentEvent<String>> start(Flux<String> frames) {
+        if (!enabled || streamCache.size() >= maxStreams) {
+            return frames.map(frame -> ServerSentEvent.builder(frame).build())
+                    .onBackpressureBuffer(maxFrames,
+                            event -> log.info("客户端读取过慢，积压超过 {} 帧，断开连接", maxFrames),
+                            BufferOverflowStrategy.ERROR);
+        }
+        String streamId = UUID.randomUUID().toString();
+        ResumableStream stream = new ResumableStream(Sinks.many().replay().limit(maxFrames));
+        streamCache.put(streamId, stream);
+        // 一直没有客户端订阅时同样按断开处理
+        scheduleCancel(streamId, stream);
+        Flux<ServerSentEvent<String>> upstream = frames
+                .map(frame -> ServerSentEvent.builder(frame).id(streamId + ":" + stream.sequence.incrementAndGet()).build())
+                .doFinally(signal -> stream.finishedAt = System.currentTimeMillis());
+        // 第一个客户端订阅后才开始生成，之后的生成不再依赖该连接
+        return track(streamId, stream, stream.sink.asFlux().doOnSubscribe(subscription -> {
+            if (stream.started.compareAndSet(false, true)) {
+                stream.upstream = upstream.subscribe(stream.sink::tryEmitNext, stream.sink::tryEmitError, stream.sink::tryEmitComplete);
+            }
+        }));
+    }
+
+    /**
+     * 按 Last-Event-ID 续传
+     * @param lastEventId 客户端收到的最后一个事件ID（streamId:序号）
+     * @return 该事件之后的帧；流不存在或ID无法识别时返回 null，由调用方重新生成
+     */
+    public Flux<ServerSentEvent<String>> resume(String lastEventId) {
+        int separator = lastEventId == null ? -1 : lastEventId.lastIndexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        ResumableStream stream = streamCache.get(lastEventId.substring(0, separator));
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (stream == null) {
+            return null;
+        }
+        return track(lastEventId.substring(0, separator), stream, stream.sink.asFlux()
+                .filter(event -> sequenceOf(event) > lastSequence)
+                .switchOnFirst((first, events) -> {
+                    // 缓冲中最早的帧已经晚于客户端的位置，中间的内容无法补齐
+                    if (first.hasValue() && sequenceOf(first.get()) > lastSequence + 1) {
+                        return Flux.just(ServerSentEvent.builder(EXPIRED_DATA).build());
+                    }
+                    return events;
+                }));
+    }
+
+    /**
+     * 统计连接中的客户端，最后一个客户端断开时开始计时，期间有客户端重连则取消计时。
+     * 每个客户端单独缓冲未写出的帧，重放缓冲中的帧立即取走，慢客户端不会让缓冲的旧帧一直保留
+     */
+    private Flux<ServerSentEvent<String>> track(String streamId, ResumableStream stream, Flux<ServerSentEvent<String>> events) {
+        Flux<ServerSentEvent<String>> bounded = events.onBackpressureBuffer(maxFrames,
+                event -> log.info("客户端读取过慢，积压超过 {} 帧，断开流 {} 的连接", maxFrames, streamId),
+                BufferOverflowStrategy.ERROR);
+        if (disconnectGraceMs < 0) {
+            return bounded;
+        }
+        return bounded
+                .doOnSubscribe(subscription -> {
+                    stream.clients.incrementAndGet();
+                    Disposable pending = stream.pendingCancel;
+                    if (pending != null) {
+                        pending.dispose();
+                    }
+                })
+                .doFinally(signal -> {
+                    if (stream.clients.decrementAndGet() == 0 && stream.finishedAt == 0) {
+                        scheduleCancel(streamId, stream);
+                    }
+                });
+    }
+
+    private void scheduleCancel(String streamId, ResumableStream stream) {
+        if (disconnectGraceMs >= 0) {
+            stream.pendingCancel = Mono.delay(Duration.ofMillis(disconnectGraceMs))
+                    .subscribe(tick -> cancelIfAbandoned(streamId, stream));
+        }
+    }
+
+    private void cancelIfAbandoned(String streamId, ResumableStream stream) {
+        if (stream.clients.get() > 0 || stream.finishedAt > 0) {
+            return;
+        }
+        if (stream.started.compareAndSet(false, true)) {
+            log.info("流 {} 注册后 {} ms 内没有客户端订阅，不再开始生成", streamId, disconnectGraceMs);
+        } else {
+            Disposable upstream = stream.upstream;
+            if (upstream == null) {
+                // 第一个客户端正在订阅
+                return;
+            }
+            log.info("客户端已断开 {} ms，取消生成 {}", disconnectGraceMs, streamId);
+            upstream.dispose();
+        }
+        stream.finishedAt = System.currentTimeMillis();
+        stream.sink.tryEmitComplete();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.stream.resume.cleanup-interval-ms:30000}")
+    public void evictFinished() {
+        long expireBefore = System.currentTimeMillis() - ttlSeconds * 1000;
+        int before = streamCache.size();
+        streamCache.entrySet().removeIf(entry -> {
+            ResumableStream stream = entry.getValue();
+            long finishedAt = stream.finishedAt;
+            // 不取消生成时（disconnect-grace-ms < 0），从未订阅的流按注册时间清除
+            return finishedAt > 0 ? finishedAt < expireBefore : !stream.started.get() && stream.createdAt < expireBefore;
+        });
+        log.debug("清除已结束的可续传流 {} 个", before - streamCache.size());
+    }
+
+    int size() {
+        return streamCache.size();
+    }
+
+    private static long sequenceOf(ServerSentEvent<String> event) {
+        String id = event.id();
+        return id == null ? 0 : Long.parseLong(id.substring(id.lastIndexOf(':') + 1));
+    }
+
+    private static final class ResumableStream {
+
+        private final Sinks.Many<ServerSentEvent<String>> sink;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicInteger clients = new AtomicInteger();
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long finishedAt;
+        private volatile Disposable upstream;
+        private volatile Disposable pendingCancel;
+
+        private ResumableStream(Sinks.Many<ServerSentEvent<String>> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 多模型路由
+ * <p>
+ * 按顺序配置多个后端 ChatModel，每个后端记录最近的响应耗时（阻塞调用为总耗时，流式调用为首个 token 耗时）。
+ * 所有后端样本都足够时按 p95 从低到高选择主后端，否则按配置顺序。
+ * 对冲：主后端超过其 p95（没有样本时为 initial-hedge-delay）仍未返回首个结果时，再向下一个后端发起同样的请求，
+ * 先返回的一方胜出，另一方被取消；主后端在此之前出错则立即发起。两者都失败时依次回退到剩余后端。
+ * 工具由路由模型执行而不是后端模型：后端请求关闭 internalToolExecutionEnabled，只返回工具调用，
+ * 胜出的后端返回工具调用后由 ToolCallingManager 执行，之后的各轮都交给该后端，不再对冲或回退。
+ * 这样对冲只发生在第一个结果之前，落败的后端不会执行任何工具（如设置闹钟、MCP 工具）。
+ * 流式调用一旦输出了内容就不再切换后端。
+ * 指标：chat.routing.latency{backend,mode}、chat.routing.errors{backend}、chat.routing.hedges、chat.routing.wins{backend}。
+ * @Author drk
+ * @Date 2026/10/18 22:00
+ * @Version 1.0
+ */
+@Slf4j
+public class RoutingChatModel implements ChatModel {
+
+    /**
+     * 路由参数
+     * @param hedgeEnabled 是否启用对冲
+     * @param hedgePercentile 对冲等待时间取的分位数
+     * @param initialHedgeDelay 后端样本不足时的对冲等待时间
+     * @param minHedgeDelay 对冲等待时间下限，避免上游很快时几乎每个请求都对冲
+     * @param minSamples 参与按耗时排序所需的最少样本数
+     * @param windowSize 每个后端保留的最近样本数
+     */
+    public record Settings(boolean hedgeEnabled, double hedgePercentile, Duration initialHedgeDelay,
+                           Duration minHedgeDelay, int minSamples, int windowSize) {
+    }
+
+    private final List<Backend> backends;
+    private final Settings settings;
+    private final MeterRegistry meterRegistry;
+    private final Scheduler scheduler;
+    private final ToolCallingManager toolCallingManager;
+    private final Counter hedgeCounter;
+
+    /**
+     * @param chatModels 后端名称到模型的映射，按迭代顺序作为默认优先级；第一个后端的默认选项作为路由模型的默认选项
+     */
+    public RoutingChatModel(Map<String, ChatModel> chatModels, Settings settings, MeterRegistry meterRegistry) {
+        this(chatModels, settings, meterRegistry, Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param scheduler 执行阻塞模型调用的调度器
+     */
+    public RoutingChatModel(Map<String, ChatModel> chatModels, Settings settings, MeterRegistry meterRegistry, Scheduler scheduler) {
+        this(chatModels, settings, meterRegistry, scheduler, ToolCallingManager.builder().build());
+    }
+
+    /**
+     * @param toolCallingManager 执行胜出后端返回的工具调用
+     */
+    public RoutingChatModel(Map<String, ChatModel> chatModels, Settings settings, MeterRegistry meterRegistry, Scheduler scheduler,
+                            ToolCallingManager toolCallingManager) {
+        if (chatModels.isEmpty()) {
+            throw new IllegalArgumentException("至少需要配置一个后端模型");
+        }
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = scheduler;
+        this.toolCallingManager = toolCallingManager;
+        this.hedgeCounter = Counter.builder("chat.routing.hedges").register(meterRegistry);
+        List<Backend> list = new ArrayList<>();
+        chatModels.forEach((name, model) -> list.add(new Backend(name, model, list.size(), settings.windowSize())));
+        this.backends = List.copyOf(list);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return backends.get(0).model.getDefaultOptions();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Backend> ordered = route(false);
+        boolean hedge = settings.hedgeEnabled() && ordered.size() >= 2;
+        Prompt modelPrompt = withoutInternalToolExecution(prompt);
+        Mono<Routed> result = hedge ? hedgedCall(ordered, modelPrompt) : blockingCall(ordered.get(0), modelPrompt);
+        for (int i = hedge ? 2 : 1; i < ordered.size(); i++) {
+            Backend fallback = ordered.get(i);
+            result = result.onErrorResume(e -> {
+                log.warn("模型调用失败，回退到 {}: {}", fallback.name, e.getMessage());
+                return blockingCall(fallback, modelPrompt);
+            });
+        }
+        return continueWithTools(prompt, result.block());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        List<Backend> ordered = route(true);
+        boolean hedge = settings.hedgeEnabled() && ordered.size() >= 2;
+        Prompt modelPrompt = withoutInternalToolExecution(prompt);
+        Flux<Routed> result = hedge ? hedgedStream(ordered, modelPrompt) : timedStream(ordered.get(0), modelPrompt);
+        for (int i = hedge ? 2 : 1; i < ordered.size(); i++) {
+            Backend fallback = ordered.get(i);
+            result = fallbackBeforeFirstToken(result, () -> timedStream(fallback, modelPrompt), fallback);
+        }
+        return result.concatMap(routed -> continueStreamWithTools(prompt, routed));
+    }
+
+    /**
+     * 执行胜出后端返回的工具调用，后续各轮都由该后端回答，与 OpenAiChatModel 内部执行工具的流程一致
+     */
+    private ChatResponse continueWithTools(Prompt prompt, Routed routed) {
+        Prompt current = prompt;
+        ChatResponse response = routed.response();
+        while (toolExecutionRequired(current, response)) {
+            ToolExecutionResult result = toolCallingManager.executeToolCalls(current, response);
+            if (result.returnDirect()) {
+                return ChatResponse.builder().from(response).generations(ToolExecutionResult.buildGenerations(result)).build();
+            }
+            current = new Prompt(result.conversationHistory(), prompt.getOptions());
+            response = timedCall(routed.backend(), withoutInternalToolExecution(current));
+        }
+        return response;
+    }
+
+    private Flux<ChatResponse> continueStreamWithTools(Prompt prompt, Routed routed) {
+        ChatResponse response = routed.response();
+        if (!toolExecutionRequired(prompt, response)) {
+            return Flux.just(response);
+        }
+        return Flux.defer(() -> {
+            ToolExecutionResult result = toolCallingManager.executeToolCalls(prompt, response);
+            if (result.returnDirect()) {
+                return Flux.just(ChatResponse.builder().from(response).generations(ToolExecutionResult.buildGenerations(result)).build());
+            }
+            Prompt next = new Prompt(result.conversationHistory(), prompt.getOptions());
+            return timedStream(routed.backend(), withoutInternalToolExecution(next))
+                    .concatMap(nextRouted -> continueStreamWithTools(next, nextRouted));
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * 请求的工具是否应由路由模型执行：工具调用开启了内部执行（未设置时默认开启）且模型返回了工具调用
+     */
+    private static boolean toolExecutionRequired(Prompt prompt, ChatResponse response) {
+        return internalToolExecution(prompt) && response != null && response.hasToolCalls();
+    }
+
+    private static boolean internalToolExecution(Prompt prompt) {
+        return prompt.getOptions() instanceof ToolCallingChatOptions options
+                && !Boolean.FALSE.equals(options.getInternalToolExecutionEnabled());
+    }
+
+    /**
+     * 发给后端的请求：关闭内部工具执行，后端只返回工具调用
+     */
+    static Prompt withoutInternalToolExecution(Prompt prompt) {
+        if (!internalToolExecution(prompt)) {
+            return prompt;
+        }
+        ToolCallingChatOptions options = prompt.getOptions().copy();
+        options.setInternalToolExecutionEnabled(false);
+        return prompt.mutate().chatOptions(options).build();
+    }
+
+    /**
+     * 主后端与对冲后端竞争，先返回的一方胜出
+     */
+    private Mono<Routed> hedgedCall(List<Backend> ordered, Prompt prompt) {
+        Backend primary = ordered.get(0);
+        Backend secondary = ordered.get(1);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Mono<Routed> primaryCall = blockingCall(primary, prompt).doOnError(e -> primaryFailed.tryEmitEmpty());
+        Mono<Routed> secondaryCall = Mono.defer(() -> {
+                    hedgeCounter.increment();
+                    return blockingCall(secondary, prompt);
+                })
+                .delaySubscription(Mono.firstWithSignal(Mono.delay(hedgeDelay(primary, false)).then(), primaryFailed.asMono()));
+        return Mono.firstWithValue(primaryCall, secondaryCall);
+    }
+
+    private Mono<Routed> blockingCall(Backend backend, Prompt prompt) {
+        return Mono.fromCallable(() -> new Routed(backend, timedCall(backend, prompt))).subscribeOn(scheduler);
+    }
+
+    private Flux<Routed> hedgedStream(List<Backend> ordered, Prompt prompt) {
+        Backend primary = ordered.get(0);
+        Backend secondary = ordered.get(1);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Flux<Routed> primaryStream = timedStream(primary, prompt).doOnError(e -> primaryFailed.tryEmitEmpty());
+        Flux<Routed> secondaryStream = Flux.defer(() -> {
+                    hedgeCounter.increment();
+                    return timedStream(secondary, prompt);
+                })
+                .delaySubscription(Mono.firstWithSignal(Mono.delay(hedgeDelay(primary, true)).then(), primaryFailed.asMono()));
+        // 先输出内容的一方胜出，另一方被取消
+        return Flux.firstWithValue(primaryStream, secondaryStream);
+    }
+
+    private Flux<Routed> fallbackBeforeFirstToken(Flux<Routed> stream, Supplier<Flux<Routed>> fallback, Backend backend) {
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean();
+            return stream.doOnNext(response -> emitted.set(true))
+                    .onErrorResume(e -> {
+                        if (emitted.get()) {
+                            return Flux.error(e);
+                        }
+                        log.warn("模型流式调用失败，回退到 {}: {}", backend.name, e.getMessage());
+                        return fallback.get();
+                    });
+        });
+    }
+
+    private ChatResponse timedCall(Backend backend, Prompt prompt) {
+        long start = System.nanoTime();
+        try {
+            ChatResponse response = backend.model.call(promptFor(backend, prompt));
+            backend.record(System.nanoTime() - start, false, meterRegistry);
+            win(backend);
+            return response;
+        } catch (RuntimeException e) {
+            // 对冲中落败被取消的调用不计为错误
+            if (!Thread.currentThread().isInterrupted()) {
+                error(backend);
+            }
+            throw e;
+        }
+    }
+
+    private Flux<Routed> timedStream(Backend backend, Prompt prompt) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return backend.model.stream(promptFor(backend, prompt))
+                    .doOnNext(response -> {
+                        if (first.compareAndSet(true, false)) {
+                            backend.record(System.nanoTime() - start, true, meterRegistry);
+                            win(backend);
+                        }
+                    })
+                    .doOnError(e -> error(backend))
+                    .map(response -> new Routed(backend, response));
+        });
+    }
+
+    /**
+     * 路由顺序：所有后端样本都足够时按 p95 升序，否则按配置顺序
+     */
+    List<Backend> route(boolean stream) {
+        boolean measured = backends.stream().allMatch(backend -> backend.window(stream).size() >= settings.minSamples());
+        if (!measured) {
+            return backends;
+        }
+        List<Backend> ordered = new ArrayList<>(backends);
+        ordered.sort(Comparator.comparingLong((Backend backend) -> backend.window(stream).percentile(settings.hedgePercentile()))
+                .thenComparingInt(backend -> backend.order));
+        return ordered;
+    }
+
+    Duration hedgeDelay(Backend backend, boolean stream) {
+        LatencyWindow window = backend.window(stream);
+        if (window.size() < settings.minSamples()) {
+            return settings.initialHedgeDelay();
+        }
+        Duration observed = Duration.ofNanos(window.percentile(settings.hedgePercentile()));
+        return observed.compareTo(settings.minHedgeDelay()) < 0 ? settings.minHedgeDelay() : observed;
+    }
+
+    /**
+     * 选项由第一个后端的默认选项生成，其中的模型名只对该后端有效，其他后端去掉模型名使用各自的默认模型
+     */
+    private Prompt promptFor(Backend backend, Prompt prompt) {
+        if (backend.order == 0 || prompt.getOptions() == null) {
+            return prompt;
+        }
+        return new Prompt(prompt.getInstructions(), portableOptions(prompt.getOptions()));
+    }
+
+    static ChatOptions portableOptions(ChatOptions options) {
+        if (options instanceof ToolCallingChatOptions toolOptions) {
+            return ToolCallingChatOptions.builder()
+                    .toolCallbacks(toolOptions.getToolCallbacks())
+                    .toolNames(toolOptions.getToolNames())
+                    .toolContext(toolOptions.getToolContext())
+                    .internalToolExecutionEnabled(toolOptions.getInternalToolExecutionEnabled())
+                    .temperature(options.getTemperature())
+                    .topP(options.getTopP())
+                    .topK(options.getTopK())
+                    .maxTokens(options.getMaxTokens())
+                    .stopSequences(options.getStopSequences())
+                    .frequencyPenalty(options.getFrequencyPenalty())
+                    .presencePenalty(options.getPresencePenalty())
+                    .build();
+        }
+        return ChatOptions.builder()
+                .temperature(options.getTemperature())
+                .topP(options.getTopP())
+                .topK(options.getTopK())
+                .maxTokens(options.getMaxTokens())
+                .stopSequences(options.getStopSequences())
+                .frequencyPenalty(options.getFrequencyPenalty())
+                .presencePenalty(options.getPresencePenalty())
+                .build();
+    }
+
+    private void win(Backend backend) {
+        Counter.builder("chat.routing.wins").tag("backend", backend.name).register(meterRegistry).increment();
+    }
+
+    private void error(Backend backend) {
+        Counter.builder("chat.routing.errors").tag("backend", backend.name).register(meterRegistry).increment();
+    }
+
+    /**
+     * 后端返回的结果及返回它的后端，工具调用的后续各轮交给同一个后端
+     */
+    private record Routed(Backend backend, ChatResponse response) {
+    }
+
+    static final class Backend {
+
+        private final String name;
+        private final ChatModel model;
+        private final int order;
+        private final LatencyWindow callLatency;
+        private final LatencyWindow firstTokenLatency;
+
+        private Backend(String name, ChatModel model, int order, int windowSize) {
+            this.name = name;
+            this.model = model;
+            this.order = order;
+            this.callLatency = new LatencyWindow(windowSize);
+            this.firstTokenLatency = new LatencyWindow(windowSize);
+        }
+
+        String name() {
+            return name;
+        }
+
+        LatencyWindow window(boolean stream) {
+            return stream ? firstTokenLatency : callLatency;
+        }
+
+        void record(long nanos, boolean stream, MeterRegistry meterRegistry) {
+            window(stream).record(nanos);
+            Timer.builder("chat.routing.latency")
+                    .tag("backend", name)
+                    .tag("mode", stream ? "first-token" : "call")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 最近 N 次耗时的环形缓冲
+     */
+    static final class LatencyWindow {
+
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.max(0, Math.min(index, size - 1))];
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 语义响应缓存
+ * <p>
+ * 无状态接口按提示词的向量缓存回复：用 ollamaEmbeddingModel 计算提示词向量，在该接口的平铺索引中查找
+ * 余弦相似度不低于 similarity-threshold 的历史提示词，命中时直接返回缓存的回复，不再调用模型。
+ * 每个接口单独建索引，按 ttl-seconds 过期、超过 max-entries 时淘汰最早的条目；只有 endpoints 中列出的接口启用。
+ * 命中/未命中次数和查找耗时通过 chat.semantic.cache.requests / chat.semantic.cache.lookup 暴露。
+ * @Author drk
+ * @Date 2026/10/18 20:30
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class SemanticResponseCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, EndpointIndex> indexes = new ConcurrentHashMap<>();
+
+    @Value("${chat.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 启用缓存的接口，默认都不启用
+     */
+    @Value("${chat.semantic-cache.endpoints:}")
+    private Set<String> endpoints;
+
+    /**
+     * 命中所需的最小余弦相似度
+     */
+    @Value("${chat.semantic-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    /**
+     * 缓存条目存活时间（秒）
+     */
+    @Value("${chat.semantic-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    /**
+     * 每个接口最多缓存的条目数
+     */
+    @Value("${chat.semantic-cache.max-entries:1000}")
+    private int maxEntries;
+
+    public SemanticResponseCache(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel,
+                                 MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 读取缓存的回复，未命中时调用模型并写入缓存
+     * @param endpoint 接口名，同时作为指标标签
+     * @param prompt 提示词
+     * @param options 影响结果的其他参数，只有完全相同时才可能命中，没有时传 null
+     * @param call 实际的模型调用
+     * @return 回复
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String endpoint, String prompt, Object options, Supplier<T> call) {
+        if (!enabled || !endpoints.contains(endpoint) || prompt == null || prompt.isBlank()) {
+            return call.get();
+        }
+        EndpointIndex index = indexes.computeIfAbsent(endpoint, this::newIndex);
+        float[] embedding;
+        Object cached;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            embedding = normalize(embeddingModel.embed(prompt));
+            cached = index.find(embedding, options, similarityThreshold, System.currentTimeMillis() - ttlSeconds * 1000);
+        } catch (RuntimeException e) {
+            // 向量服务不可用时不影响正常调用
+            log.warn("语义缓存查找失败，直接调用模型: {}", e.getMessage());
+            return call.get();
+        } finally {
+            sample.stop(Timer.builder("chat.semantic.cache.lookup").tag("endpoint", endpoint).register(meterRegistry));
+        }
+        if (cached != null) {
+            count(endpoint, "hit");
+            return (T) cached;
+        }
+        count(endpoint, "miss");
+        T result = call.get();
+        if (result != null) {
+            long now = System.currentTimeMillis();
+            index.put(new Entry(embedding, options, result, now), maxEntries, now - ttlSeconds * 1000);
+        }
+        return result;
+    }
+
+    /**
+     * 结果取决于具体实体（如演员名）的请求使用的 options：实体必须完全相同才可能命中，向量只匹配其余措辞。
+     * 人名等短文本的向量非常接近，只靠相似度会把一个人的结果返回给另一个人
+     * @param options 影响结果的其他参数
+     * @param entity 实体，去掉首尾空白后比较
+     */
+    public static Object exactEntity(Object options, String entity) {
+        return Arrays.asList(options, entity == null ? null : entity.strip());
+    }
+
+    /**
+     * 清空所有接口的缓存
+     */
+    public void clear() {
+        indexes.values().forEach(EndpointIndex::clear);
+    }
+
+    private EndpointIndex newIndex(String endpoint) {
+        EndpointIndex index = new EndpointIndex();
+        Gauge.builder("chat.semantic.cache.size", index, EndpointIndex::size).tag("endpoint", endpoint).register(meterRegistry);
+        return index;
+    }
+
+    private void count(String endpoint, String result) {
+        Counter.builder("chat.semantic.cache.requests")
+                .tag("endpoint", endpoint)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 归一化为单位向量，之后点积即余弦相似度
+     */
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(float[] embedding, Object options, Object value, long createdAt) {
+    }
+
+    /**
+     * 单个接口的平铺索引，按写入顺序保存，队首最早
+     */
+    private static final class EndpointIndex {
+
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Object find(float[] embedding, Object options, double threshold, long expireBefore) {
+            lock.readLock().lock();
+            try {
+                Entry best = null;
+                double bestScore = threshold;
+                for (Entry entry : entries) {
+                    if (entry.createdAt() < expireBefore || !Objects.equals(entry.options(), options)) {
+                        continue;
+                    }
+                    double score = dot(entry.embedding(), embedding);
+                    if (score >= bestScore) {
+                        best = entry;
+                        bestScore = score;
+                    }
+                }
+                return best == null ? null : best.value();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(Entry entry, int maxEntries, long expireBefore) {
+            lock.writeLock().lock();
+            try {
+                // 条目按写入顺序排列，过期的和超出容量的都在队首
+                while (!entries.isEmpty() && (entries.size() >= maxEntries || entries.peekFirst().createdAt() < expireBefore)) {
+                    entries.pollFirst();
+                }
+                entries.addLast(entry);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                entries.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
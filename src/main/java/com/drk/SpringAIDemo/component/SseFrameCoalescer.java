@@ -0,0 +1,117 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * SSE 分帧合并
+ * <p>
+ * 把模型逐 token 输出的内容合并成帧再写给客户端：累计字节数达到 max-bytes 立即发出，
+ * 否则最多等待 max-latency-ms。时间窗口按模型速度读取 token，这里不限制慢客户端的积压：
+ * 帧经 ResumableStreamRegistry 写给客户端，每个客户端的积压上限为 chat.stream.resume.max-frames（未启用续传时同样生效）。
+ * 帧数和每帧字节数通过 chat.stream.frames / chat.stream.frame.bytes 暴露。
+ * @Author drk
+ * @Date 2026/10/18 18:40
+ * @Version 1.0
+ */
+@Component
+public class SseFrameCoalescer {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.stream.coalesce.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 单帧累计达到该字节数时立即发出
+     */
+    @Value("${chat.stream.coalesce.max-bytes:512}")
+    private int maxBytes;
+
+    /**
+     * token 在帧中最长等待时间（毫秒）
+     */
+    @Value("${chat.stream.coalesce.max-latency-ms:30}")
+    private long maxLatencyMs;
+
+    public SseFrameCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 合并 token 流
+     * @param tokens 模型输出的 token 流
+     * @param endpoint 指标标签，区分不同接口
+     * @return 合并后的帧
+     */
+    public Flux<String> coalesce(Flux<String> tokens, String endpoint) {
+        Counter tokenCounter = Counter.builder("chat.stream.tokens").tag("endpoint", endpoint).register(meterRegistry);
+        Counter frameCounter = Counter.builder("chat.stream.frames").tag("endpoint", endpoint).register(meterRegistry);
+        DistributionSummary frameBytes = DistributionSummary.builder("chat.stream.frame.bytes")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+
+        Flux<String> frames = tokens.doOnNext(token -> tokenCounter.increment());
+        if (enabled) {
+            frames = frames
+                    .filter(token -> !token.isEmpty())
+                    // 时间窗口保证延迟上限，窗口内按字节数切帧；窗口不限条数，上游按模型速度读取
+                    .windowTimeout(Integer.MAX_VALUE, Duration.ofMillis(maxLatencyMs), true)
+                    .concatMap(window -> {
+                        int[] bytes = {0};
+                        return window.bufferUntil(token -> {
+                            bytes[0] += utf8Length(token);
+                            if (bytes[0] >= maxBytes) {
+                                bytes[0] = 0;
+                                return true;
+                            }
+                            return false;
+                        });
+                    })
+                    .map(SseFrameCoalescer::join);
+        }
+        return frames
+                .doOnNext(frame -> {
+                    frameCounter.increment();
+                    frameBytes.record(utf8Length(frame));
+                });
+    }
+
+    private static String join(List<String> tokens) {
+        if (tokens.size() == 1) {
+            return tokens.get(0);
+        }
+        StringBuilder frame = new StringBuilder();
+        tokens.forEach(frame::append);
+        return frame.toString();
+    }
+
+    /**
+     * 计算 UTF-8 编码字节数，避免为统计而复制字节数组
+     */
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
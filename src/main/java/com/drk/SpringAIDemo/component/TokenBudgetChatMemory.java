@@ -0,0 +1,118 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按 token 预算裁剪历史的对话记忆
+ * <p>
+ * 写入和清空复用 InMySqlChatMemory；读取时从最新消息往前累加写入时保存的 token_count，
+ * 遇到第一条会超出预算的消息即停止，不需要每轮重新分词。压缩摘要优先计入预算。
+ * @Author drk
+ * @Date 2026/10/18 14:05
+ * @Version 1.0
+ */
+@Component("TokenBudgetChatMemory")
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private final InMySqlChatMemory inMySqlChatMemory;
+    private final ChatMessageService chatMessageService;
+    private final ChatMemoryWriteBehindBuffer writeBehindBuffer;
+    private final ChatMemoryArchive chatMemoryArchive;
+
+    /**
+     * 历史消息的 token 预算
+     */
+    @Value("${chat.memory.token-budget.max-tokens:4000}")
+    private int maxTokens;
+
+    /**
+     * 每次从数据库读取的条数
+     */
+    @Value("${chat.memory.token-budget.page-size:50}")
+    private int pageSize;
+
+    public TokenBudgetChatMemory(InMySqlChatMemory inMySqlChatMemory,
+                                 @Lazy ChatMessageService chatMessageService,
+                                 ChatMemoryWriteBehindBuffer writeBehindBuffer,
+                                 ChatMemoryArchive chatMemoryArchive) {
+        this.inMySqlChatMemory = inMySqlChatMemory;
+        this.chatMessageService = chatMessageService;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.chatMemoryArchive = chatMemoryArchive;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        inMySqlChatMemory.add(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        chatMemoryArchive.rehydrate(conversationId);
+        List<ChatMessageEntity> selected = new ArrayList<>();
+        Set<Long> skipIds = new HashSet<>();
+        int used = 0;
+
+        // 压缩摘要优先占用预算，始终放在上下文最前面
+        ChatMessageEntity summary = chatMessageService.getSummary(conversationId);
+        if (summary != null && tokens(summary) <= maxTokens) {
+            used += tokens(summary);
+            skipIds.add(summary.getId());
+        } else {
+            summary = null;
+        }
+
+        // 尚未落库的消息最新，先计入预算
+        List<ChatMessageEntity> pending = writeBehindBuffer.pendingSnapshot(conversationId);
+        boolean exhausted = false;
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            ChatMessageEntity entity = pending.get(i);
+            if (used + tokens(entity) > maxTokens) {
+                exhausted = true;
+                break;
+            }
+            used += tokens(entity);
+            selected.add(entity);
+            if (entity.getId() != null) {
+                skipIds.add(entity.getId());
+            }
+        }
+        if (!exhausted) {
+            selected.addAll(chatMessageService.listLatestWithinTokens(conversationId, maxTokens - used, pageSize, skipIds));
+        }
+        if (summary != null) {
+            selected.add(summary);
+        }
+        return toMessages(selected);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        inMySqlChatMemory.clear(conversationId);
+    }
+
+    private int tokens(ChatMessageEntity entity) {
+        return entity.getTokenCount() == null ? 0 : entity.getTokenCount();
+    }
+
+    private List<Message> toMessages(List<ChatMessageEntity> newestFirst) {
+        List<Message> messages = new ArrayList<>(newestFirst.size());
+        for (ChatMessageEntity entity : newestFirst) {
+            messages.add(inMySqlChatMemory.toMessage(entity));
+        }
+        Collections.reverse(messages);
+        return messages;
+    }
+}
@@ -0,0 +1,251 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.tools.DateTimeTools;
+import com.drk.SpringAIDemo.tools.TimingTools;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.mcp.SyncMcpToolCallback;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 工具回调注册表
+ * <p>
+ * 启动时一次性生成本地 @Tool Bean（tools 包下的 DateTimeTools、TimingTools）和 MCP 工具的回调，
+ * 工具定义（JSON Schema）只生成一次，请求中不再反射注解或重复序列化 MCP 的输入 Schema。
+ * MCP 服务端的工具列表变化时，只替换发生变化的客户端的工具，ChatClient 通过 {@link #advisor()} 每次请求使用最新的工具。
+ * 每次工具调用记录 chat.tool.duration{tool,source,outcome}。
+ * @Author drk
+ * @Date 2026/10/19 00:50
+ * @Version 1.0
+ */
+@Slf4j
+@Component
+public class ToolCallbackRegistry implements McpSyncClientCustomizer, SmartInitializingSingleton {
+
+    private final MeterRegistry meterRegistry;
+    private final List<Object> toolBeans;
+    private final ObjectProvider<List<McpSyncClient>> mcpClients;
+
+    /**
+     * 本地工具，按 Bean 类型分组，启动后不再变化
+     */
+    private final Map<Class<?>, ToolCallback[]> localTools = new LinkedHashMap<>();
+
+    /**
+     * MCP 工具，按客户端名称分组
+     */
+    private final Map<String, List<ToolCallback>> mcpToolsByClient = new ConcurrentHashMap<>();
+
+    private volatile List<ToolCallback> mcpTools = List.of();
+
+    public ToolCallbackRegistry(MeterRegistry meterRegistry, DateTimeTools dateTimeTools, TimingTools timingTools,
+                                ObjectProvider<List<McpSyncClient>> mcpClients) {
+        this.meterRegistry = meterRegistry;
+        this.toolBeans = List.of(dateTimeTools, timingTools);
+        this.mcpClients = mcpClients;
+    }
+
+    /**
+     * MCP 客户端创建完成后再读取工具列表；注册表同时是 MCP 客户端的定制器，不能在构造时获取客户端
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (Object bean : toolBeans) {
+            localTools.put(ClassUtils.getUserClass(bean), Arrays.stream(ToolCallbacks.from(bean))
+                    .map(callback -> new TimedToolCallback(callback, callback.getToolDefinition(), "local"))
+                    .toArray(ToolCallback[]::new));
+        }
+        List<McpSyncClient> clients = mcpClients.getIfAvailable(List::of);
+        for (McpSyncClient client : clients) {
+            try {
+                replace(client, client.listTools().tools());
+            } catch (RuntimeException e) {
+                log.warn("读取 MCP 客户端 {} 的工具列表失败", client.getClientInfo().name(), e);
+            }
+        }
+        log.info("工具注册完成：本地工具 {} 个，MCP 工具 {} 个",
+                localTools.values().stream().mapToInt(tools -> tools.length).sum(), mcpTools.size());
+    }
+
+    /**
+     * 注册 MCP 工具列表变化的通知
+     */
+    @Override
+    public void customize(String name, McpClient.SyncSpec spec) {
+        spec.toolsChangeConsumer(tools -> onToolsChanged(name, tools));
+    }
+
+    /**
+     * 指定 Bean 的本地工具
+     */
+    public ToolCallback[] localTools(Class<?> beanType) {
+        ToolCallback[] tools = localTools.get(beanType);
+        if (tools == null) {
+            throw new IllegalArgumentException("未注册的工具类: " + beanType.getName());
+        }
+        return tools;
+    }
+
+    /**
+     * 当前所有 MCP 工具
+     */
+    public List<ToolCallback> mcpTools() {
+        return mcpTools;
+    }
+
+    /**
+     * 每次请求把当前的 MCP 工具加入模型选项，已通过 toolCallbacks 指定的同名工具不覆盖
+     */
+    public Advisor advisor() {
+        return new McpToolsAdvisor();
+    }
+
+    void onToolsChanged(String connectionName, List<McpSchema.Tool> tools) {
+        // 客户端名称为 "spring.ai.mcp.client.name - 连接名"
+        mcpClients.getIfAvailable(List::of).stream()
+                .filter(client -> client.getClientInfo().name().endsWith(" - " + connectionName)
+                        || client.getClientInfo().name().equals(connectionName))
+                .forEach(client -> replace(client, tools));
+    }
+
+    synchronized void replace(McpSyncClient client, List<McpSchema.Tool> tools) {
+        String clientName = client.getClientInfo().name();
+        List<ToolCallback> callbacks = tools.stream()
+                .map(tool -> (ToolCallback) new TimedToolCallback(new SyncMcpToolCallback(client, tool), definition(clientName, tool), "mcp"))
+                .toList();
+        mcpToolsByClient.put(clientName, callbacks);
+        mcpTools = mcpToolsByClient.values().stream().flatMap(List::stream).toList();
+        log.info("MCP 客户端 {} 的工具已更新：{}", clientName,
+                callbacks.stream().map(callback -> callback.getToolDefinition().name()).toList());
+    }
+
+    private static ToolDefinition definition(String clientName, McpSchema.Tool tool) {
+        return DefaultToolDefinition.builder()
+                .name(McpToolUtils.prefixedToolName(clientName, tool.name()))
+                .description(tool.description())
+                .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                .build();
+    }
+
+    /**
+     * 固定工具定义并记录调用耗时的工具回调
+     */
+    private final class TimedToolCallback implements ToolCallback {
+
+        private final ToolCallback delegate;
+        private final ToolDefinition definition;
+        private final String source;
+
+        private TimedToolCallback(ToolCallback delegate, ToolDefinition definition, String source) {
+            this.delegate = delegate;
+            this.definition = definition;
+            this.source = source;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            long start = System.nanoTime();
+            String outcome = "error";
+            try {
+                String result = delegate.call(toolInput, toolContext);
+                outcome = "success";
+                return result;
+            } finally {
+                Timer.builder("chat.tool.duration")
+                        .tag("tool", definition.name())
+                        .tag("source", source)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private final class McpToolsAdvisor implements CallAdvisor, StreamAdvisor {
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            return chain.nextCall(withMcpTools(request));
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            return Flux.defer(() -> chain.nextStream(withMcpTools(request)));
+        }
+
+        private ChatClientRequest withMcpTools(ChatClientRequest request) {
+            List<ToolCallback> tools = mcpTools;
+            if (tools.isEmpty() || !(request.prompt().getOptions() instanceof ToolCallingChatOptions options)) {
+                return request;
+            }
+            ToolCallingChatOptions copy = options.copy();
+            List<ToolCallback> merged = new ArrayList<>(copy.getToolCallbacks());
+            Set<String> names = merged.stream().map(callback -> callback.getToolDefinition().name()).collect(Collectors.toSet());
+            tools.stream().filter(callback -> !names.contains(callback.getToolDefinition().name())).forEach(merged::add);
+            copy.setToolCallbacks(merged);
+            return request.mutate().prompt(request.prompt().mutate().chatOptions(copy).build()).build();
+        }
+
+        @Override
+        public String getName() {
+            return "ToolCallbackRegistry";
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE + 1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.drk.SpringAIDemo.config;
+
+import com.drk.SpringAIDemo.component.ChatAdmissionControl;
+import com.drk.SpringAIDemo.component.ChatAdmissionControl.EndpointClass;
+import com.drk.SpringAIDemo.exception.AdmissionRejectedException;
+import com.drk.SpringAIDemo.pojo.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 模型接口准入过滤器
+ * <p>
+ * 按请求路径确定接口类别并申请 ChatAdmissionControl 许可，被拒绝时直接返回 429 和 Retry-After，不进入 Controller。
+ * 流式请求在异步处理结束（完成、出错或超时）后才释放许可。
+ * 客户端限流按客户端地址区分：部署在反向代理之后时由 server.forward-headers-strategy 从 X-Forwarded-For 还原真实地址，
+ * 否则所有用户共用代理的地址；配置了 chat.admission.client.key-header 时优先取该请求头（如网关写入的用户ID），
+ * 只应配置网关会覆盖的请求头，否则客户端可以随意伪造。
+ * @Author drk
+ * @Date 2026/10/18 21:40
+ * @Version 1.0
+ */
+@Slf4j
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final Map<String, EndpointClass> ENDPOINT_CLASSES = Map.ofEntries(
+            Map.entry("/api/chat/chatMemory", EndpointClass.STREAMING),
+            Map.entry("/api/chat/ask", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/ask2", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/ask3", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/ask-mcp", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/films", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/image", EndpointClass.IMAGE),
+            Map.entry("/api/chat/ai/embedding", EndpointClass.EMBEDDING),
+            Map.entry("/ai/api/embedding", EndpointClass.EMBEDDING),
+            Map.entry("/api/files/search-similar", EndpointClass.EMBEDDING),
+            // 响应式版本不占用请求线程，但同样消耗模型容量
+            Map.entry("/api/chat/reactive/ask", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/reactive/ask2", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/reactive/films", EndpointClass.BLOCKING),
+            Map.entry("/api/chat/reactive/image", EndpointClass.IMAGE),
+            Map.entry("/api/files/reactive/search-similar", EndpointClass.EMBEDDING));
+
+    private final ChatAdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
+    private final String clientKeyHeader;
+
+    /**
+     * @param clientKeyHeader 标识客户端的请求头，为空时按客户端地址区分
+     */
+    public AdmissionFilter(ChatAdmissionControl admissionControl, ObjectMapper objectMapper, String clientKeyHeader) {
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
+        this.clientKeyHeader = clientKeyHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionControl.isEnabled() || classify(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ChatAdmissionControl.Permit permit;
+        try {
+            permit = admissionControl.acquire(classify(request), clientKey(request));
+        } catch (AdmissionRejectedException e) {
+            log.warn("拒绝请求 {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage());
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getWriter(), ApiResponse.error(429, e.getMessage()));
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(permit));
+            } else {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * 客户端限流的键：配置的请求头有值时取请求头，否则取客户端地址（已按 forward-headers-strategy 还原）
+     */
+    String clientKey(HttpServletRequest request) {
+        if (StringUtils.isNotBlank(clientKeyHeader)) {
+            String key = request.getHeader(clientKeyHeader);
+            if (StringUtils.isNotBlank(key)) {
+                return key;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    static EndpointClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return ENDPOINT_CLASSES.get(path);
+    }
+
+    /**
+     * 异步请求结束后释放许可，onComplete 在出错和超时后也会调用，许可重复释放无影响
+     */
+    private record ReleaseListener(ChatAdmissionControl.Permit permit) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,26 +1,37 @@
 package com.drk.SpringAIDemo.config;
 
-import com.drk.SpringAIDemo.tools.DateTimeTools;
-import com.drk.SpringAIDemo.tools.TimingTools;
-import io.modelcontextprotocol.client.McpSyncClient;
+import com.drk.SpringAIDemo.component.AdvisorTiming;
+import com.drk.SpringAIDemo.component.BlockingCallScheduler;
+import com.drk.SpringAIDemo.component.ChatMetrics;
+import com.drk.SpringAIDemo.component.ChatMetricsAdvisor;
+import com.drk.SpringAIDemo.component.ConversationContextPrefetch;
+import com.drk.SpringAIDemo.component.RoutingChatModel;
+import com.drk.SpringAIDemo.component.ToolCallbackRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.template.st.StTemplateRenderer;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -51,9 +62,38 @@ public class ChatConfig {
                     "\n" +
                     "8. **Avoid unnecessary questions** - Only ask the user for input when absolutely necessary or if task completion is impossible without it.\n";
 
-    @Bean
-    public QuestionAnswerAdvisor qaAdvisor(VectorStore vectorStore) {
-        PromptTemplate qaPromptTemplate = PromptTemplate.builder()
+    @Value("${chat.routing.enabled:false}")
+    private boolean routingEnabled;
+
+    /**
+     * 参与路由的 ChatModel Bean 名称，按优先级排列
+     */
+    @Value("${chat.routing.backends:openAiChatModel,ollamaChatModel}")
+    private List<String> routingBackends;
+
+    @Value("${chat.routing.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${chat.routing.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${chat.routing.hedge.initial-delay-ms:2000}")
+    private long initialHedgeDelayMs;
+
+    @Value("${chat.routing.hedge.min-delay-ms:200}")
+    private long minHedgeDelayMs;
+
+    @Value("${chat.routing.min-samples:20}")
+    private int routingMinSamples;
+
+    @Value("${chat.routing.window-size:200}")
+    private int routingWindowSize;
+
+    /**
+     * 知识库问答的提示词模板，qaAdvisor 和 ConversationContextPrefetch 共用
+     */
+    public static PromptTemplate qaPromptTemplate() {
+        return PromptTemplate.builder()
                 .renderer(StTemplateRenderer.builder().startDelimiterToken('<').endDelimiterToken('>').build())
                 .template(
                         "请根据以下信息回答用户问题，如无相关内容请使用你自己的知识作答：\n" +
@@ -62,25 +102,89 @@ public class ChatConfig {
                                 "\n" +
                                 "问题：<query>")
                 .build();
+    }
 
+    /**
+     * 知识库检索参数，qaAdvisor 和 ConversationContextPrefetch 共用
+     */
+    public static SearchRequest qaSearchRequest() {
+        return SearchRequest.builder().similarityThreshold(0.6).topK(6).build();
+    }
+
+    @Bean
+    public QuestionAnswerAdvisor qaAdvisor(VectorStore vectorStore) {
         return QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(SearchRequest.builder().similarityThreshold(0.6).topK(6).build())
-                .promptTemplate(qaPromptTemplate)
+                .searchRequest(qaSearchRequest())
+                .promptTemplate(qaPromptTemplate())
                 .order(5) // 设置较大的order值，确保在MessageChatMemoryAdvisor之后执行
                 .build();
     }
 
+    /**
+     * 消息写入 chat_memory 时计算 token 数
+     */
+    @Bean
+    public TokenCountEstimator tokenCountEstimator() {
+        return new JTokkitTokenCountEstimator();
+    }
+
+    /**
+     * MessageChatMemoryAdvisor 使用的对话记忆：window 按条数窗口读取，token-budget 按 token 预算裁剪
+     */
+    @Bean
+    public ChatMemory advisorChatMemory(@Value("${chat.memory.mode:window}") String mode,
+                                       @Qualifier("InMySqlChatMemory") ChatMemory inMySqlChatMemory,
+                                       @Qualifier("TokenBudgetChatMemory") ChatMemory tokenBudgetChatMemory) {
+        log.info("对话记忆模式: {}", mode);
+        return switch (mode) {
+            case "window" -> inMySqlChatMemory;
+            case "token-budget" -> tokenBudgetChatMemory;
+            default -> throw new IllegalArgumentException("Unknown chat.memory.mode: " + mode);
+        };
+    }
+
+    /**
+     * ChatClient 使用的模型：未启用路由时为 openAiChatModel，启用后按 chat.routing.backends 顺序在多个后端间路由
+     */
+    private ChatModel clientChatModel(ChatModel openAiChatModel, Map<String, ChatModel> chatModels, MeterRegistry meterRegistry,
+                                      BlockingCallScheduler blockingCallScheduler, ToolCallingManager toolCallingManager) {
+        if (!routingEnabled) {
+            return openAiChatModel;
+        }
+        Map<String, ChatModel> backends = new LinkedHashMap<>();
+        for (String name : routingBackends) {
+            ChatModel backend = chatModels.get(name);
+            if (backend == null) {
+                throw new IllegalArgumentException("Unknown chat.routing.backends entry: " + name);
+            }
+            backends.put(name, backend);
+        }
+        log.info("模型路由已启用，后端: {}", backends.keySet());
+        return new RoutingChatModel(backends, new RoutingChatModel.Settings(
+                hedgeEnabled, hedgePercentile, Duration.ofMillis(initialHedgeDelayMs), Duration.ofMillis(minHedgeDelayMs),
+                routingMinSamples, routingWindowSize), meterRegistry, blockingCallScheduler.get(), toolCallingManager);
+    }
+
     @Bean
     public ChatClient chatClient(@Qualifier("openAiChatModel") ChatModel chatModel,
-                                 DateTimeTools dateTimeTools,
-                                 TimingTools timingTools,
-                                 QuestionAnswerAdvisor qaAdvisor,
-                                 List<McpSyncClient> mcpSyncClients) {
+                                 Map<String, ChatModel> chatModels,
+                                 MeterRegistry meterRegistry,
+                                 ChatMetrics chatMetrics,
+                                 AdvisorTiming advisorTiming,
+                                 BlockingCallScheduler blockingCallScheduler,
+                                 ToolCallingManager toolCallingManager,
+                                 ToolCallbackRegistry toolCallbackRegistry,
+                                 QuestionAnswerAdvisor qaAdvisor) {
 
-        return ChatClient.builder(chatModel)
+        return ChatClient.builder(clientChatModel(chatModel, chatModels, meterRegistry, blockingCallScheduler, toolCallingManager))
                 .defaultSystem(DEFAULT_PROMPT)
-                .defaultToolCallbacks(new SyncMcpToolCallbackProvider(mcpSyncClients))
-                .defaultAdvisors(qaAdvisor,new SimpleLoggerAdvisor())
+                // MCP 工具在启动时注册，服务端工具变化后自动更新，见 ToolCallbackRegistry
+                .defaultAdvisors(toolCallbackRegistry.advisor())
+                .defaultAdvisors(advisorTiming.wrap(ConversationContextPrefetch.unlessPrefetched(qaAdvisor),new SimpleLoggerAdvisor())) // 各 Advisor 自身耗时，见 AdvisorTiming
+                // 首 token、总耗时、各阶段耗时和 token 速度，见 ChatMetrics
+                .defaultAdvisors(new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.REQUEST),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.RETRIEVAL),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.MODEL))
                 .build();
     }
 }
\ No newline at end of file
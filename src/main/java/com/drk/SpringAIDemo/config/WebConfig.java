@@ -1,5 +1,8 @@
 package com.drk.SpringAIDemo.config;
 
+import com.drk.SpringAIDemo.component.ChatAdmissionControl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -54,4 +57,15 @@ public class WebConfig implements WebMvcConfigurer {
 
         return bean;
     }
+
+    /**
+     * 模型接口准入控制，在 CORS 之后执行，超限请求直接返回 429
+     */
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(ChatAdmissionControl admissionControl, ObjectMapper objectMapper,
+                                                                   @Value("${chat.admission.client.key-header:}") String clientKeyHeader) {
+        FilterRegistrationBean<AdmissionFilter> bean = new FilterRegistrationBean<>(new AdmissionFilter(admissionControl, objectMapper, clientKeyHeader));
+        bean.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return bean;
+    }
 }
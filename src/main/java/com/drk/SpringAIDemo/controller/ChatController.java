@@ -1,43 +1,62 @@
 package com.drk.SpringAIDemo.controller;
 
 import com.drk.SpringAIDemo.pojo.ActorsFilms;
+import com.drk.SpringAIDemo.pojo.ApiResponse;
 
+import com.drk.SpringAIDemo.pojo.ConversationPage;
 import com.drk.SpringAIDemo.pojo.ConversationPojo;
 import com.drk.SpringAIDemo.tools.DateTimeTools;
+import com.drk.SpringAIDemo.component.AdvisorTiming;
+import com.drk.SpringAIDemo.component.ChatMetrics;
+import com.drk.SpringAIDemo.component.ChatMetricsAdvisor;
+import com.drk.SpringAIDemo.component.ChatSingleFlight;
+import com.drk.SpringAIDemo.component.ConversationContextPrefetch;
+import com.drk.SpringAIDemo.component.ConversationTurnSequencer;
+import com.drk.SpringAIDemo.component.GenerationCancellation;
+import com.drk.SpringAIDemo.component.IdempotentChatMemory;
+import com.drk.SpringAIDemo.component.ResumableStreamRegistry;
+import com.drk.SpringAIDemo.component.SemanticResponseCache;
+import com.drk.SpringAIDemo.component.SseFrameCoalescer;
+import com.drk.SpringAIDemo.component.ToolCallbackRegistry;
+import org.apache.commons.lang3.StringUtils;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.image.*;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
-import org.springframework.ai.support.ToolCallbacks;
-import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.drk.SpringAIDemo.component.InMySqlChatMemory;
 import org.springframework.http.MediaType;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Author drk
@@ -51,7 +70,13 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
-    private final Map<String, Sinks.Many<String>> streamCache = new ConcurrentHashMap<>();
+
+    private static final String FILMS_PROMPT = "请告诉我{actor}出演过的5部电影";
+
+    /**
+     * 对话列表每页最多条数
+     */
+    private static final int MAX_CONVERSATION_PAGE_SIZE = 100;
 
     private final ChatClient chatClient;
     private final ChatModel chatModel;
@@ -59,7 +84,16 @@ public class ChatController {
     private final EmbeddingModel embeddingModel;
     private final ChatMemory inMySqlChatMemory;
     private final InMySqlChatMemory inMySqlChatMemoryComponent;
-    private final QuestionAnswerAdvisor qaAdvisor;
+    private final SseFrameCoalescer sseFrameCoalescer;
+    private final ResumableStreamRegistry resumableStreamRegistry;
+    private final ChatSingleFlight chatSingleFlight;
+    private final SemanticResponseCache semanticResponseCache;
+    private final ConversationTurnSequencer conversationTurnSequencer;
+    private final ChatMetrics chatMetrics;
+    private final AdvisorTiming advisorTiming;
+    private final ConversationContextPrefetch conversationContextPrefetch;
+    private final GenerationCancellation generationCancellation;
+    private final ToolCallbackRegistry toolCallbackRegistry;
     //private final SyncMcpToolCallbackProvider syncMcpToolCallbackProvider;
 
     // 构造函数现在非常干净，只注入它直接需要的 Bean
@@ -67,16 +101,34 @@ public class ChatController {
                           @Qualifier("openAiChatModel") ChatModel chatModel,
                           ImageModel imageModel,
                           @Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel,
-                          @Qualifier("InMySqlChatMemory") ChatMemory inMySqlChatMemory,
-                          QuestionAnswerAdvisor qaAdvisor,
-                          InMySqlChatMemory inMySqlChatMemoryComponent) {
+                          @Qualifier("advisorChatMemory") ChatMemory inMySqlChatMemory,
+                          InMySqlChatMemory inMySqlChatMemoryComponent,
+                          SseFrameCoalescer sseFrameCoalescer,
+                          ResumableStreamRegistry resumableStreamRegistry,
+                          ChatSingleFlight chatSingleFlight,
+                          SemanticResponseCache semanticResponseCache,
+                          ConversationTurnSequencer conversationTurnSequencer,
+                          ChatMetrics chatMetrics,
+                          AdvisorTiming advisorTiming,
+                          ConversationContextPrefetch conversationContextPrefetch,
+                          GenerationCancellation generationCancellation,
+                          ToolCallbackRegistry toolCallbackRegistry) {
         this.chatClient = chatClient;
         this.chatModel = chatModel;
         this.imageModel = imageModel;
         this.embeddingModel = embeddingModel;
         this.inMySqlChatMemory = inMySqlChatMemory;
         this.inMySqlChatMemoryComponent = inMySqlChatMemoryComponent;
-        this.qaAdvisor = qaAdvisor;
+        this.sseFrameCoalescer = sseFrameCoalescer;
+        this.resumableStreamRegistry = resumableStreamRegistry;
+        this.chatSingleFlight = chatSingleFlight;
+        this.semanticResponseCache = semanticResponseCache;
+        this.conversationTurnSequencer = conversationTurnSequencer;
+        this.chatMetrics = chatMetrics;
+        this.advisorTiming = advisorTiming;
+        this.conversationContextPrefetch = conversationContextPrefetch;
+        this.generationCancellation = generationCancellation;
+        this.toolCallbackRegistry = toolCallbackRegistry;
         //this.syncMcpToolCallbackProvider=syncMcpToolCallbackProvider;
 
     }
@@ -85,55 +137,87 @@ public class ChatController {
     public Map embed(@RequestParam(value = "message", defaultValue = "Tell me a joke") String message) {
 
 
+        long start = System.nanoTime();
         EmbeddingResponse embeddingResponse = this.embeddingModel.embedForResponse(List.of(message));
+        chatMetrics.recordDuration("embedding", embeddingResponse.getMetadata().getModel(), start);
         return Map.of("embedding", embeddingResponse);
     }
 
     @GetMapping("/ask")
     public ChatResponse hello(String msg) {
-        return this.chatClient.prompt(msg).call().chatResponse();
+        // 相近的问题直接返回缓存的回复，相同的并发请求只调用一次模型
+        return semanticResponseCache.get("ask", msg, null,
+                () -> chatSingleFlight.execute("ask", msg, null, () -> this.chatClient.prompt(msg).advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask")).call().chatResponse()));
     }
 
     @GetMapping("/ask2")
     public String hello2(String msg) {
-        return this.chatClient.prompt().user(msg).call().content();
+        return semanticResponseCache.get("ask2", msg, null,
+                () -> chatSingleFlight.execute("ask2", msg, null, () -> this.chatClient.prompt().user(msg).advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask2")).call().content()));
     }
 
     @GetMapping("/ask3")
     public String hello3(String msg) {
 
-        ToolCallback[] dateTimeTools = ToolCallbacks.from(new DateTimeTools());
+        // 工具回调在启动时生成，不再每次请求反射注解
         ChatOptions chatOptions = ToolCallingChatOptions.builder()
-                .toolCallbacks(dateTimeTools)
+                .toolCallbacks(toolCallbackRegistry.localTools(DateTimeTools.class))
                 .build();
         Prompt prompt = new Prompt(msg, chatOptions);
-        return this.chatModel.call(prompt).getResult().getOutput().getText();
+        ChatMetrics.Timings timings = new ChatMetrics.Timings("ask3", false);
+        timings.modelStarted();
+        ChatResponse response = this.chatModel.call(prompt);
+        timings.modelFinished();
+        chatMetrics.record(timings, response, false, response.getResult().getOutput().getText());
+        return response.getResult().getOutput().getText();
     }
 
 
     @PostMapping(value = "/chatMemory", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @CrossOrigin
-    public Flux<String> chat(@RequestBody ConversationPojo conversation) {
-
-        return chatClient
+    public Flux<ServerSentEvent<String>> chat(@RequestBody ConversationPojo conversation,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // 断线重连：从生成中或刚结束的流续传，不再调用模型
+        Flux<ServerSentEvent<String>> resumed = resumableStreamRegistry.resume(lastEventId);
+        if (resumed != null) {
+            return resumed;
+        }
+        String requestId = conversation.getRequestId();
+        ChatMemory chatMemory = inMySqlChatMemory;
+        if (StringUtils.isNotBlank(requestId)) {
+            // 重试的请求已经生成过回复时直接返回，不再调用模型
+            Optional<String> reply = inMySqlChatMemoryComponent.findReply(conversation.getConversationId(), requestId);
+            if (reply.isPresent()) {
+                return Flux.just(reply.get(), "[DONE]").map(frame -> ServerSentEvent.builder(frame).build());
+            }
+            chatMemory = new IdempotentChatMemory(inMySqlChatMemory, inMySqlChatMemoryComponent, requestId);
+        }
+
+        Flux<String> tokens = chatClient
                 .prompt()
                 .user(u->u.text(conversation.getInputMsg()))
-                .advisors(
-                        new SimpleLoggerAdvisor(),
-                        // MessageChatMemoryAdvisor 先执行，order值较小，优先级较高，存储原始用户消息
-                        MessageChatMemoryAdvisor.builder(inMySqlChatMemory).order(1).conversationId(conversation.getConversationId()).scheduler(Schedulers.boundedElastic()).build(),
-                        //qaAdvisor 后执行，order值较大，优先级较低，添加上下文信息但不影响存
-                        qaAdvisor
-                )
+                .advisors(advisorTiming.wrap(new SimpleLoggerAdvisor()))
+                // 记忆先执行，order值较小，存储原始用户消息；历史消息按 chat.memory.mode 选择的窗口或 token 预算读取
+                // 历史读取和知识库检索并行进行，默认 Advisor 中的 qaAdvisor 不再重复检索，见 ConversationContextPrefetch
+                .advisors(advisorTiming.wrap(conversationContextPrefetch.advisors(chatMemory, conversation.getConversationId(), 1)))
+                // 客户端断开后生成被取消时，把已生成的部分作为截断的回复保存
+                .advisors(generationCancellation.advisor(chatMemory, conversation.getConversationId(), 2))
+                .advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "chatMemory"))
                 // 重新应用在ChatClient中配置的默认工具回调，以确保MCP和本地工具都生效
                 .stream()
-                .content()
+                .content();
+        // 逐 token 合并成帧后再写出，减少每个事件的 flush 开销
+        Flux<String> frames = sseFrameCoalescer.coalesce(tokens, "chatMemory")
                 .concatWith(Flux.just("[DONE]")) // 添加完成标记
                 .onErrorResume(e -> {
                     logger.error("Error during chat processing for conversationId: {}", conversation.getConversationId(), e);
                     // 将错误信息包装成 SSE 事件发送到前端
                     return Flux.just("data: {\"error\": \"An error occurred: " + e.getMessage() + "\"}\n\n");
                 });
+        // 同一对话的多轮请求依次执行，避免并发读取相同历史后交错写入；排队已满时直接返回 429
+        frames = conversationTurnSequencer.sequence(conversation.getConversationId(), frames);
+        // 生成与当前连接解耦，并为每帧分配事件ID，客户端可带 Last-Event-ID 续传
+        return resumableStreamRegistry.start(frames);
     }
     //@GetMapping(value = "/chatMemory")
     //public String chat(@RequestParam String conversationId, @RequestParam String inputMsg) {
@@ -165,11 +249,12 @@ public class ChatController {
         logger.info("收到MCP请求: {}", msg);
 
         // 使用chatClient，它已经配置了MCP工具
-        String response = this.chatClient.prompt()
+        String response = semanticResponseCache.get("ask-mcp", msg, null, () -> this.chatClient.prompt()
                 .user(msg)
-                .advisors(new SimpleLoggerAdvisor())
+                .advisors(advisorTiming.wrap(new SimpleLoggerAdvisor()))
+                .advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask-mcp"))
                 .call()
-                .content();
+                .content());
 
         logger.info("MCP响应: {}", response);
         return response;
@@ -185,7 +270,12 @@ public class ChatController {
     @GetMapping("/films")
     public String films(String actor) {
 
-        ActorsFilms actor1 = chatClient.prompt().user(u -> u.text("请告诉我{actor}出演过的5部电影").param("actor", actor)).call().entity(ActorsFilms.class);
+        // 缓存按完整提示词匹配，演员名必须完全相同，避免相近的名字命中其他演员的结果
+        String prompt = new PromptTemplate(FILMS_PROMPT).render(Map.of("actor", actor));
+        ActorsFilms actor1 = semanticResponseCache.get("films", prompt, SemanticResponseCache.exactEntity(ActorsFilms.class.getName(), actor),
+                () -> chatSingleFlight.execute("films", actor, ActorsFilms.class.getName(),
+                        () -> chatClient.prompt().user(u -> u.text(FILMS_PROMPT).param("actor", actor))
+                                .advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "films")).call().entity(ActorsFilms.class)));
 
         //ActorsFilms entity = chatClient.prompt(actor).call().entity(ActorsFilms.class);
         return actor1.toString();
@@ -211,16 +301,22 @@ public class ChatController {
                 .build();
 
         ImagePrompt imagePrompt = new ImagePrompt(query, option);
+        long start = System.nanoTime();
         ImageResponse response = imageModel.call(imagePrompt);
+        chatMetrics.recordDuration("image", option.getModel(), start);
         return response.getResult().getOutput().getUrl();
     }
 
     /**
-     * 获取所有对话ID列表
+     * 游标分页获取对话列表（按最后活跃时间倒序），size 取值 1~100
      */
     @GetMapping("/conversations")
-    public List<Map<String, Object>>  getConversations() {
-        return inMySqlChatMemoryComponent.findConversationIds();
+    public ConversationPage getConversations(@RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_CONVERSATION_PAGE_SIZE) {
+            throw new IllegalArgumentException("size 必须在 1 到 " + MAX_CONVERSATION_PAGE_SIZE + " 之间");
+        }
+        return inMySqlChatMemoryComponent.findConversations(cursor, size);
     }
 
     /**
@@ -238,4 +334,42 @@ public class ChatController {
     public List<Message> getConversationMessages(@PathVariable String conversationId) {
         return inMySqlChatMemoryComponent.findByConversationId(conversationId);
     }
-}
\ No newline at end of file
+
+    /**
+     * 以 NDJSON 流式导出指定对话的全部消息
+     */
+    @GetMapping(value = "/conversations/{conversationId}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportConversation(@PathVariable String conversationId) {
+        return ndjson(conversationId + ".ndjson",
+                out -> inMySqlChatMemoryComponent.exportMessages(conversationId, null, null, out));
+    }
+
+    /**
+     * 以 NDJSON 流式导出时间范围内所有对话的消息，范围为 [from, to)
+     */
+    @GetMapping(value = "/conversations/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportConversations(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from 必须早于 to");
+        }
+        return ndjson("conversations.ndjson",
+                out -> inMySqlChatMemoryComponent.exportMessages(null, from, to, out));
+    }
+
+    /**
+     * 批量导入 NDJSON 格式的消息（与导出格式一致），返回新写入的条数
+     */
+    @PostMapping(value = "/conversations/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ApiResponse<Integer> importConversations(InputStream body) throws IOException {
+        return ApiResponse.success(inMySqlChatMemoryComponent.importMessages(body));
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(String filename, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+}
@@ -2,13 +2,16 @@ package com.drk.SpringAIDemo.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.drk.SpringAIDemo.component.BlockingCallScheduler;
 import com.drk.SpringAIDemo.entity.KnowledgeFileEntity;
+import com.drk.SpringAIDemo.exception.ModelTimeoutException;
 import com.drk.SpringAIDemo.pojo.ApiResponse;
 import com.drk.SpringAIDemo.pojo.FileUploadResponse;
 import com.drk.SpringAIDemo.service.KnowledgeFileService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
@@ -16,11 +19,14 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
 
 import java.net.MalformedURLException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 知识文件控制器
@@ -36,6 +42,12 @@ public class KnowledgeFileController {
     @Autowired
     private KnowledgeFileService knowledgeFileService;
 
+    @Autowired
+    private BlockingCallScheduler blockingCallScheduler;
+
+    @Value("${chat.reactive.search-timeout-ms:10000}")
+    private long searchTimeoutMs;
+
     /**
      * 上传文件
      */
@@ -244,6 +256,27 @@ public class KnowledgeFileController {
         }
     }
 
+    /**
+     * 搜索相似文档的响应式版本：检索在 BlockingCallScheduler 上执行，不占用请求线程，
+     * 超过 chat.reactive.search-timeout-ms 返回 504 并取消检索
+     */
+    @GetMapping("/reactive/search-similar")
+    public Mono<ApiResponse<List<Document>>> searchSimilarDocumentsReactive(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "5") int topK,
+            @RequestParam(defaultValue = "0.7") float threshold) {
+
+        return Mono.fromCallable(() -> knowledgeFileService.searchSimilarDocuments(query, topK, threshold))
+                .subscribeOn(blockingCallScheduler.get())
+                .timeout(Duration.ofMillis(searchTimeoutMs))
+                .map(ApiResponse::success)
+                .onErrorMap(TimeoutException.class, e -> new ModelTimeoutException("search-similar", searchTimeoutMs))
+                .onErrorResume(e -> !(e instanceof ModelTimeoutException), e -> {
+                    log.error("搜索相似文档失败", e);
+                    return Mono.just(ApiResponse.error("搜索失败: " + e.getMessage()));
+                });
+    }
+
     /**
      * 批量向量化文件
      */
@@ -0,0 +1,134 @@
+package com.drk.SpringAIDemo.controller;
+
+import com.drk.SpringAIDemo.component.BlockingCallScheduler;
+import com.drk.SpringAIDemo.component.ChatAdmissionControl.EndpointClass;
+import com.drk.SpringAIDemo.component.ChatMetrics;
+import com.drk.SpringAIDemo.component.ChatMetricsAdvisor;
+import com.drk.SpringAIDemo.exception.ModelTimeoutException;
+import com.drk.SpringAIDemo.pojo.ActorsFilms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.MessageAggregator;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImageOptions;
+import org.springframework.ai.image.ImageOptionsBuilder;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 对话接口的响应式版本
+ * <p>
+ * 与 ChatController 中的 /ask、/ask2、/films、/image 返回相同的内容，但返回 Mono，不占用请求线程：
+ * 对话接口通过 ChatClient 的流式调用（WebClient）获取结果后聚合，等待模型期间不阻塞任何线程；
+ * 图片模型只有阻塞接口，在 BlockingCallScheduler 上执行。
+ * 超过 chat.reactive.*-timeout-ms 返回 504，超时或客户端断开时取消订阅，模型的 HTTP 请求随之取消。
+ * 这些接口不经过语义缓存和 single-flight。
+ * @Author drk
+ * @Date 2026/10/19 00:30
+ * @Version 1.0
+ */
+@RestController
+@RequestMapping("/api/chat/reactive")
+@CrossOrigin
+public class ReactiveChatController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatController.class);
+
+    private final ChatClient chatClient;
+    private final ImageModel imageModel;
+    private final ChatMetrics chatMetrics;
+    private final BlockingCallScheduler blockingCallScheduler;
+
+    @Value("${chat.reactive.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Value("${chat.reactive.image-timeout-ms:120000}")
+    private long imageTimeoutMs;
+
+    public ReactiveChatController(ChatClient chatClient, ImageModel imageModel, ChatMetrics chatMetrics,
+                                  BlockingCallScheduler blockingCallScheduler) {
+        this.chatClient = chatClient;
+        this.imageModel = imageModel;
+        this.chatMetrics = chatMetrics;
+        this.blockingCallScheduler = blockingCallScheduler;
+    }
+
+    @GetMapping("/ask")
+    public Mono<ChatResponse> ask(String msg) {
+        AtomicReference<ChatResponse> aggregated = new AtomicReference<>();
+        return new MessageAggregator()
+                .aggregate(chatClient.prompt(msg).advisors(metricsParams("ask")).stream().chatResponse(),
+                        aggregated::set)
+                .then(Mono.fromSupplier(aggregated::get))
+                .transform(mono -> withTimeout(mono, "ask", timeoutMs));
+    }
+
+    @GetMapping("/ask2")
+    public Mono<String> ask2(String msg) {
+        return chatClient.prompt().user(msg).advisors(metricsParams("ask2"))
+                .stream().content()
+                .collect(Collectors.joining())
+                .transform(mono -> withTimeout(mono, "ask2", timeoutMs));
+    }
+
+    /**
+     * 按照film的格式输入输出，格式说明与 entity() 相同，拼接完整回复后再转换
+     */
+    @GetMapping("/films")
+    public Mono<String> films(String actor) {
+        BeanOutputConverter<ActorsFilms> converter = new BeanOutputConverter<>(ActorsFilms.class);
+        return chatClient.prompt()
+                .user(u -> u.text("请告诉我{actor}出演过的5部电影\n{format}").param("actor", actor).param("format", converter.getFormat()))
+                .advisors(metricsParams("films"))
+                .stream().content()
+                .collect(Collectors.joining())
+                .map(converter::convert)
+                .map(ActorsFilms::toString)
+                .transform(mono -> withTimeout(mono, "films", timeoutMs));
+    }
+
+    @GetMapping("/image")
+    public Mono<String> generateImage(@RequestParam(name = "prompt") String query) {
+        ImageOptions option = ImageOptionsBuilder.builder()
+                .model("gemini-2.0-flash-preview-image-generation")
+                .build();
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    ImageResponse response = imageModel.call(new ImagePrompt(query, option));
+                    chatMetrics.recordDuration("image", option.getModel(), start);
+                    return response.getResult().getOutput().getUrl();
+                })
+                .subscribeOn(blockingCallScheduler.get())
+                .transform(mono -> withTimeout(mono, "image", imageTimeoutMs));
+    }
+
+    /**
+     * 指标参数：这些接口流式调用模型，但由 AdmissionFilter 按阻塞类别准入，模型耗时也记入阻塞类别
+     */
+    private static Consumer<ChatClient.AdvisorSpec> metricsParams(String endpoint) {
+        return a -> a.param(ChatMetricsAdvisor.ENDPOINT, endpoint)
+                .param(ChatMetricsAdvisor.ADMISSION_CLASS, EndpointClass.BLOCKING);
+    }
+
+    private static <T> Mono<T> withTimeout(Mono<T> mono, String endpoint, long timeoutMs) {
+        return mono.timeout(Duration.ofMillis(timeoutMs))
+                .onErrorMap(TimeoutException.class, e -> new ModelTimeoutException(endpoint, timeoutMs))
+                .doOnCancel(() -> logger.info("响应式接口 {} 的请求已取消", endpoint));
+    }
+}
@@ -18,8 +18,20 @@ public class ChatMessageEntity {
     @TableId(value = "id", type = IdType.AUTO)
     private Long id;
     private String conversationId;
+    /**
+     * 幂等键，由客户端请求ID派生，同一对话内唯一；重试时重复写入会被忽略
+     */
+    private String messageKey;
     private String messageType;
     private String content;
     private String metadata;
+    /**
+     * Smile 二进制编码的消息载荷，chat.memory.codec.format=smile 时写入，此时 metadata 为空
+     */
+    private byte[] metadataBin;
+    /**
+     * 写入时计算的 token 数，按 token 预算裁剪历史时使用
+     */
+    private Integer tokenCount;
     private LocalDateTime createdAt;
 }
\ No newline at end of file
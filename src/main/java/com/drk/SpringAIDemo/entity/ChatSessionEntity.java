@@ -0,0 +1,54 @@
+package com.drk.SpringAIDemo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 对话摘要实体类，随消息写入增量维护
+ * @Author drk
+ * @Date 2026/10/18 13:10
+ * @Version 1.0
+ */
+@Data
+@TableName("chat_sessions")
+public class ChatSessionEntity {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 对话ID（对应 chat_memory.conversation_id）
+     */
+    private String sessionId;
+
+    /**
+     * 对话标题（第一条用户消息）
+     */
+    private String sessionName;
+
+    /**
+     * 最后一条用户消息预览
+     */
+    private String lastMessage;
+
+    /**
+     * 消息条数
+     */
+    private Integer messageCount;
+
+    /**
+     * 是否已归档到冷存储 (0-否, 1-是)
+     */
+    private Integer archived;
+
+    private LocalDateTime createdAt;
+
+    /**
+     * 最后活跃时间
+     */
+    private LocalDateTime updatedAt;
+}
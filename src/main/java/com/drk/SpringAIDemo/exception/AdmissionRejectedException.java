@@ -0,0 +1,24 @@
+package com.drk.SpringAIDemo.exception;
+
+/**
+ * 请求超出准入限制（并发上限或客户端限流）
+ * @Author drk
+ * @Date 2026/10/18 21:30
+ * @Version 1.0
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    /**
+     * 建议客户端等待的秒数，对应 Retry-After 响应头
+     */
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
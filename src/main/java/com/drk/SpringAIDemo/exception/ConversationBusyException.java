@@ -0,0 +1,14 @@
+package com.drk.SpringAIDemo.exception;
+
+/**
+ * 同一对话排队的请求已达上限
+ * @Author drk
+ * @Date 2026/10/18 21:00
+ * @Version 1.0
+ */
+public class ConversationBusyException extends RuntimeException {
+
+    public ConversationBusyException(String conversationId) {
+        super("对话 " + conversationId + " 有请求正在处理，请稍后重试");
+    }
+}
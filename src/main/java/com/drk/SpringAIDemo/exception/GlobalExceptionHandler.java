@@ -28,6 +28,26 @@ public class GlobalExceptionHandler {
         return ApiResponse.error(400, "文件大小超过限制，请选择较小的文件");
     }
 
+    /**
+     * 处理同一对话排队已满异常
+     */
+    @ExceptionHandler(ConversationBusyException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ApiResponse<Void> handleConversationBusyException(ConversationBusyException e) {
+        log.warn(e.getMessage());
+        return ApiResponse.error(429, e.getMessage());
+    }
+
+    /**
+     * 处理响应式接口超时异常
+     */
+    @ExceptionHandler(ModelTimeoutException.class)
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public ApiResponse<Void> handleModelTimeoutException(ModelTimeoutException e) {
+        log.warn(e.getMessage());
+        return ApiResponse.error(504, e.getMessage());
+    }
+
     /**
      * 处理运行时异常
      */
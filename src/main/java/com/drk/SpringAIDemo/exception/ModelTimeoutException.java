@@ -0,0 +1,14 @@
+package com.drk.SpringAIDemo.exception;
+
+/**
+ * 响应式接口在限定时间内没有得到模型结果
+ * @Author drk
+ * @Date 2026/10/19 00:30
+ * @Version 1.0
+ */
+public class ModelTimeoutException extends RuntimeException {
+
+    public ModelTimeoutException(String endpoint, long timeoutMs) {
+        super("接口 " + endpoint + " 在 " + timeoutMs + " ms 内未返回结果");
+    }
+}
@@ -3,6 +3,11 @@ package com.drk.SpringAIDemo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.drk.SpringAIDemo.entity.ChatMessageEntity;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * @Author drk
@@ -11,4 +16,99 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessageEntity> {
+
+    /**
+     * 倒序扫描 (conversation_id, created_at, id) 索引，取最近 limit 条消息，结果按时间正序返回
+     * @param conversationId 对话ID
+     * @param since 起始时间（为空则不限制）
+     * @param limit 最大条数
+     * @return 消息列表
+     */
+    List<ChatMessageEntity> selectLatestWindow(@Param("conversationId") String conversationId,
+                                               @Param("since") LocalDateTime since,
+                                               @Param("limit") int limit);
+
+    /**
+     * 按 (created_at, id) 游标正序翻页读取对话消息
+     * @param conversationId 对话ID
+     * @param afterCreatedAt 上一页最后一条的创建时间（为空表示从头开始）
+     * @param afterId 上一页最后一条的ID
+     * @param limit 每页条数
+     * @return 消息列表
+     */
+    List<ChatMessageEntity> selectPageAfter(@Param("conversationId") String conversationId,
+                                            @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                            @Param("afterId") Long afterId,
+                                            @Param("limit") int limit);
+
+    /**
+     * 按 (created_at, id) 游标倒序翻页读取对话消息
+     * @param conversationId 对话ID
+     * @param beforeCreatedAt 上一页最后一条的创建时间（为空表示从最新开始）
+     * @param beforeId 上一页最后一条的ID
+     * @param limit 每页条数
+     * @return 消息列表（按时间倒序）
+     */
+    List<ChatMessageEntity> selectPageBefore(@Param("conversationId") String conversationId,
+                                             @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                             @Param("beforeId") Long beforeId,
+                                             @Param("limit") int limit);
+
+    /**
+     * 查询对话的压缩摘要
+     * @param conversationId 对话ID
+     * @return 摘要消息，不存在时返回 null
+     */
+    ChatMessageEntity selectSummary(@Param("conversationId") String conversationId);
+
+    /**
+     * 使用指定ID和创建时间插入消息
+     * @param entity 消息
+     * @return 影响行数
+     */
+    int insertWithId(ChatMessageEntity entity);
+
+    /**
+     * 批量插入消息，主键或幂等键已存在的行忽略
+     * @param messages 消息列表
+     * @return 影响行数
+     */
+    int insertIgnoreBatch(@Param("messages") List<ChatMessageEntity> messages);
+
+    /**
+     * 批量插入消息，ID 为空的行由自增生成，任何键冲突都会抛出异常
+     * @param messages 消息列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("messages") List<ChatMessageEntity> messages);
+
+    /**
+     * 按对话ID、创建时间和消息类型查询已写入的消息，由调用方再比较内容
+     * @param messages 待比较的消息（只使用 conversationId、createdAt 和 messageType）
+     * @return 可能相同的已有消息
+     */
+    List<ChatMessageEntity> selectByContentKeys(@Param("messages") List<ChatMessageEntity> messages);
+
+    /**
+     * 按对话ID和幂等键查询已写入的消息
+     * @param messages 带幂等键的消息（只使用 conversationId 和 messageKey）
+     * @return 已存在的消息
+     */
+    List<ChatMessageEntity> selectByMessageKeys(@Param("messages") List<ChatMessageEntity> messages);
+
+    /**
+     * 流式读取单个对话的全部消息（按时间正序），结果集逐行返回，必须在事务内消费并关闭
+     * @param conversationId 对话ID
+     * @return 消息游标
+     */
+    Cursor<ChatMessageEntity> selectCursorByConversation(@Param("conversationId") String conversationId);
+
+    /**
+     * 流式读取时间范围内所有对话的消息（按时间正序），结果集逐行返回，必须在事务内消费并关闭
+     * @param from 起始时间（包含）
+     * @param to 结束时间（不包含）
+     * @return 消息游标
+     */
+    Cursor<ChatMessageEntity> selectCursorByTimeRange(@Param("from") LocalDateTime from,
+                                                      @Param("to") LocalDateTime to);
 }
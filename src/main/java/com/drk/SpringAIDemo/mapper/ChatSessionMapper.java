@@ -0,0 +1,37 @@
+package com.drk.SpringAIDemo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 对话摘要 Mapper 接口
+ * @Author drk
+ * @Date 2026/10/18 13:16
+ * @Version 1.0
+ */
+@Mapper
+public interface ChatSessionMapper extends BaseMapper<ChatSessionEntity> {
+
+    /**
+     * 批量插入或累加对话摘要（每个对话一行）
+     * @param sessions 本次写入的增量，messageCount 为新增条数
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("sessions") List<ChatSessionEntity> sessions);
+
+    /**
+     * 按 (updated_at, id) 倒序游标翻页，只查询列表展示需要的列
+     * @param beforeUpdatedAt 上一页最后一条的活跃时间（为空表示第一页）
+     * @param beforeId 上一页最后一条的ID
+     * @param limit 每页条数
+     * @return 对话摘要列表
+     */
+    List<ChatSessionEntity> selectPageBefore(@Param("beforeUpdatedAt") LocalDateTime beforeUpdatedAt,
+                                             @Param("beforeId") Long beforeId,
+                                             @Param("limit") int limit);
+}
@@ -0,0 +1,29 @@
+package com.drk.SpringAIDemo.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 对话列表游标分页结果
+ * @Author drk
+ * @Date 2026/10/18 13:14
+ * @Version 1.0
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationPage {
+
+    /**
+     * 当前页数据
+     */
+    private List<ConversationSummary> items;
+
+    /**
+     * 下一页游标，为空表示没有更多数据
+     */
+    private String nextCursor;
+}
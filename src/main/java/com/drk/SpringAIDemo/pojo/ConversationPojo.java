@@ -12,4 +12,8 @@ import lombok.Data;
 public class ConversationPojo {
     private String conversationId;
     private String inputMsg;
+    /**
+     * 客户端请求ID（可选），重试同一条消息时保持不变，服务端据此去重
+     */
+    private String requestId;
 }
@@ -0,0 +1,44 @@
+package com.drk.SpringAIDemo.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 对话列表项
+ * @Author drk
+ * @Date 2026/10/18 13:12
+ * @Version 1.0
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+
+    /**
+     * 对话ID
+     */
+    private String conversationId;
+
+    /**
+     * 对话标题
+     */
+    private String title;
+
+    /**
+     * 最后一条用户消息预览
+     */
+    private String lastMessage;
+
+    /**
+     * 最后活跃时间
+     */
+    private LocalDateTime lastMessageTime;
+
+    /**
+     * 消息条数
+     */
+    private Integer messageCount;
+}
@@ -3,6 +3,11 @@ package com.drk.SpringAIDemo.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.drk.SpringAIDemo.entity.ChatMessageEntity;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * @Author drk
  * @Date 2025/7/9 10:23
@@ -10,4 +15,101 @@ import com.drk.SpringAIDemo.entity.ChatMessageEntity;
  */
 
 public interface ChatMessageService extends IService<ChatMessageEntity> {
+
+    /**
+     * 批量保存消息并同步更新对话摘要；带幂等键的消息已存在时跳过，并回填已有行的ID
+     * @param messages 消息列表（可包含多个对话）
+     */
+    void saveMessages(List<ChatMessageEntity> messages);
+
+    /**
+     * 按对话ID和幂等键查询已写入的消息
+     * @param keyed 带幂等键的消息（只使用 conversationId 和 messageKey）
+     * @return 已存在的消息
+     */
+    List<ChatMessageEntity> listByMessageKeys(List<ChatMessageEntity> keyed);
+
+    /**
+     * 获取对话最近的消息窗口（按时间正序）
+     * @param conversationId 对话ID
+     * @param since 起始时间（为空则不限制）
+     * @param limit 最大条数
+     * @return 消息列表
+     */
+    List<ChatMessageEntity> listLatestWindow(String conversationId, LocalDateTime since, int limit);
+
+    /**
+     * 按游标分页读取对话的全部消息（按时间正序）
+     * @param conversationId 对话ID
+     * @param pageSize 每页条数
+     * @return 消息列表
+     */
+    List<ChatMessageEntity> listAllOrdered(String conversationId, int pageSize);
+
+    /**
+     * 从最新消息往前读取，遇到第一条会超出 token 预算的消息即停止
+     * @param conversationId 对话ID
+     * @param tokenBudget token 预算
+     * @param pageSize 每次读取的条数
+     * @param skipIds 调用方已计入预算的消息ID，读到时跳过
+     * @return 预算内的消息（按时间倒序）
+     */
+    List<ChatMessageEntity> listLatestWithinTokens(String conversationId, int tokenBudget, int pageSize, Collection<Long> skipIds);
+
+    /**
+     * 获取对话最早的若干条消息（按时间正序）
+     * @param conversationId 对话ID
+     * @param limit 条数
+     * @return 消息列表
+     */
+    List<ChatMessageEntity> listOldest(String conversationId, int limit);
+
+    /**
+     * 获取对话的压缩摘要，未启用压缩（chat.memory.compaction.enabled=false）时不查询
+     * @param conversationId 对话ID
+     * @return 摘要消息，不存在或未启用压缩时返回 null
+     */
+    ChatMessageEntity getSummary(String conversationId);
+
+    /**
+     * 用一条摘要消息替换被压缩的历史消息
+     * @param conversationId 对话ID
+     * @param compacted 被压缩的消息（按时间正序）
+     * @param summary 摘要消息，沿用最后一条被压缩消息的ID和时间
+     * @return 是否替换成功，消息已被其他压缩任务处理时返回 false
+     */
+    boolean replaceWithSummary(String conversationId, List<ChatMessageEntity> compacted, ChatMessageEntity summary);
+
+    /**
+     * 归档后删除已写入冷存储的消息并标记对话
+     * @param conversationId 对话ID
+     * @param archived 已写入冷存储的消息
+     */
+    void removeArchived(String conversationId, List<ChatMessageEntity> archived);
+
+    /**
+     * 把冷存储中的消息恢复到 chat_memory 并取消归档标记，可重复执行
+     * @param conversationId 对话ID
+     * @param messages 冷存储中的消息
+     */
+    void restoreArchived(String conversationId, List<ChatMessageEntity> messages);
+
+    /**
+     * 通过数据库游标流式读取消息，逐条交给 consumer，不在内存中缓存结果
+     * @param conversationId 对话ID，不为空时导出单个对话的全部消息
+     * @param from 起始时间（包含），conversationId 为空时使用
+     * @param to 结束时间（不包含），conversationId 为空时使用
+     * @param consumer 消息处理逻辑
+     */
+    void exportMessages(String conversationId, LocalDateTime from, LocalDateTime to, Consumer<ChatMessageEntity> consumer);
+
+    /**
+     * 批量导入消息，只为新写入的消息更新对话摘要
+     * <p>
+     * 同一对话中已有相同ID、相同幂等键或相同 (created_at, message_type, content) 的消息视为已导入并跳过；
+     * ID 被其他对话占用（从另一个库导出时自增ID冲突）的消息改用新的自增ID写入。
+     * @param messages 消息列表（可包含多个对话）
+     * @return 新写入的消息
+     */
+    List<ChatMessageEntity> importMessages(List<ChatMessageEntity> messages);
 }
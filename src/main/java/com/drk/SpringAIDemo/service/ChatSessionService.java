@@ -0,0 +1,62 @@
+package com.drk.SpringAIDemo.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.pojo.ConversationPage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 对话摘要服务接口
+ * @Author drk
+ * @Date 2026/10/18 13:20
+ * @Version 1.0
+ */
+public interface ChatSessionService extends IService<ChatSessionEntity> {
+
+    /**
+     * 根据新写入的消息增量更新对话摘要
+     * @param messages 新写入的消息（可包含多个对话）
+     */
+    void recordMessages(List<ChatMessageEntity> messages);
+
+    /**
+     * 按最后活跃时间倒序游标分页查询对话列表
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页条数，必须大于 0
+     * @return 分页结果
+     */
+    ConversationPage listConversations(String cursor, int size);
+
+    /**
+     * 调整对话的消息条数（压缩、归档后使用）
+     * @param sessionId 对话ID
+     * @param delta 增量，可为负数
+     */
+    void adjustMessageCount(String sessionId, int delta);
+
+    /**
+     * 查询消息条数超过阈值的对话
+     * @param minMessageCount 最小消息条数（不含）
+     * @param limit 最多返回条数
+     * @return 对话摘要列表
+     */
+    List<ChatSessionEntity> listLargerThan(int minMessageCount, int limit);
+
+    /**
+     * 设置对话的归档标记，不刷新最后活跃时间
+     * @param sessionId 对话ID
+     * @param archived 是否已归档
+     */
+    void markArchived(String sessionId, boolean archived);
+
+    /**
+     * 查询在指定时间之前就不再活跃、且尚未归档的对话
+     * @param before 最后活跃时间上限
+     * @param limit 最多返回条数
+     * @return 对话摘要列表
+     */
+    List<ChatSessionEntity> listIdle(LocalDateTime before, int limit);
+}
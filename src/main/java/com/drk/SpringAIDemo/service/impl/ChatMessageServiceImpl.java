@@ -1,10 +1,33 @@
 package com.drk.SpringAIDemo.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.drk.SpringAIDemo.entity.ChatMessageEntity;
 import com.drk.SpringAIDemo.mapper.ChatMessageMapper;
 import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @Author drk
@@ -13,4 +36,225 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatMessageEntity> implements ChatMessageService {
+
+    @Autowired
+    private ChatSessionService chatSessionService;
+
+    /**
+     * 未启用压缩时不会产生摘要，读取上下文时不再查询
+     */
+    @Value("${chat.memory.compaction.enabled:false}")
+    private boolean compactionEnabled;
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void saveMessages(List<ChatMessageEntity> messages) {
+        List<ChatMessageEntity> plain = messages.stream().filter(m -> m.getMessageKey() == null).toList();
+        List<ChatMessageEntity> keyed = messages.stream().filter(m -> m.getMessageKey() != null).toList();
+        if (!plain.isEmpty()) {
+            saveBatch(plain);
+        }
+        if (keyed.isEmpty()) {
+            chatSessionService.recordMessages(messages);
+            return;
+        }
+        Set<ChatMessageEntity> inserted = saveKeyed(keyed);
+        chatSessionService.recordMessages(messages.stream()
+                .filter(m -> m.getMessageKey() == null || inserted.contains(m))
+                .toList());
+    }
+
+    /**
+     * 带幂等键的消息走 INSERT IGNORE，写入后按键回填ID，重复的消息与已有行共用同一个ID
+     * @return 本次新写入的消息（按实体身份比较）
+     */
+    private Set<ChatMessageEntity> saveKeyed(List<ChatMessageEntity> keyed) {
+        Set<String> existing = listByMessageKeys(keyed).stream().map(this::keyOf).collect(Collectors.toSet());
+        Set<String> seen = new HashSet<>();
+        Set<ChatMessageEntity> fresh = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ChatMessageEntity entity : keyed) {
+            String key = keyOf(entity);
+            if (!existing.contains(key) && seen.add(key)) {
+                fresh.add(entity);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            // 并发重试时另一方可能先写入，被忽略的行仍计入 fresh，只影响摘要表的消息条数
+            baseMapper.insertIgnoreBatch(keyed.stream().filter(fresh::contains).toList());
+        }
+        Map<String, ChatMessageEntity> stored = listByMessageKeys(keyed).stream()
+                .collect(Collectors.toMap(this::keyOf, Function.identity()));
+        for (ChatMessageEntity entity : keyed) {
+            ChatMessageEntity row = stored.get(keyOf(entity));
+            if (row != null) {
+                entity.setId(row.getId());
+                entity.setCreatedAt(row.getCreatedAt());
+            }
+        }
+        return fresh;
+    }
+
+    private String keyOf(ChatMessageEntity entity) {
+        return entity.getConversationId() + '\u0000' + entity.getMessageKey();
+    }
+
+    @Override
+    public List<ChatMessageEntity> listByMessageKeys(List<ChatMessageEntity> keyed) {
+        return keyed.isEmpty() ? List.of() : baseMapper.selectByMessageKeys(keyed);
+    }
+
+    @Override
+    public List<ChatMessageEntity> listLatestWindow(String conversationId, LocalDateTime since, int limit) {
+        return baseMapper.selectLatestWindow(conversationId, since, limit);
+    }
+
+    @Override
+    public List<ChatMessageEntity> listAllOrdered(String conversationId, int pageSize) {
+        List<ChatMessageEntity> result = new ArrayList<>();
+        LocalDateTime afterCreatedAt = null;
+        Long afterId = null;
+        while (true) {
+            List<ChatMessageEntity> page = baseMapper.selectPageAfter(conversationId, afterCreatedAt, afterId, pageSize);
+            result.addAll(page);
+            if (page.size() < pageSize) {
+                return result;
+            }
+            ChatMessageEntity last = page.get(page.size() - 1);
+            afterCreatedAt = last.getCreatedAt();
+            afterId = last.getId();
+        }
+    }
+
+    @Override
+    public List<ChatMessageEntity> listLatestWithinTokens(String conversationId, int tokenBudget, int pageSize, Collection<Long> skipIds) {
+        List<ChatMessageEntity> result = new ArrayList<>();
+        int used = 0;
+        LocalDateTime beforeCreatedAt = null;
+        Long beforeId = null;
+        while (true) {
+            List<ChatMessageEntity> page = baseMapper.selectPageBefore(conversationId, beforeCreatedAt, beforeId, pageSize);
+            for (ChatMessageEntity entity : page) {
+                if (skipIds.contains(entity.getId())) {
+                    continue;
+                }
+                int tokens = entity.getTokenCount() == null ? 0 : entity.getTokenCount();
+                if (used + tokens > tokenBudget) {
+                    return result;
+                }
+                used += tokens;
+                result.add(entity);
+            }
+            if (page.size() < pageSize) {
+                return result;
+            }
+            ChatMessageEntity last = page.get(page.size() - 1);
+            beforeCreatedAt = last.getCreatedAt();
+            beforeId = last.getId();
+        }
+    }
+
+    @Override
+    public List<ChatMessageEntity> listOldest(String conversationId, int limit) {
+        return baseMapper.selectPageAfter(conversationId, null, null, limit);
+    }
+
+    @Override
+    public ChatMessageEntity getSummary(String conversationId) {
+        return compactionEnabled ? baseMapper.selectSummary(conversationId) : null;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean replaceWithSummary(String conversationId, List<ChatMessageEntity> compacted, ChatMessageEntity summary) {
+        List<Long> ids = compacted.stream().map(ChatMessageEntity::getId).toList();
+        int deleted = baseMapper.delete(new QueryWrapper<ChatMessageEntity>()
+                .eq("conversation_id", conversationId)
+                .in("id", ids));
+        if (deleted != ids.size()) {
+            // 部分消息已被删除或压缩，放弃本次结果
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        baseMapper.insertWithId(summary);
+        chatSessionService.adjustMessageCount(conversationId, 1 - deleted);
+        return true;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void removeArchived(String conversationId, List<ChatMessageEntity> archived) {
+        // 只删除已归档的行，归档期间新写入的消息保留在热存储
+        List<Long> ids = archived.stream().map(ChatMessageEntity::getId).toList();
+        if (!ids.isEmpty()) {
+            baseMapper.delete(new QueryWrapper<ChatMessageEntity>()
+                    .eq("conversation_id", conversationId)
+                    .in("id", ids));
+        }
+        chatSessionService.markArchived(conversationId, true);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void restoreArchived(String conversationId, List<ChatMessageEntity> messages) {
+        if (!messages.isEmpty()) {
+            baseMapper.insertIgnoreBatch(messages);
+        }
+        chatSessionService.markArchived(conversationId, false);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportMessages(String conversationId, LocalDateTime from, LocalDateTime to, Consumer<ChatMessageEntity> consumer) {
+        // 游标依赖当前事务持有的连接，必须在方法返回前读完并关闭
+        try (Cursor<ChatMessageEntity> cursor = conversationId != null
+                ? baseMapper.selectCursorByConversation(conversationId)
+                : baseMapper.selectCursorByTimeRange(from, to)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭消息游标失败", e);
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<ChatMessageEntity> importMessages(List<ChatMessageEntity> messages) {
+        List<Long> ids = messages.stream().map(ChatMessageEntity::getId).filter(Objects::nonNull).toList();
+        Map<Long, String> owners = ids.isEmpty() ? Map.of() : baseMapper.selectList(new QueryWrapper<ChatMessageEntity>()
+                        .select("id", "conversation_id")
+                        .in("id", ids))
+                .stream().collect(Collectors.toMap(ChatMessageEntity::getId, ChatMessageEntity::getConversationId));
+        List<ChatMessageEntity> candidates = messages.stream()
+                .filter(m -> m.getId() == null || !Objects.equals(m.getConversationId(), owners.get(m.getId())))
+                .toList();
+
+        // ID 被改写过的消息再次导入时只能按幂等键或内容识别
+        List<ChatMessageEntity> keyed = candidates.stream().filter(m -> m.getMessageKey() != null).toList();
+        Set<String> existingKeys = listByMessageKeys(keyed).stream().map(this::keyOf).collect(Collectors.toSet());
+        List<ChatMessageEntity> timed = candidates.stream().filter(m -> m.getCreatedAt() != null).toList();
+        Set<String> existingContents = (timed.isEmpty() ? List.<ChatMessageEntity>of() : baseMapper.selectByContentKeys(timed))
+                .stream().map(this::contentKeyOf).collect(Collectors.toSet());
+
+        Set<Long> taken = new HashSet<>(owners.keySet());
+        List<ChatMessageEntity> fresh = new ArrayList<>();
+        for (ChatMessageEntity m : candidates) {
+            if ((m.getMessageKey() != null && existingKeys.contains(keyOf(m)))
+                    || (m.getCreatedAt() != null && existingContents.contains(contentKeyOf(m)))) {
+                continue;
+            }
+            if (m.getId() != null && !taken.add(m.getId())) {
+                m.setId(null);
+            }
+            fresh.add(m);
+        }
+        if (!fresh.isEmpty()) {
+            baseMapper.insertBatch(fresh);
+            chatSessionService.recordMessages(fresh);
+        }
+        return fresh;
+    }
+
+    private String contentKeyOf(ChatMessageEntity entity) {
+        return entity.getConversationId() + '\u0000' + entity.getCreatedAt() + '\u0000' + entity.getMessageType()
+                + '\u0000' + entity.getContent();
+    }
 }
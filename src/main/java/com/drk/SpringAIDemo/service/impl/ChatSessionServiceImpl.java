@@ -0,0 +1,120 @@
+package com.drk.SpringAIDemo.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.mapper.ChatSessionMapper;
+import com.drk.SpringAIDemo.pojo.ConversationPage;
+import com.drk.SpringAIDemo.pojo.ConversationSummary;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话摘要服务实现类
+ * @Author drk
+ * @Date 2026/10/18 13:22
+ * @Version 1.0
+ */
+@Service
+public class ChatSessionServiceImpl extends ServiceImpl<ChatSessionMapper, ChatSessionEntity> implements ChatSessionService {
+
+    private static final int TITLE_MAX_LENGTH = 30;
+    private static final int PREVIEW_MAX_LENGTH = 50;
+    private static final String DEFAULT_TITLE = "新对话";
+    private static final String CURSOR_SEPARATOR = "_";
+
+    @Override
+    public void recordMessages(List<ChatMessageEntity> messages) {
+        Map<String, ChatSessionEntity> deltas = new LinkedHashMap<>();
+        for (ChatMessageEntity message : messages) {
+            ChatSessionEntity delta = deltas.computeIfAbsent(message.getConversationId(), id -> {
+                ChatSessionEntity session = new ChatSessionEntity();
+                session.setSessionId(id);
+                session.setSessionName(DEFAULT_TITLE);
+                session.setMessageCount(0);
+                return session;
+            });
+            delta.setMessageCount(delta.getMessageCount() + 1);
+            if ("USER".equals(message.getMessageType()) && StringUtils.isNotBlank(message.getContent())) {
+                if (delta.getLastMessage() == null) {
+                    delta.setSessionName(StringUtils.abbreviate(message.getContent(), TITLE_MAX_LENGTH));
+                }
+                delta.setLastMessage(StringUtils.abbreviate(message.getContent(), PREVIEW_MAX_LENGTH));
+            }
+        }
+        if (!deltas.isEmpty()) {
+            baseMapper.upsertBatch(List.copyOf(deltas.values()));
+        }
+    }
+
+    @Override
+    public ConversationPage listConversations(String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("每页条数必须大于 0: " + size);
+        }
+        LocalDateTime beforeUpdatedAt = null;
+        Long beforeId = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            try {
+                beforeUpdatedAt = LocalDateTime.parse(StringUtils.substringBefore(cursor, CURSOR_SEPARATOR));
+                beforeId = Long.valueOf(StringUtils.substringAfter(cursor, CURSOR_SEPARATOR));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+        }
+
+        List<ChatSessionEntity> sessions = baseMapper.selectPageBefore(beforeUpdatedAt, beforeId, size);
+        List<ConversationSummary> items = sessions.stream()
+                .map(s -> new ConversationSummary(s.getSessionId(), s.getSessionName(), s.getLastMessage(), s.getUpdatedAt(), s.getMessageCount()))
+                .toList();
+
+        String nextCursor = null;
+        if (sessions.size() == size) {
+            ChatSessionEntity last = sessions.get(sessions.size() - 1);
+            nextCursor = last.getUpdatedAt() + CURSOR_SEPARATOR + last.getId();
+        }
+        return new ConversationPage(items, nextCursor);
+    }
+
+    @Override
+    public void adjustMessageCount(String sessionId, int delta) {
+        update(new UpdateWrapper<ChatSessionEntity>()
+                .eq("session_id", sessionId)
+                .setSql("message_count = GREATEST(message_count + " + delta + ", 0), updated_at = updated_at"));
+    }
+
+    @Override
+    public List<ChatSessionEntity> listLargerThan(int minMessageCount, int limit) {
+        return list(new QueryWrapper<ChatSessionEntity>()
+                .select("id", "session_id", "message_count")
+                .gt("message_count", minMessageCount)
+                .orderByDesc("message_count")
+                .last("LIMIT " + limit));
+    }
+
+    @Override
+    public void markArchived(String sessionId, boolean archived) {
+        update(new UpdateWrapper<ChatSessionEntity>()
+                .eq("session_id", sessionId)
+                .setSql("archived = " + (archived ? 1 : 0) + ", updated_at = updated_at"));
+    }
+
+    @Override
+    public List<ChatSessionEntity> listIdle(LocalDateTime before, int limit) {
+        return list(new QueryWrapper<ChatSessionEntity>()
+                .select("id", "session_id", "message_count", "updated_at")
+                .lt("updated_at", before)
+                .eq("archived", 0)
+                .orderByAsc("updated_at", "id")
+                .last("LIMIT " + limit));
+    }
+}
@@ -0,0 +1,180 @@
+package com.drk.SpringAIDemo.utils;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话消息编解码器
+ * <p>
+ * chat_memory 的写入和读取共用同一个实例，完整保存消息元数据、工具调用、工具返回和 token 用量。
+ * 默认以 JSON 写入 metadata 列；chat.memory.codec.format=smile 时以 Smile 二进制写入 metadata_bin 列，体积更小、编解码更快。
+ * 读取时两种格式以及只包含元数据的旧数据都能识别，切换格式无需迁移历史数据。
+ * @Author drk
+ * @Date 2026/10/18 16:50
+ * @Version 1.0
+ */
+@Component
+public class MessageCodec {
+
+    /**
+     * 当前载荷结构版本，用于区分旧数据（metadata 列直接保存元数据）
+     */
+    static final int PAYLOAD_VERSION = 1;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectWriter jsonWriter;
+    private final ObjectReader jsonReader;
+    private final ObjectWriter smileWriter;
+    private final ObjectReader smileReader;
+    private final boolean binary;
+
+    public MessageCodec(ObjectMapper objectMapper,
+                        @Value("${chat.memory.codec.format:json}") String format) {
+        ObjectMapper smileMapper = SmileMapper.builder().findAndAddModules().build();
+        this.jsonMapper = objectMapper;
+        // 预先绑定根类型，避免每次调用重新查找序列化器
+        this.jsonWriter = objectMapper.writerFor(Payload.class);
+        this.jsonReader = objectMapper.readerFor(Payload.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.smileWriter = smileMapper.writerFor(Payload.class);
+        this.smileReader = smileMapper.readerFor(Payload.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.binary = switch (format.toLowerCase()) {
+            case "json" -> false;
+            case "smile" -> true;
+            default -> throw new IllegalArgumentException("不支持的消息编码格式: " + format);
+        };
+    }
+
+    /**
+     * 把消息写入实体的 messageType、content 和 metadata / metadataBin
+     * @param message 消息
+     * @param entity 待写入的实体
+     */
+    public void encode(Message message, ChatMessageEntity entity) {
+        entity.setMessageType(message.getMessageType().name());
+        entity.setContent(message.getText());
+        Payload payload = toPayload(message);
+        try {
+            if (binary) {
+                entity.setMetadata(null);
+                entity.setMetadataBin(smileWriter.writeValueAsBytes(payload));
+            } else {
+                entity.setMetadata(jsonWriter.writeValueAsString(payload));
+                entity.setMetadataBin(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("消息元数据序列化失败", e);
+        }
+    }
+
+    /**
+     * 从实体还原消息
+     */
+    public Message decode(ChatMessageEntity entity) {
+        return decode(entity.getMessageType(), entity.getContent(), entity.getMetadata(), entity.getMetadataBin());
+    }
+
+    /**
+     * 从原始列值还原消息，metadataBin 不为空时优先使用
+     * @param messageType 消息类型
+     * @param content 文本内容
+     * @param metadataJson metadata 列（JSON）
+     * @param metadataBin metadata_bin 列（Smile）
+     * @return 消息
+     */
+    public Message decode(String messageType, String content, String metadataJson, byte[] metadataBin) {
+        Payload payload = readPayload(metadataJson, metadataBin);
+        Map<String, Object> metadata = payload.metadata() == null ? new LinkedHashMap<>() : new LinkedHashMap<>(payload.metadata());
+        if (payload.usage() != null) {
+            payload.usage().forEach((key, usage) -> metadata.put(key, usage.toUsage()));
+        }
+        return switch (MessageType.valueOf(messageType)) {
+            case USER -> UserMessage.builder().text(content).metadata(metadata).build();
+            case ASSISTANT -> new AssistantMessage(content, metadata,
+                    payload.toolCalls() == null ? List.of() : payload.toolCalls());
+            case SYSTEM -> SystemMessage.builder().text(content).metadata(metadata).build();
+            case TOOL -> new ToolResponseMessage(payload.toolResponses() == null ? List.of() : payload.toolResponses(), metadata);
+        };
+    }
+
+    private Payload toPayload(Message message) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        Map<String, UsagePayload> usage = new LinkedHashMap<>();
+        message.getMetadata().forEach((key, value) -> {
+            // Usage 是接口，按字段单独保存，读取时还原为 DefaultUsage
+            if (value instanceof Usage u) {
+                usage.put(key, new UsagePayload(u.getPromptTokens(), u.getCompletionTokens(), u.getTotalTokens()));
+            } else {
+                metadata.put(key, value);
+            }
+        });
+        List<AssistantMessage.ToolCall> toolCalls = message instanceof AssistantMessage assistant ? assistant.getToolCalls() : null;
+        List<ToolResponseMessage.ToolResponse> toolResponses = message instanceof ToolResponseMessage tool ? tool.getResponses() : null;
+        return new Payload(PAYLOAD_VERSION, metadata, toolCalls, toolResponses, usage);
+    }
+
+    private Payload readPayload(String metadataJson, byte[] metadataBin) {
+        try {
+            if (metadataBin != null && metadataBin.length > 0) {
+                return smileReader.readValue(metadataBin);
+            }
+            if (metadataJson == null || metadataJson.isBlank()) {
+                return Payload.EMPTY;
+            }
+            Payload payload = jsonReader.readValue(metadataJson);
+            if (payload.v() > 0) {
+                return payload;
+            }
+            // 旧数据：metadata 列直接保存消息元数据，没有版本号
+            return new Payload(PAYLOAD_VERSION, jsonMapper.readValue(metadataJson, METADATA_TYPE), null, null, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("消息元数据反序列化失败", e);
+        }
+    }
+
+    /**
+     * 持久化的消息载荷
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    record Payload(int v,
+                   Map<String, Object> metadata,
+                   List<AssistantMessage.ToolCall> toolCalls,
+                   List<ToolResponseMessage.ToolResponse> toolResponses,
+                   Map<String, UsagePayload> usage) {
+
+        static final Payload EMPTY = new Payload(PAYLOAD_VERSION, null, null, null, null);
+    }
+
+    /**
+     * token 用量
+     */
+    record UsagePayload(Integer promptTokens, Integer completionTokens, Integer totalTokens) {
+
+        Usage toUsage() {
+            return new DefaultUsage(promptTokens, completionTokens, totalTokens);
+        }
+    }
+}
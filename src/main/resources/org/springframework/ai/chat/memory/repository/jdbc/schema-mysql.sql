@@ -24,12 +24,18 @@ DROP TABLE IF EXISTS `chat_memory`;
 CREATE TABLE `chat_memory`  (
   `id` bigint NOT NULL AUTO_INCREMENT,
   `conversation_id` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+  `message_key` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NULL,
   `message_type` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
   `content` text CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
   `metadata` json NULL,
+  `metadata_bin` mediumblob NULL,
+  `token_count` int NOT NULL DEFAULT 0,
   `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP,
   PRIMARY KEY (`id`) USING BTREE,
-  INDEX `idx_conversation_id`(`conversation_id`) USING BTREE
+  UNIQUE INDEX `uk_conversation_message_key`(`conversation_id`, `message_key`) USING BTREE,
+  INDEX `idx_conversation_created_id`(`conversation_id`, `created_at`, `id`) USING BTREE,
+  INDEX `idx_conversation_type_created_id`(`conversation_id`, `message_type`, `created_at`, `id`) USING BTREE,
+  INDEX `idx_created_id`(`created_at`, `id`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_bin ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -40,12 +46,14 @@ CREATE TABLE `chat_sessions`  (
   `id` bigint NOT NULL AUTO_INCREMENT,
   `session_id` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
   `session_name` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+  `last_message` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NULL,
+  `message_count` int NOT NULL DEFAULT 0,
+  `archived` tinyint NOT NULL DEFAULT 0,
   `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`id`) USING BTREE,
   UNIQUE INDEX `session_id`(`session_id`) USING BTREE,
-  INDEX `idx_session_id`(`session_id`) USING BTREE,
-  INDEX `idx_updated_at`(`updated_at`) USING BTREE
+  INDEX `idx_updated_at_id`(`updated_at`, `id`) USING BTREE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_bin ROW_FORMAT = Dynamic;
 
 SET FOREIGN_KEY_CHECKS = 1;
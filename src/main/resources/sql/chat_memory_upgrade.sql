@@ -0,0 +1,50 @@
+-- chat_memory 表升级脚本（已有数据的库按顺序执行，新库直接使用 schema-mysql.sql）
+
+-- 窗口读取/游标翻页使用的联合索引，替换原来的单列索引
+ALTER TABLE `chat_memory`
+  ADD INDEX `idx_conversation_created_id`(`conversation_id`, `created_at`, `id`) USING BTREE,
+  DROP INDEX `idx_conversation_id`;
+
+-- 对话摘要：chat_sessions 随消息写入增量维护，对话列表不再扫描 chat_memory
+ALTER TABLE `chat_sessions`
+  ADD COLUMN `last_message` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NULL AFTER `session_name`,
+  ADD COLUMN `message_count` int NOT NULL DEFAULT 0 AFTER `last_message`,
+  ADD INDEX `idx_updated_at_id`(`updated_at`, `id`) USING BTREE,
+  DROP INDEX `idx_updated_at`,
+  DROP INDEX `idx_session_id`;
+
+-- 根据已有消息回填摘要
+INSERT INTO `chat_sessions` (`session_id`, `session_name`, `last_message`, `message_count`, `created_at`, `updated_at`)
+SELECT m.conversation_id,
+       COALESCE(LEFT((SELECT u.content FROM chat_memory u WHERE u.conversation_id = m.conversation_id AND u.message_type = 'USER' ORDER BY u.created_at, u.id LIMIT 1), 30), '新对话'),
+       LEFT((SELECT u.content FROM chat_memory u WHERE u.conversation_id = m.conversation_id AND u.message_type = 'USER' ORDER BY u.created_at DESC, u.id DESC LIMIT 1), 50),
+       COUNT(*), MIN(m.created_at), MAX(m.created_at)
+FROM chat_memory m
+GROUP BY m.conversation_id
+ON DUPLICATE KEY UPDATE `message_count` = VALUES(`message_count`), `updated_at` = VALUES(`updated_at`);
+
+-- 写入时计算的 token 数，按 token 预算裁剪历史时使用；历史数据按字符数粗略回填
+ALTER TABLE `chat_memory`
+  ADD COLUMN `token_count` int NOT NULL DEFAULT 0 AFTER `metadata`;
+UPDATE `chat_memory` SET `token_count` = CEIL(CHAR_LENGTH(`content`) / 2) WHERE `token_count` = 0;
+
+-- 冷存储归档标记
+ALTER TABLE `chat_sessions`
+  ADD COLUMN `archived` tinyint NOT NULL DEFAULT 0 AFTER `message_count`;
+
+-- 按时间范围流式导出
+ALTER TABLE `chat_memory`
+  ADD INDEX `idx_created_id`(`created_at`, `id`);
+
+-- Smile 二进制编码的消息载荷（chat.memory.codec.format=smile）
+ALTER TABLE `chat_memory`
+  ADD COLUMN `metadata_bin` mediumblob NULL AFTER `metadata`;
+
+-- 幂等键：客户端重试时重复写入的消息被忽略（message_key 为空的旧数据不受唯一索引约束）
+ALTER TABLE `chat_memory`
+  ADD COLUMN `message_key` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NULL AFTER `conversation_id`,
+  ADD UNIQUE INDEX `uk_conversation_message_key`(`conversation_id`, `message_key`);
+
+-- 压缩摘要查找：直接定位对话最早的 SYSTEM 消息，避免在没有摘要的对话上扫描全部消息
+ALTER TABLE `chat_memory`
+  ADD INDEX `idx_conversation_type_created_id`(`conversation_id`, `message_type`, `created_at`, `id`);
@@ -0,0 +1,84 @@
+package com.drk.SpringAIDemo.benchmark;
+
+import com.drk.SpringAIDemo.component.BlockingCallScheduler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阻塞调用调度器基准测试：并发调用慢模型时 boundedElastic 与虚拟线程的总耗时对比
+ * <p>
+ * 运行方式同 MessageCodecBenchmark；virtual 需要在 JDK 21 上运行，更低版本会回退到 boundedElastic。
+ * @Author drk
+ * @Date 2026/10/19 01:30
+ * @Version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BlockingCallSchedulerBenchmark {
+
+    /**
+     * 模拟模型一次调用的耗时
+     */
+    private static final long MODEL_DELAY_MS = 200;
+
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    @Param({"500", "2000"})
+    public int concurrency;
+
+    private BlockingCallScheduler scheduler;
+    private ChatClient chatClient;
+
+    @Setup
+    public void setUp() {
+        scheduler = new BlockingCallScheduler(virtual);
+        chatClient = ChatClient.builder(new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                try {
+                    Thread.sleep(MODEL_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+            }
+        }).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public List<String> slowModelCalls() {
+        return Flux.range(0, concurrency)
+                .flatMap(i -> Mono.fromCallable(() -> chatClient.prompt("hi").call().content()).subscribeOn(scheduler.get()), concurrency)
+                .collectList()
+                .block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BlockingCallSchedulerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package com.drk.SpringAIDemo.benchmark;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.utils.MessageCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息编解码基准测试：原 JSON 路径（只写元数据、读取时丢弃）与 MessageCodec 的 JSON / Smile 格式对比
+ * <p>
+ * 运行方式：mvn test-compile 后在 IDE 中运行 main 方法，或
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" com.drk.SpringAIDemo.benchmark.MessageCodecBenchmark
+ * <p>
+ * 启动时会打印每种格式单条消息的存储字节数。
+ * @Author drk
+ * @Date 2026/10/18 17:40
+ * @Version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final MessageCodec jsonCodec = new MessageCodec(objectMapper, "json");
+    private final MessageCodec smileCodec = new MessageCodec(objectMapper, "smile");
+
+    private AssistantMessage message;
+    private String legacyMetadata;
+    private ChatMessageEntity jsonEntity;
+    private ChatMessageEntity smileEntity;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("id", "chatcmpl-9f2c1e7a");
+        metadata.put("role", "ASSISTANT");
+        metadata.put("finishReason", "STOP");
+        metadata.put("index", 0);
+        metadata.put("usage", new DefaultUsage(812, 164, 976));
+        message = new AssistantMessage("根据查询结果，杭州明天多云转晴，气温 18 到 26 度，适合户外活动。".repeat(4), metadata,
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "getWeather", "{\"city\":\"杭州\",\"days\":1}")));
+
+        legacyMetadata = objectMapper.writeValueAsString(message.getMetadata());
+        jsonEntity = new ChatMessageEntity();
+        jsonCodec.encode(message, jsonEntity);
+        smileEntity = new ChatMessageEntity();
+        smileCodec.encode(message, smileEntity);
+
+        System.out.printf("%n元数据字节数: legacyJson=%d, codecJson=%d, codecSmile=%d%n",
+                legacyMetadata.getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                jsonEntity.getMetadata().getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                smileEntity.getMetadataBin().length);
+    }
+
+    @Benchmark
+    public String legacyJsonEncode() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(message.getMetadata());
+    }
+
+    @Benchmark
+    public Message legacyJsonDecode() {
+        // 原读取路径不解析元数据，只按类型重建消息
+        return new AssistantMessage(jsonEntity.getContent());
+    }
+
+    @Benchmark
+    public ChatMessageEntity codecJsonEncode() {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        jsonCodec.encode(message, entity);
+        return entity;
+    }
+
+    @Benchmark
+    public Message codecJsonDecode() {
+        return jsonCodec.decode(jsonEntity);
+    }
+
+    @Benchmark
+    public ChatMessageEntity codecSmileEncode() {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        smileCodec.encode(message, entity);
+        return entity;
+    }
+
+    @Benchmark
+    public Message codecSmileDecode() {
+        return smileCodec.decode(smileEntity);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MessageCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,191 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Advisor 耗时与追踪测试类
+ * @Author drk
+ * @Date 2026/10/18 23:20
+ * @Version 1.0
+ */
+public class AdvisorTimingTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdvisorTiming advisorTiming;
+    private ChatModel stub;
+
+    @BeforeEach
+    public void setUp() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("observationRegistry", ObservationRegistry.create());
+        advisorTiming = new AdvisorTiming(meterRegistry, beanFactory.getBeanProvider(ObservationRegistry.class));
+        ReflectionTestUtils.setField(advisorTiming, "enabled", true);
+        ReflectionTestUtils.setField(advisorTiming, "budgetMs", 50L);
+        stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                sleep(30);
+                return response("hello");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(response("hel"), response("lo")).delayElements(Duration.ofMillis(20));
+            }
+        };
+    }
+
+    @Test
+    public void testCallSplitsBeforeAndAfter() {
+        Advisor slow = advisorTiming.wrap(new SleepingAdvisor("slow", 40, 30));
+        ChatClient chatClient = ChatClient.builder(stub).defaultAdvisors(slow).build();
+
+        assertEquals("hello", chatClient.prompt("hi").call().content());
+
+        Timer before = timer("slow", "before", "call");
+        Timer after = timer("slow", "after", "call");
+        assertEquals(1, before.count());
+        assertTrue(before.totalTime(TimeUnit.MILLISECONDS) >= 40);
+        assertTrue(before.totalTime(TimeUnit.MILLISECONDS) < 70, "模型耗时不应计入 before");
+        assertTrue(after.totalTime(TimeUnit.MILLISECONDS) >= 30);
+        assertEquals(1.0, meterRegistry.get("chat.advisor.over.budget").tag("advisor", "slow").counter().count());
+    }
+
+    @Test
+    public void testStreamRecordsAfterDownstreamCompletes() {
+        Advisor slow = advisorTiming.wrap(new SleepingAdvisor("slow", 10, 60));
+        Advisor fast = advisorTiming.wrap(new SleepingAdvisor("fast", 0, 0));
+        ChatClient chatClient = ChatClient.builder(stub).defaultAdvisors(slow, fast).build();
+
+        List<String> chunks = chatClient.prompt("hi").stream().content().collectList().block(Duration.ofSeconds(5));
+        assertEquals("hello", String.join("", chunks));
+
+        assertTrue(timer("slow", "after", "stream").totalTime(TimeUnit.MILLISECONDS) >= 60);
+        assertTrue(timer("fast", "before", "stream").totalTime(TimeUnit.MILLISECONDS) < 20);
+        assertEquals(1.0, meterRegistry.get("chat.advisor.over.budget").tag("advisor", "slow").counter().count());
+        assertNull(meterRegistry.find("chat.advisor.over.budget").tag("advisor", "fast").counter());
+    }
+
+    @Test
+    public void testCancelledAndFailedStreamsAreRecordedWithOutcome() {
+        Advisor slow = advisorTiming.wrap(new SleepingAdvisor("slow", 10, 0));
+        ChatClient chatClient = ChatClient.builder(stub).defaultAdvisors(slow).build();
+
+        assertEquals(List.of("hel"), chatClient.prompt("hi").stream().content().take(1).collectList().block(Duration.ofSeconds(5)));
+        Timer cancelled = meterRegistry.get("chat.advisor.duration")
+                .tags("advisor", "slow", "phase", "before", "mode", "stream", "outcome", "cancelled").timer();
+        assertEquals(1, cancelled.count());
+        assertTrue(cancelled.totalTime(TimeUnit.MILLISECONDS) >= 10);
+
+        ChatModel failing = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new IllegalStateException("upstream failed");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.error(new IllegalStateException("upstream failed"));
+            }
+        };
+        ChatClient failingClient = ChatClient.builder(failing).defaultAdvisors(slow).build();
+        assertThrows(IllegalStateException.class, () -> failingClient.prompt("hi").stream().content().blockLast(Duration.ofSeconds(5)));
+        assertThrows(IllegalStateException.class, () -> failingClient.prompt("hi").call().content());
+
+        assertEquals(1, meterRegistry.get("chat.advisor.duration")
+                .tags("advisor", "slow", "phase", "before", "mode", "stream", "outcome", "error").timer().count());
+        assertEquals(1, meterRegistry.get("chat.advisor.duration")
+                .tags("advisor", "slow", "phase", "before", "mode", "call", "outcome", "error").timer().count());
+        assertNull(meterRegistry.find("chat.advisor.duration").tag("outcome", "completed").timer());
+    }
+
+    @Test
+    public void testWrapKeepsNameAndOrderAndCanBeDisabled() {
+        SleepingAdvisor advisor = new SleepingAdvisor("memory", 0, 0);
+        Advisor wrapped = advisorTiming.wrap(advisor);
+        assertNotSame(advisor, wrapped);
+        assertEquals("memory", wrapped.getName());
+        assertEquals(advisor.getOrder(), wrapped.getOrder());
+        assertSame(wrapped, advisorTiming.wrap(wrapped));
+
+        ReflectionTestUtils.setField(advisorTiming, "enabled", false);
+        assertSame(advisor, advisorTiming.wrap(advisor));
+    }
+
+    private Timer timer(String advisor, String phase, String mode) {
+        return meterRegistry.get("chat.advisor.duration").tags("advisor", advisor, "phase", phase, "mode", mode).timer();
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 调用下游前后各休眠一段时间的 Advisor
+     */
+    private record SleepingAdvisor(String name, long beforeMs, long afterMs) implements CallAdvisor, StreamAdvisor {
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            sleep(beforeMs);
+            ChatClientResponse response = chain.nextCall(request);
+            sleep(afterMs);
+            return response;
+        }
+
+        @Override
+        public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+            return Flux.defer(() -> {
+                sleep(beforeMs);
+                return chain.nextStream(request);
+            }).concatWith(Flux.defer(() -> {
+                sleep(afterMs);
+                return Flux.empty();
+            }));
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getOrder() {
+            return 10;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.drk.SpringAIDemo.component;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 阻塞调用调度器测试类，吞吐对比见 benchmark 包下的 BlockingCallSchedulerBenchmark
+ * @Author drk
+ * @Date 2026/10/19 00:20
+ * @Version 1.0
+ */
+public class BlockingCallSchedulerTest {
+
+    private static final boolean VIRTUAL_SUPPORTED = Runtime.version().feature() >= 21;
+
+    @Test
+    public void testDisabledUsesBoundedElastic() {
+        BlockingCallScheduler scheduler = new BlockingCallScheduler(false);
+
+        assertFalse(scheduler.isVirtual());
+        assertSame(Schedulers.boundedElastic(), scheduler.get());
+        // 共享的 boundedElastic 不随本组件关闭
+        scheduler.shutdown();
+        assertFalse(Schedulers.boundedElastic().isDisposed());
+    }
+
+    @Test
+    public void testFallsBackToBoundedElasticWhenVirtualThreadsUnavailable() {
+        BlockingCallScheduler scheduler = new BlockingCallScheduler(true, () -> null);
+
+        assertFalse(scheduler.isVirtual());
+        assertSame(Schedulers.boundedElastic(), scheduler.get());
+    }
+
+    @Test
+    public void testVirtualModeFollowsJdk() {
+        BlockingCallScheduler scheduler = new BlockingCallScheduler(true);
+        try {
+            assertEquals(VIRTUAL_SUPPORTED, scheduler.isVirtual());
+            assertEquals(VIRTUAL_SUPPORTED, scheduler.get() != Schedulers.boundedElastic());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsAreNamedAndRunBeyondBoundedElasticCap() throws InterruptedException {
+        assumeTrue(VIRTUAL_SUPPORTED, "虚拟线程需要 JDK 21");
+        BlockingCallScheduler scheduler = new BlockingCallScheduler(true);
+        try {
+            String name = Mono.fromCallable(() -> Thread.currentThread().getName())
+                    .subscribeOn(scheduler.get())
+                    .block(Duration.ofSeconds(5));
+            assertTrue(name.startsWith("chat-virtual-"), name);
+
+            // 所有任务必须同时阻塞才能通过屏障，boundedElastic 最多 10 × CPU 核数个线程，无法做到
+            int concurrency = Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE * 5;
+            CountDownLatch barrier = new CountDownLatch(concurrency);
+            List<Boolean> passed = Flux.range(0, concurrency)
+                    .flatMap(i -> Mono.fromCallable(() -> {
+                        barrier.countDown();
+                        return barrier.await(5, TimeUnit.SECONDS);
+                    }).subscribeOn(scheduler.get()), concurrency)
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+            assertTrue(passed.stream().allMatch(Boolean::booleanValue));
+        } finally {
+            scheduler.shutdown();
+        }
+        assertTrue(scheduler.get().isDisposed());
+    }
+}
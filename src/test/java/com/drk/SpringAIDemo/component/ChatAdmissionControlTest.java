@@ -0,0 +1,142 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.component.ChatAdmissionControl.EndpointClass;
+import com.drk.SpringAIDemo.exception.AdmissionRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 模型接口准入控制测试类
+ * @Author drk
+ * @Date 2026/10/18 21:50
+ * @Version 1.0
+ */
+public class ChatAdmissionControlTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatAdmissionControl admissionControl;
+
+    @BeforeEach
+    public void setUp() {
+        admissionControl = new ChatAdmissionControl(meterRegistry);
+        ReflectionTestUtils.setField(admissionControl, "enabled", true);
+        ReflectionTestUtils.setField(admissionControl, "streamingMaxConcurrency", 2);
+        ReflectionTestUtils.setField(admissionControl, "streamingTargetLatencyMs", 60000L);
+        ReflectionTestUtils.setField(admissionControl, "blockingMaxConcurrency", 2);
+        ReflectionTestUtils.setField(admissionControl, "blockingTargetLatencyMs", 60000L);
+        ReflectionTestUtils.setField(admissionControl, "imageMaxConcurrency", 1);
+        ReflectionTestUtils.setField(admissionControl, "imageTargetLatencyMs", 60000L);
+        ReflectionTestUtils.setField(admissionControl, "embeddingMaxConcurrency", 2);
+        ReflectionTestUtils.setField(admissionControl, "embeddingTargetLatencyMs", 60000L);
+        ReflectionTestUtils.setField(admissionControl, "minConcurrency", 1);
+        ReflectionTestUtils.setField(admissionControl, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(admissionControl, "retryAfterSeconds", 3L);
+        ReflectionTestUtils.setField(admissionControl, "clientRatePerSecond", 0d);
+        ReflectionTestUtils.setField(admissionControl, "clientBurst", 2);
+        ReflectionTestUtils.setField(admissionControl, "maxClients", 100L);
+        admissionControl.init();
+    }
+
+    @Test
+    public void testConcurrencyLimitIsPerEndpointClass() {
+        ChatAdmissionControl.Permit image = admissionControl.acquire(EndpointClass.IMAGE, "a");
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admissionControl.acquire(EndpointClass.IMAGE, "b"));
+        assertEquals(3, e.getRetryAfterSeconds());
+        // 其他类别不受影响
+        assertDoesNotThrow(() -> admissionControl.acquire(EndpointClass.BLOCKING, "b"));
+
+        image.release();
+        image.release();
+        assertDoesNotThrow(() -> admissionControl.acquire(EndpointClass.IMAGE, "b"));
+        assertEquals(1.0, meterRegistry.counter("chat.admission.rejected", "class", "image", "reason", "concurrency").count());
+    }
+
+    @Test
+    public void testClientRateLimitReturnsRetryAfter() {
+        ReflectionTestUtils.setField(admissionControl, "clientRatePerSecond", 0.5);
+
+        admissionControl.acquire(EndpointClass.EMBEDDING, "a").release();
+        admissionControl.acquire(EndpointClass.EMBEDDING, "a").release();
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admissionControl.acquire(EndpointClass.EMBEDDING, "a"));
+
+        assertEquals(2, e.getRetryAfterSeconds());
+        assertDoesNotThrow(() -> admissionControl.acquire(EndpointClass.EMBEDDING, "b"));
+        assertEquals(1.0, meterRegistry.counter("chat.admission.rejected", "class", "embedding", "reason", "rate").count());
+    }
+
+    @Test
+    public void testLimitShrinksOnSlowUpstreamAndRecovers() {
+        ChatAdmissionControl.AdaptiveLimit limit = new ChatAdmissionControl.AdaptiveLimit(1, 8, 100, 0.5);
+
+        assertTrue(limit.tryAcquire());
+        limit.release();
+        limit.sample(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(4.0, limit.limit());
+        assertTrue(limit.tryAcquire());
+        limit.release();
+        limit.sample(TimeUnit.MILLISECONDS.toNanos(500));
+        limit.tryAcquire();
+        limit.release();
+        limit.sample(TimeUnit.MILLISECONDS.toNanos(500));
+        limit.tryAcquire();
+        limit.release();
+        limit.sample(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1.0, limit.limit());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release();
+            limit.sample(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertEquals(8.0, limit.limit());
+    }
+
+    @Test
+    public void testChatLimitFollowsModelLatencyNotRequestDuration() throws InterruptedException {
+        ReflectionTestUtils.setField(admissionControl, "streamingTargetLatencyMs", 10L);
+        ReflectionTestUtils.setField(admissionControl, "imageTargetLatencyMs", 10L);
+        ReflectionTestUtils.setField(admissionControl, "streamingMaxConcurrency", 8);
+        ReflectionTestUtils.setField(admissionControl, "imageMaxConcurrency", 8);
+        admissionControl.init();
+
+        // 排队和慢客户端写出使请求耗时超过目标，但模型本身很快
+        ChatAdmissionControl.Permit streaming = admissionControl.acquire(EndpointClass.STREAMING, "a");
+        ChatAdmissionControl.Permit image = admissionControl.acquire(EndpointClass.IMAGE, "a");
+        TimeUnit.MILLISECONDS.sleep(30);
+        admissionControl.recordModelLatency(EndpointClass.STREAMING, TimeUnit.MILLISECONDS.toNanos(1));
+        streaming.release();
+        image.release();
+        assertEquals(8.0, limit(EndpointClass.STREAMING));
+        assertEquals(4.0, limit(EndpointClass.IMAGE));
+
+        admissionControl.recordModelLatency(EndpointClass.STREAMING, TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(4.0, limit(EndpointClass.STREAMING));
+        assertEquals(2.0, limit(EndpointClass.BLOCKING));
+    }
+
+    @SuppressWarnings("unchecked")
+    private double limit(EndpointClass endpointClass) {
+        return ((Map<EndpointClass, ChatAdmissionControl.AdaptiveLimit>) ReflectionTestUtils.getField(admissionControl, "limits"))
+                .get(endpointClass).limit();
+    }
+
+    @Test
+    public void testTokenBucketRefills() {
+        ChatAdmissionControl.TokenBucket bucket = new ChatAdmissionControl.TokenBucket(1);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryConsume(1, 1, now));
+        assertTrue(bucket.tryConsume(1, 1, now) > 0);
+        assertEquals(0, bucket.tryConsume(1, 1, now + TimeUnit.SECONDS.toNanos(1)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 闲置对话冷存储测试类
+ * @Author drk
+ * @Date 2026/10/18 15:50
+ * @Version 1.0
+ */
+public class ChatMemoryArchiveTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final ChatSessionService chatSessionService = mock(ChatSessionService.class);
+    private final ChatMemoryCache chatMemoryCache = mock(ChatMemoryCache.class);
+
+    @TempDir
+    Path archiveDir;
+
+    @BeforeEach
+    public void setUp() {
+        when(chatMessageService.listAllOrdered(eq("c1"), anyInt())).thenReturn(List.of(entity(1L, "USER", "你好"), entity(2L, "ASSISTANT", "你好，有什么可以帮你")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testArchiveThenRehydrateRestoresSameMessages() throws Exception {
+        ChatMemoryArchive archive = newArchive(1024 * 1024);
+
+        archive.archive("c1");
+        archive.rehydrate("c1");
+
+        ArgumentCaptor<List<ChatMessageEntity>> restored = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageService).removeArchived(eq("c1"), anyList());
+        verify(chatMessageService).restoreArchived(eq("c1"), restored.capture());
+        assertEquals(List.of(1L, 2L), restored.getValue().stream().map(ChatMessageEntity::getId).toList());
+        assertEquals("你好，有什么可以帮你", restored.getValue().get(1).getContent());
+        assertEquals(1L, meterRegistry.get("chat.memory.archive.rehydrate").timer().count());
+        assertEquals(0.0, meterRegistry.get("chat.memory.tier.conversations").tag("tier", "archive").gauge().value());
+    }
+
+    @Test
+    public void testIndexSurvivesRestartAndSegmentsRoll() throws Exception {
+        when(chatMessageService.listAllOrdered(eq("c2"), anyInt())).thenReturn(List.of(entity(3L, "USER", "第二个对话")));
+        ChatMemoryArchive archive = newArchive(64);
+        archive.archive("c1");
+        archive.archive("c2");
+
+        ChatMemoryArchive reopened = newArchive(64);
+        reopened.rehydrate("c2");
+
+        verify(chatMessageService).restoreArchived(eq("c2"), argThat(list -> list.size() == 1 && "第二个对话".equals(list.get(0).getContent())));
+        assertTrue(archiveDir.resolve("segment-00001.seg").toFile().exists());
+        assertEquals(1.0, meterRegistry.get("chat.memory.tier.conversations").tag("tier", "archive").gauge().value());
+    }
+
+    @Test
+    public void testRehydrateIgnoresConversationNotArchived() throws Exception {
+        ChatMemoryArchive archive = newArchive(1024 * 1024);
+
+        archive.rehydrate("c1");
+
+        verify(chatMessageService, never()).restoreArchived(any(), anyList());
+    }
+
+    @Test
+    public void testDiscardDropsArchivedConversation() throws Exception {
+        ChatMemoryArchive archive = newArchive(1024 * 1024);
+        archive.archive("c1");
+
+        archive.discard("c1");
+        archive.rehydrate("c1");
+
+        verify(chatMessageService, never()).restoreArchived(any(), anyList());
+    }
+
+    private ChatMemoryArchive newArchive(long segmentMaxBytes) throws Exception {
+        meterRegistry.clear();
+        ChatMemoryArchive archive = new ChatMemoryArchive(chatMessageService, chatSessionService, chatMemoryCache, objectMapper, meterRegistry);
+        ReflectionTestUtils.setField(archive, "enabled", true);
+        ReflectionTestUtils.setField(archive, "archivePath", archiveDir.toString());
+        ReflectionTestUtils.setField(archive, "segmentMaxBytes", segmentMaxBytes);
+        archive.init();
+        return archive;
+    }
+
+    private ChatMessageEntity entity(Long id, String type, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId("c1");
+        entity.setMessageType(type);
+        entity.setContent(content);
+        entity.setCreatedAt(LocalDateTime.of(2026, 9, 1, 10, 0));
+        return entity;
+    }
+}
@@ -0,0 +1,94 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 热点对话缓存测试类
+ * @Author drk
+ * @Date 2026/10/18 11:30
+ * @Version 1.0
+ */
+public class ChatMemoryCacheTest {
+
+    private static final Function<ChatMessageEntity, Message> CONVERTER = entity -> new UserMessage(entity.getContent());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private ChatMemoryCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new ChatMemoryCache(meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxConversations", 10L);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 30L);
+        cache.init();
+    }
+
+    @Test
+    public void testSecondReadHitsCache() {
+        cache.get("c1", () -> load(entity(1L, "a")), CONVERTER);
+        List<ChatMemoryCache.CachedMessage> result = cache.get("c1", () -> load(entity(1L, "a")), CONVERTER);
+
+        assertEquals(1, result.size());
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "chatMemory").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void testAppendSkipsRowsAlreadyLoadedAndTrimsToLimit() {
+        ChatMessageEntity first = entity(1L, "a");
+        cache.get("c1", () -> load(first), CONVERTER);
+
+        cache.append("c1", List.of(entity(1L, "a"), entity(2L, "b"), entity(3L, "c")), CONVERTER, 2);
+
+        List<ChatMemoryCache.CachedMessage> result = cache.get("c1", () -> load(), CONVERTER);
+        assertEquals(List.of("b", "c"), result.stream().map(c -> c.message().getText()).toList());
+    }
+
+    @Test
+    public void testAppendIgnoresUncachedConversation() {
+        cache.append("c1", List.of(entity(1L, "a")), CONVERTER, 0);
+
+        cache.get("c1", () -> load(), CONVERTER);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidateForcesReload() {
+        cache.get("c1", () -> load(entity(1L, "a")), CONVERTER);
+
+        cache.invalidate("c1");
+        List<ChatMemoryCache.CachedMessage> result = cache.get("c1", () -> load(), CONVERTER);
+
+        assertTrue(result.isEmpty());
+        assertEquals(2, loads.get());
+    }
+
+    private List<ChatMessageEntity> load(ChatMessageEntity... entities) {
+        loads.incrementAndGet();
+        return List.of(entities);
+    }
+
+    private ChatMessageEntity entity(Long id, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId("c1");
+        entity.setMessageType("USER");
+        entity.setContent(content);
+        return entity;
+    }
+}
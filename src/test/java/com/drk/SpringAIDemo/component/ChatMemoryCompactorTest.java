@@ -0,0 +1,138 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 长对话滚动压缩测试类
+ * @Author drk
+ * @Date 2026/10/19 10:50
+ * @Version 1.0
+ */
+public class ChatMemoryCompactorTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final ChatSessionService chatSessionService = mock(ChatSessionService.class);
+    private final ChatModel chatModel = mock(ChatModel.class);
+    private final ChatMemoryCache chatMemoryCache = mock(ChatMemoryCache.class);
+    private final TokenCountEstimator tokenCountEstimator = mock(TokenCountEstimator.class);
+    private final ChatMemoryCompactor compactor = new ChatMemoryCompactor(chatMessageService, chatSessionService, chatModel,
+            chatMemoryCache, tokenCountEstimator);
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(compactor, "enabled", true);
+        ReflectionTestUtils.setField(compactor, "thresholdMessages", 10);
+        ReflectionTestUtils.setField(compactor, "keepMessages", 4);
+        ReflectionTestUtils.setField(compactor, "maxBatch", 100);
+        ReflectionTestUtils.setField(compactor, "minIntervalMinutes", 10L);
+        ReflectionTestUtils.setField(compactor, "conversationsPerRun", 5);
+        when(chatModel.call(anyString())).thenReturn("用户叫小明");
+        when(tokenCountEstimator.estimate(anyString())).thenReturn(7);
+    }
+
+    @Test
+    public void testCompactReplacesOldestWithSummaryAtSamePosition() {
+        List<ChatMessageEntity> oldest = List.of(entity(1L, "SYSTEM", "此前的摘要", T0),
+                entity(2L, "USER", "我叫小明", T0.plusMinutes(1)),
+                entity(3L, "ASSISTANT", "你好小明", T0.plusMinutes(2)));
+        when(chatMessageService.listOldest("c1", 3)).thenReturn(oldest);
+        when(chatMessageService.replaceWithSummary(eq("c1"), eq(oldest), any())).thenReturn(true);
+
+        assertTrue(compactor.compact("c1", 7));
+
+        ArgumentCaptor<ChatMessageEntity> summary = ArgumentCaptor.forClass(ChatMessageEntity.class);
+        verify(chatMessageService).replaceWithSummary(eq("c1"), eq(oldest), summary.capture());
+        assertEquals(3L, summary.getValue().getId());
+        assertEquals(T0.plusMinutes(2), summary.getValue().getCreatedAt());
+        assertEquals("SYSTEM", summary.getValue().getMessageType());
+        assertEquals(ChatMemoryCompactor.SUMMARY_METADATA, summary.getValue().getMetadata());
+        assertEquals(7, summary.getValue().getTokenCount());
+        assertTrue(summary.getValue().getContent().endsWith("用户叫小明"));
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        verify(chatModel).call(prompt.capture());
+        assertTrue(prompt.getValue().contains("此前摘要：此前的摘要"));
+        assertTrue(prompt.getValue().contains("用户：我叫小明"));
+        verify(chatMemoryCache).invalidate("c1");
+    }
+
+    @Test
+    public void testLostRaceKeepsCache() {
+        List<ChatMessageEntity> oldest = List.of(entity(1L, "USER", "a", T0), entity(2L, "ASSISTANT", "b", T0));
+        when(chatMessageService.listOldest("c1", 2)).thenReturn(oldest);
+        when(chatMessageService.replaceWithSummary(anyString(), anyList(), any())).thenReturn(false);
+
+        assertFalse(compactor.compact("c1", 6));
+
+        verify(chatMemoryCache, never()).invalidate(anyString());
+    }
+
+    @Test
+    public void testSameConversationIsRateLimited() {
+        when(chatMessageService.listOldest(eq("c1"), anyInt())).thenReturn(List.of(entity(1L, "USER", "a", T0), entity(2L, "USER", "b", T0)));
+        when(chatMessageService.replaceWithSummary(anyString(), anyList(), any())).thenReturn(true);
+
+        assertTrue(compactor.compact("c1", 20));
+        assertFalse(compactor.compact("c1", 20));
+
+        verify(chatModel, times(1)).call(anyString());
+    }
+
+    @Test
+    public void testTooFewMessagesAreLeftAlone() {
+        assertFalse(compactor.compact("c1", 5));
+
+        verify(chatMessageService, never()).listOldest(anyString(), anyInt());
+    }
+
+    @Test
+    public void testScanSkipsWhenDisabledAndContinuesAfterFailure() {
+        ReflectionTestUtils.setField(compactor, "enabled", false);
+        compactor.compactLargeConversations();
+        verify(chatSessionService, never()).listLargerThan(anyInt(), anyInt());
+
+        ReflectionTestUtils.setField(compactor, "enabled", true);
+        when(chatSessionService.listLargerThan(10, 5)).thenReturn(List.of(session("c1", 20), session("c2", 20)));
+        when(chatMessageService.listOldest(eq("c1"), anyInt())).thenThrow(new IllegalStateException("db down"));
+        when(chatMessageService.listOldest(eq("c2"), anyInt())).thenReturn(List.of(entity(1L, "USER", "a", T0), entity(2L, "USER", "b", T0)));
+        when(chatMessageService.replaceWithSummary(eq("c2"), anyList(), any())).thenReturn(true);
+
+        compactor.compactLargeConversations();
+
+        verify(chatMemoryCache).invalidate("c2");
+    }
+
+    private ChatMessageEntity entity(Long id, String type, String content, LocalDateTime createdAt) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId("c1");
+        entity.setMessageType(type);
+        entity.setContent(content);
+        entity.setCreatedAt(createdAt);
+        return entity;
+    }
+
+    private ChatSessionEntity session(String sessionId, int messageCount) {
+        ChatSessionEntity session = new ChatSessionEntity();
+        session.setSessionId(sessionId);
+        session.setMessageCount(messageCount);
+        return session;
+    }
+}
@@ -0,0 +1,193 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话记忆异步写缓冲测试类
+ * @Author drk
+ * @Date 2026/10/18 10:40
+ * @Version 1.0
+ */
+public class ChatMemoryWriteBehindBufferTest {
+
+    private final List<ChatMessageEntity> saved = new ArrayList<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+    private ChatMemoryWriteBehindBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        ChatMessageService chatMessageService = mock(ChatMessageService.class);
+        doAnswer(invocation -> {
+            List<ChatMessageEntity> batch = invocation.getArgument(0);
+            // 模拟事务回滚：先分配ID再失败，失败时不写入任何一条
+            batch.forEach(entity -> entity.setId(idSequence.incrementAndGet()));
+            if (databaseDown.get()) {
+                throw new CannotGetJdbcConnectionException("database down");
+            }
+            if (batch.stream().anyMatch(entity -> "bad".equals(entity.getContent()))) {
+                throw new DataIntegrityViolationException("Data too long for column 'content'");
+            }
+            batch.forEach(entity -> entity.setId(idSequence.incrementAndGet()));
+            synchronized (saved) {
+                saved.addAll(batch);
+            }
+            return null;
+        }).when(chatMessageService).saveMessages(anyList());
+        buffer = new ChatMemoryWriteBehindBuffer(chatMessageService);
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "capacity", 100);
+        ReflectionTestUtils.setField(buffer, "batchSize", 50);
+        ReflectionTestUtils.setField(buffer, "flushIntervalMs", 60_000L);
+        buffer.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        buffer.shutdown();
+    }
+
+    @Test
+    public void testReadYourWritesBeforeFlush() {
+        buffer.enqueue(List.of(entity("c1", "hello"), entity("c2", "other")));
+
+        List<ChatMessageEntity> merged = buffer.merge(List.of(), buffer.pendingSnapshot("c1"));
+
+        assertEquals(1, merged.size());
+        assertEquals("hello", merged.get(0).getContent());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    public void testFlushWritesMultiConversationBatchAndClearsPending() {
+        buffer.enqueue(List.of(entity("c1", "a"), entity("c2", "b"), entity("c1", "c")));
+
+        buffer.flush();
+
+        assertEquals(3, saved.size());
+        assertTrue(buffer.pendingSnapshot("c1").isEmpty());
+        assertTrue(buffer.pendingSnapshot("c2").isEmpty());
+    }
+
+    @Test
+    public void testMergeSkipsAlreadyPersistedMessages() {
+        buffer.enqueue(List.of(entity("c1", "a")));
+        List<ChatMessageEntity> snapshot = buffer.pendingSnapshot("c1");
+        buffer.flush();
+
+        List<ChatMessageEntity> merged = buffer.merge(new ArrayList<>(saved), snapshot);
+
+        assertEquals(1, merged.size());
+    }
+
+    @Test
+    public void testDiscardDropsUnflushedMessages() {
+        buffer.enqueue(List.of(entity("c1", "a"), entity("c2", "b")));
+
+        buffer.discard("c1");
+        buffer.flush();
+
+        assertEquals(1, saved.size());
+        assertEquals("c2", saved.get(0).getConversationId());
+    }
+
+    @Test
+    public void testShutdownFlushesRemainingMessages() {
+        buffer.enqueue(List.of(entity("c1", "a")));
+
+        buffer.shutdown();
+
+        assertEquals(1, saved.size());
+    }
+
+    @Test
+    public void testConstraintViolationSplitsBatchAndDropsOnlyBadRows() {
+        buffer.enqueue(List.of(entity("c1", "a"), entity("c1", "bad"), entity("c2", "b")));
+
+        assertDoesNotThrow(() -> buffer.flush());
+
+        assertEquals(List.of("a", "b"), saved.stream().map(ChatMessageEntity::getContent).toList());
+        assertTrue(buffer.pendingSnapshot("c1").isEmpty());
+        assertTrue(buffer.pendingSnapshot("c2").isEmpty());
+
+        // 坏消息已丢弃，不再阻塞后续消息
+        buffer.enqueue(List.of(entity("c1", "c")));
+        buffer.flush();
+        assertEquals(3, saved.size());
+    }
+
+    @Test
+    public void testOutageKeepsEveryMessageUntilDatabaseRecovers() {
+        databaseDown.set(true);
+        buffer.enqueue(List.of(entity("c1", "a"), entity("c1", "b"), entity("c2", "c")));
+
+        for (int i = 0; i < 20; i++) {
+            assertDoesNotThrow(() -> buffer.flush());
+        }
+
+        assertTrue(saved.isEmpty());
+        assertEquals(2, buffer.pendingSnapshot("c1").size());
+        assertEquals(1, buffer.pendingSnapshot("c2").size());
+        assertTrue(buffer.pendingSnapshot("c1").stream().allMatch(entity -> entity.getId() == null));
+
+        databaseDown.set(false);
+        buffer.flush();
+
+        assertEquals(List.of("a", "b", "c"), saved.stream().map(ChatMessageEntity::getContent).toList());
+        assertTrue(buffer.pendingSnapshot("c1").isEmpty());
+    }
+
+    @Test
+    public void testFailedBatchStopsFlushUntilNextRound() {
+        databaseDown.set(true);
+        buffer.enqueue(List.of(entity("c1", "a")));
+
+        buffer.flush();
+        buffer.enqueue(List.of(entity("c1", "b")));
+        databaseDown.set(false);
+        buffer.flush();
+
+        assertEquals(List.of("a", "b"), saved.stream().map(ChatMessageEntity::getContent).toList());
+    }
+
+    @Test
+    public void testEnqueueDoesNotThrowWhenFullAndDatabaseDown() {
+        buffer.shutdown();
+        ReflectionTestUtils.setField(buffer, "capacity", 2);
+        buffer.start();
+        databaseDown.set(true);
+
+        // a、b 在队列中失败后留待重试，c、d 进入队列，e 到来时队列已满且同步落库失败
+        assertDoesNotThrow(() -> buffer.enqueue(List.of(entity("c1", "a"), entity("c1", "b"), entity("c1", "c"),
+                entity("c1", "d"), entity("c1", "e"))));
+
+        assertEquals(4, buffer.pendingSnapshot("c1").size());
+        databaseDown.set(false);
+        buffer.flush();
+        assertEquals(List.of("a", "b", "c", "d"), saved.stream().map(ChatMessageEntity::getContent).toList());
+    }
+
+    private ChatMessageEntity entity(String conversationId, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setConversationId(conversationId);
+        entity.setMessageType("USER");
+        entity.setContent(content);
+        return entity;
+    }
+}
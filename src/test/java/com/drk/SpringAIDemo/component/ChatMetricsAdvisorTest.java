@@ -0,0 +1,168 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话指标采集测试类
+ * @Author drk
+ * @Date 2026/10/18 23:00
+ * @Version 1.0
+ */
+public class ChatMetricsAdvisorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatModel chatModel;
+    private ChatClient chatClient;
+
+    @BeforeEach
+    public void setUp() {
+        ChatMetrics chatMetrics = new ChatMetrics(meterRegistry, new JTokkitTokenCountEstimator());
+        chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                sleep(50);
+                if (prompt.getContents().contains("boom")) {
+                    throw new IllegalStateException("upstream failed");
+                }
+                return response("hello world", new DefaultUsage(12, 30));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                if (prompt.getContents().contains("boom")) {
+                    return Flux.just(response("hello", null))
+                            .concatWith(Flux.error(new IllegalStateException("upstream failed")));
+                }
+                return Flux.just(response("", null), response("hello", null), response(" world", null))
+                        .delayElements(Duration.ofMillis(20));
+            }
+        };
+        chatClient = client(chatMetrics);
+    }
+
+    @Test
+    public void testCallRecordsLatencyTokensAndPhases() {
+        chatClient.prompt("hi").advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask2")).call().content();
+
+        Timer duration = meterRegistry.get("chat.request.duration")
+                .tags("endpoint", "ask2", "model", "stub-model", "rag", "false", "mode", "call", "outcome", "completed").timer();
+        assertEquals(1, duration.count());
+        assertTrue(duration.totalTime(TimeUnit.MILLISECONDS) >= 50);
+        assertTrue(meterRegistry.get("chat.request.phase").tag("phase", "model").timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+        assertEquals(1, meterRegistry.get("chat.request.phase").tag("phase", "memory").timer().count());
+        assertEquals(12.0, meterRegistry.get("chat.tokens.prompt").summary().totalAmount());
+        assertEquals(30.0, meterRegistry.get("chat.tokens.completion").summary().totalAmount());
+        assertTrue(meterRegistry.get("chat.tokens.rate").summary().totalAmount() > 0);
+    }
+
+    @Test
+    public void testStreamRecordsTimeToFirstTokenAndEstimatesTokens() {
+        List<String> chunks = chatClient.prompt("hi").advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "chatMemory"))
+                .stream().content().collectList().block(Duration.ofSeconds(5));
+        assertEquals("hello world", String.join("", chunks));
+
+        Timer ttft = meterRegistry.get("chat.request.ttft").tags("endpoint", "chatMemory", "mode", "stream").timer();
+        Timer duration = meterRegistry.get("chat.request.duration").tags("endpoint", "chatMemory", "mode", "stream").timer();
+        assertEquals(1, ttft.count());
+        // 第一个响应内容为空，首 token 在第二个响应
+        assertTrue(ttft.totalTime(TimeUnit.MILLISECONDS) >= 40);
+        assertTrue(duration.totalTime(TimeUnit.MILLISECONDS) > ttft.totalTime(TimeUnit.MILLISECONDS));
+        assertTrue(meterRegistry.get("chat.tokens.completion").tags("mode", "stream").summary().totalAmount() > 0);
+    }
+
+    @Test
+    public void testCancelledStreamIsRecordedWithOutcome() {
+        List<String> chunks = chatClient.prompt("hi").advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "chatMemory"))
+                .stream().content().take(1).collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("hello"), chunks);
+
+        Timer duration = meterRegistry.get("chat.request.duration").tags("endpoint", "chatMemory", "outcome", "cancelled").timer();
+        assertEquals(1, duration.count());
+        assertEquals(1, meterRegistry.get("chat.request.ttft").tag("outcome", "cancelled").timer().count());
+        assertTrue(meterRegistry.get("chat.tokens.completion").tag("outcome", "cancelled").summary().totalAmount() > 0);
+        assertNull(meterRegistry.find("chat.request.duration").tag("outcome", "completed").timer());
+    }
+
+    @Test
+    public void testFailedRequestsAreRecordedWithOutcome() {
+        assertThrows(IllegalStateException.class, () -> chatClient.prompt("boom")
+                .advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask2")).call().content());
+        assertThrows(IllegalStateException.class, () -> chatClient.prompt("boom")
+                .advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "chatMemory")).stream().content().blockLast(Duration.ofSeconds(5)));
+
+        assertEquals(1, meterRegistry.get("chat.request.duration").tags("endpoint", "ask2", "mode", "call", "outcome", "error").timer().count());
+        Timer stream = meterRegistry.get("chat.request.duration").tags("endpoint", "chatMemory", "mode", "stream", "outcome", "error").timer();
+        assertEquals(1, stream.count());
+        assertTrue(meterRegistry.get("chat.request.phase").tags("mode", "call", "phase", "model").timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    public void testModelLatencyFeedsAdmissionClassOfRequest() {
+        ChatAdmissionControl admissionControl = mock(ChatAdmissionControl.class);
+        ChatMetrics chatMetrics = new ChatMetrics(meterRegistry, new JTokkitTokenCountEstimator(), admissionControl);
+        ChatClient client = client(chatMetrics);
+
+        // 响应式接口流式调用模型，但按阻塞类别准入
+        client.prompt("hi").advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "ask2")
+                        .param(ChatMetricsAdvisor.ADMISSION_CLASS, ChatAdmissionControl.EndpointClass.BLOCKING))
+                .stream().content().blockLast(Duration.ofSeconds(5));
+        verify(admissionControl).recordModelLatency(eq(ChatAdmissionControl.EndpointClass.BLOCKING), anyLong());
+        verify(admissionControl, never()).recordModelLatency(eq(ChatAdmissionControl.EndpointClass.STREAMING), anyLong());
+
+        client.prompt("hi").advisors(a -> a.param(ChatMetricsAdvisor.ENDPOINT, "chatMemory"))
+                .stream().content().blockLast(Duration.ofSeconds(5));
+        verify(admissionControl).recordModelLatency(eq(ChatAdmissionControl.EndpointClass.STREAMING), anyLong());
+    }
+
+    @Test
+    public void testUntaggedEndpointIsUnknown() {
+        chatClient.prompt("hi").call().content();
+
+        assertEquals(1, meterRegistry.get("chat.request.duration").tag("endpoint", ChatMetrics.UNKNOWN).timer().count());
+    }
+
+    private ChatClient client(ChatMetrics chatMetrics) {
+        return ChatClient.builder(chatModel)
+                .defaultAdvisors(new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.REQUEST),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.RETRIEVAL),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.MODEL))
+                .build();
+    }
+
+    private static ChatResponse response(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model("stub-model");
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 相同请求合并调用测试类
+ * @Author drk
+ * @Date 2026/10/18 20:10
+ * @Version 1.0
+ */
+public class ChatSingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatSingleFlight singleFlight;
+
+    @BeforeEach
+    public void setUp() {
+        singleFlight = new ChatSingleFlight(meterRegistry);
+        ReflectionTestUtils.setField(singleFlight, "enabled", true);
+    }
+
+    @Test
+    public void testConcurrentIdenticalRequestsShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                // 空白不同的提示词视为同一请求
+                String prompt = i % 2 == 0 ? "hello  world" : " hello world ";
+                results.add(executor.submit(() -> singleFlight.execute("ask2", prompt, null, () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "reply";
+                })));
+            }
+            waitUntil(() -> meterRegistry.counter("chat.singleflight.coalesced", "endpoint", "ask2").count() == 3);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("reply", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(4.0, meterRegistry.counter("chat.singleflight.requests", "endpoint", "ask2").count());
+        assertEquals(0.0, meterRegistry.get("chat.singleflight.inflight").gauge().value());
+    }
+
+    @Test
+    public void testDifferentEndpointOrOptionsAreNotShared() {
+        assertNotEquals(ChatSingleFlight.key("ask", "hi", null), ChatSingleFlight.key("ask2", "hi", null));
+        assertNotEquals(ChatSingleFlight.key("films", "hi", "A"), ChatSingleFlight.key("films", "hi", "B"));
+        assertEquals(ChatSingleFlight.key("ask", "a\n b", null), ChatSingleFlight.key("ask", "a b", null));
+    }
+
+    @Test
+    public void testSequentialRequestsAreNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("ask2", "hi", null, calls::incrementAndGet);
+        singleFlight.execute("ask2", "hi", null, calls::incrementAndGet);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFailureIsPropagatedAndEntryRemoved() {
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("ask2", "hi", null, () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals("ok", singleFlight.execute("ask2", "hi", null, () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话上下文并行预取测试类
+ * @Author drk
+ * @Date 2026/10/18 23:40
+ * @Version 1.0
+ */
+public class ConversationContextPrefetchTest {
+
+    private static final long DELAY_MS = 150;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicReference<Prompt> lastPrompt = new AtomicReference<>();
+    private VectorStore vectorStore;
+    private MessageWindowChatMemory memory;
+    private ChatMemory chatMemory;
+    private ConversationContextPrefetch prefetch;
+    private ChatClient chatClient;
+
+    @BeforeEach
+    public void setUp() {
+        vectorStore = mock(VectorStore.class);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenAnswer(invocation -> {
+            sleep(DELAY_MS);
+            return List.of(new Document("北京是中国的首都"));
+        });
+        memory = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository()).build();
+        memory.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你？")));
+        // 读取历史时模拟数据库耗时
+        chatMemory = new ChatMemory() {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                memory.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                sleep(DELAY_MS);
+                return memory.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                memory.clear(conversationId);
+            }
+        };
+        prefetch = new ConversationContextPrefetch(vectorStore, meterRegistry, new BlockingCallScheduler(false));
+        ReflectionTestUtils.setField(prefetch, "enabled", true);
+
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                lastPrompt.set(prompt);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("北京"))));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                lastPrompt.set(prompt);
+                return Flux.just("北", "京").map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+            }
+        };
+        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore).order(5).build();
+        chatClient = ChatClient.builder(stub).defaultAdvisors(ConversationContextPrefetch.unlessPrefetched(qaAdvisor)).build();
+    }
+
+    @Test
+    public void testCallFetchesHistoryAndDocumentsConcurrently() {
+        long start = System.nanoTime();
+        String reply = chatClient.prompt().user("中国的首都是哪里")
+                .advisors(prefetch.advisors(chatMemory, "c1", 1))
+                .call().content();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("北京", reply);
+        assertTrue(elapsedMs < DELAY_MS * 2, "历史读取和检索应并行，耗时 " + elapsedMs + " ms");
+        // 默认的 qaAdvisor 不再重复检索
+        verify(vectorStore, times(1)).similaritySearch(any(SearchRequest.class));
+
+        List<Message> instructions = lastPrompt.get().getInstructions();
+        assertEquals(3, instructions.size());
+        assertEquals("你好", instructions.get(0).getText());
+        String userText = lastPrompt.get().getUserMessage().getText();
+        assertTrue(userText.contains("北京是中国的首都"));
+        assertTrue(userText.contains("中国的首都是哪里"));
+
+        List<Message> saved = memory.get("c1");
+        assertEquals(4, saved.size());
+        assertEquals("中国的首都是哪里", saved.get(2).getText());
+        assertEquals("北京", saved.get(3).getText());
+        assertTrue(meterRegistry.get("chat.context.prefetch.saved").timer().totalTime(TimeUnit.MILLISECONDS) > DELAY_MS / 2.0);
+    }
+
+    @Test
+    public void testRequestPhasesUsePrefetchDurations() {
+        ChatMetrics chatMetrics = new ChatMetrics(meterRegistry, new JTokkitTokenCountEstimator());
+        chatClient.prompt().user("中国的首都是哪里")
+                .advisors(prefetch.advisors(chatMemory, "c1", 1))
+                .advisors(new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.REQUEST),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.RETRIEVAL),
+                        new ChatMetricsAdvisor(chatMetrics, ChatMetricsAdvisor.Phase.MODEL))
+                .call().content();
+
+        double memoryMs = meterRegistry.get("chat.request.phase").tag("phase", "memory").timer().totalTime(TimeUnit.MILLISECONDS);
+        double retrievalMs = meterRegistry.get("chat.request.phase").tag("phase", "retrieval").timer().totalTime(TimeUnit.MILLISECONDS);
+        assertTrue(memoryMs >= DELAY_MS && memoryMs < DELAY_MS * 1.8, "记忆阶段不应包含检索: " + memoryMs);
+        assertTrue(retrievalMs >= DELAY_MS, "检索阶段应为检索耗时: " + retrievalMs);
+    }
+
+    @Test
+    public void testStreamSavesAggregatedReply() {
+        List<String> chunks = chatClient.prompt().user("中国的首都是哪里")
+                .advisors(prefetch.advisors(chatMemory, "c1", 1))
+                .stream().content().collectList().block(Duration.ofSeconds(5));
+
+        assertEquals("北京", String.join("", chunks));
+        verify(vectorStore, times(1)).similaritySearch(any(SearchRequest.class));
+        assertTrue(lastPrompt.get().getUserMessage().getText().contains("北京是中国的首都"));
+        List<Message> saved = memory.get("c1");
+        assertEquals("北京", saved.get(saved.size() - 1).getText());
+    }
+
+    @Test
+    public void testDisabledFallsBackToSequentialAdvisors() {
+        ReflectionTestUtils.setField(prefetch, "enabled", false);
+
+        chatClient.prompt().user("中国的首都是哪里")
+                .advisors(prefetch.advisors(chatMemory, "c1", 1))
+                .call().content();
+
+        verify(vectorStore, times(1)).similaritySearch(any(SearchRequest.class));
+        assertEquals(3, lastPrompt.get().getInstructions().size());
+        assertTrue(lastPrompt.get().getUserMessage().getText().contains("北京是中国的首都"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.exception.ConversationBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对话轮次串行执行测试类
+ * @Author drk
+ * @Date 2026/10/18 21:10
+ * @Version 1.0
+ */
+public class ConversationTurnSequencerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ConversationTurnSequencer sequencer;
+
+    @BeforeEach
+    public void setUp() {
+        sequencer = new ConversationTurnSequencer(meterRegistry);
+        ReflectionTestUtils.setField(sequencer, "enabled", true);
+        ReflectionTestUtils.setField(sequencer, "maxQueued", 1);
+    }
+
+    @Test
+    public void testTurnsOfSameConversationRunInOrder() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        sequencer.sequence("c1", first.asFlux()).subscribe(received::add);
+        sequencer.sequence("c1", Flux.defer(() -> {
+            secondStarted.set(true);
+            return Flux.just("second");
+        })).subscribe(received::add);
+
+        first.tryEmitNext("first");
+        assertFalse(secondStarted.get());
+        first.tryEmitComplete();
+
+        assertTrue(secondStarted.get());
+        assertEquals(List.of("first", "second"), received);
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testDifferentConversationsRunInParallel() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicBoolean otherStarted = new AtomicBoolean();
+
+        sequencer.sequence("c1", first.asFlux()).subscribe();
+        sequencer.sequence("c2", Flux.defer(() -> {
+            otherStarted.set(true);
+            return Flux.empty();
+        })).subscribe();
+
+        assertTrue(otherStarted.get());
+        first.tryEmitComplete();
+    }
+
+    @Test
+    public void testFullQueueIsRejected() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        sequencer.sequence("c1", first.asFlux()).subscribe();
+        sequencer.sequence("c1", Flux.<String>empty()).subscribe();
+
+        assertThrows(ConversationBusyException.class, () -> sequencer.sequence("c1", Flux.<String>empty()));
+        assertEquals(1.0, meterRegistry.counter("chat.conversation.turns.rejected").count());
+
+        first.tryEmitComplete();
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testUnsubscribedTurnHoldsNoSlot() {
+        // 组装后从未订阅的流（例如被可续传流登记表丢弃）不能占着名额
+        for (int i = 0; i < 5; i++) {
+            sequencer.sequence("c1", Flux.just("abandoned"));
+        }
+        assertEquals(0, sequencer.activeConversations());
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        sequencer.sequence("c1", Flux.just("next")).subscribe(received::add);
+        assertEquals(List.of("next"), received);
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testSubscriptionToFullQueueIsRejected() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        // 三个流都在队列未满时组装，订阅时才发现已满
+        Flux<String> running = sequencer.sequence("c1", first.asFlux());
+        Flux<String> queued = sequencer.sequence("c1", Flux.<String>empty());
+        AtomicBoolean lateStarted = new AtomicBoolean();
+        Flux<String> late = sequencer.sequence("c1", Flux.defer(() -> {
+            lateStarted.set(true);
+            return Flux.empty();
+        }));
+        running.subscribe();
+        queued.subscribe();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        late.subscribe(v -> { }, errors::add);
+
+        assertEquals(1, errors.size());
+        assertInstanceOf(ConversationBusyException.class, errors.get(0));
+        assertFalse(lateStarted.get());
+        assertEquals(1.0, meterRegistry.counter("chat.conversation.turns.rejected").count());
+
+        first.tryEmitComplete();
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testCancelledWaiterReleasesSlot() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicBoolean cancelledStarted = new AtomicBoolean();
+        sequencer.sequence("c1", first.asFlux()).subscribe();
+        Disposable waiting = sequencer.sequence("c1", Flux.defer(() -> {
+            cancelledStarted.set(true);
+            return Flux.empty();
+        })).subscribe();
+
+        waiting.dispose();
+        // 名额已释放，可以再排一个
+        assertDoesNotThrow(() -> sequencer.sequence("c1", Flux.<String>empty()).subscribe());
+
+        first.tryEmitComplete();
+        assertFalse(cancelledStarted.get());
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testHeldWorkDelaysNextTurn() {
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Empty<Void> save = Sinks.empty();
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        Disposable running = sequencer.sequence("c1", Flux.deferContextual(context -> first.asFlux()
+                .doOnCancel(() -> ConversationTurnSequencer.holdTurnUntil(context, save.asMono())))).subscribe();
+        sequencer.sequence("c1", Flux.defer(() -> {
+            secondStarted.set(true);
+            return Flux.empty();
+        })).subscribe();
+
+        running.dispose();
+        // 取消后的写入未完成，下一轮不能读取历史
+        assertFalse(secondStarted.get());
+
+        save.tryEmitEmpty();
+        assertTrue(secondStarted.get());
+        assertEquals(0, sequencer.activeConversations());
+    }
+
+    @Test
+    public void testHeldWorkOutsideSequencerRunsImmediately() {
+        AtomicBoolean ran = new AtomicBoolean();
+
+        ConversationTurnSequencer.holdTurnUntil(Context.empty(), Mono.fromRunnable(() -> ran.set(true)));
+
+        assertTrue(ran.get());
+    }
+
+    @Test
+    public void testErrorReleasesTurn() {
+        List<String> received = new CopyOnWriteArrayList<>();
+        sequencer.sequence("c1", Flux.<String>error(new IllegalStateException("boom"))).subscribe(v -> { }, e -> received.add("error"));
+        sequencer.sequence("c1", Flux.just("next")).subscribe(received::add);
+
+        assertEquals(List.of("error", "next"), received);
+        assertEquals(0, sequencer.activeConversations());
+    }
+}
@@ -0,0 +1,160 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 生成取消处理测试类
+ * @Author drk
+ * @Date 2026/10/18 23:55
+ * @Version 1.0
+ */
+public class GenerationCancellationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicBoolean upstreamCancelled = new AtomicBoolean();
+    private MessageWindowChatMemory chatMemory;
+    private GenerationCancellation cancellation;
+    private ChatClient chatClient;
+
+    @BeforeEach
+    public void setUp() {
+        chatMemory = MessageWindowChatMemory.builder().chatMemoryRepository(new InMemoryChatMemoryRepository()).build();
+        cancellation = new GenerationCancellation(meterRegistry, new JTokkitTokenCountEstimator(), new BlockingCallScheduler(false));
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("hello world");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just("hello", " world", " and", " more", " words")
+                        .delayElements(Duration.ofMillis(10))
+                        .map(GenerationCancellationTest::response)
+                        .doOnCancel(() -> upstreamCancelled.set(true));
+            }
+        };
+        chatClient = ChatClient.builder(stub).build();
+    }
+
+    @Test
+    public void testCancelledStreamSavesTruncatedReply() {
+        List<String> chunks = chatClient.prompt("hi").advisors(cancellation.advisor(chatMemory, "c1", 2))
+                .stream().content().take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("hello", " world"), chunks);
+        assertTrue(upstreamCancelled.get());
+        List<Message> saved = awaitSaved("c1");
+        assertEquals(1, saved.size());
+        assertEquals("hello world", saved.get(0).getText());
+        assertEquals(true, saved.get(0).getMetadata().get(GenerationCancellation.TRUNCATED));
+        assertEquals(1.0, meterRegistry.get("chat.generation.cancelled").counter().count());
+    }
+
+    @Test
+    public void testNextTurnReadsTruncatedReply() {
+        ConversationTurnSequencer sequencer = new ConversationTurnSequencer(meterRegistry);
+        ReflectionTestUtils.setField(sequencer, "enabled", true);
+        ReflectionTestUtils.setField(sequencer, "maxQueued", 1);
+        MessageWindowChatMemory delegate = chatMemory;
+        ChatMemory slowMemory = new ChatMemory() {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                // 写入慢于下一轮的到达
+                sleep(200);
+                delegate.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                return delegate.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                delegate.clear(conversationId);
+            }
+        };
+
+        Disposable first = sequencer.sequence("c1", chatClient.prompt("hi")
+                        .advisors(cancellation.advisor(slowMemory, "c1", 2)).stream().content())
+                .subscribe();
+        sleep(30);
+        first.dispose();
+        List<Message> history = sequencer.sequence("c1", Flux.defer(() -> Flux.fromIterable(slowMemory.get("c1"))))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1, history.size());
+        assertEquals(true, history.get(0).getMetadata().get(GenerationCancellation.TRUNCATED));
+    }
+
+    @Test
+    public void testTruncatedReplyDoesNotTakeIdempotencyKey() {
+        InMySqlChatMemory keyed = mock(InMySqlChatMemory.class);
+        IdempotentChatMemory idempotent = new IdempotentChatMemory(chatMemory, keyed, "r1");
+
+        chatClient.prompt("hi").advisors(cancellation.advisor(idempotent, "c1", 2))
+                .stream().content().take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals("hello world", awaitSaved("c1").get(0).getText());
+        verify(keyed, never()).add(anyString(), anyList(), anyString());
+    }
+
+    @Test
+    public void testTokensSavedUseAverageOfCompletedReplies() {
+        chatClient.prompt("hi").advisors(cancellation.advisor(chatMemory, "c1", 2))
+                .stream().content().collectList().block(Duration.ofSeconds(5));
+        assertTrue(chatMemory.get("c1").isEmpty(), "正常结束的回复由记忆 Advisor 保存");
+
+        chatClient.prompt("hi").advisors(cancellation.advisor(chatMemory, "c1", 2))
+                .stream().content().take(1).collectList().block(Duration.ofSeconds(5));
+
+        double saved = meterRegistry.get("chat.generation.tokens.saved").summary().totalAmount();
+        assertTrue(saved > 0 && saved < 5, "节省的 token 数应为平均长度减去已生成长度: " + saved);
+    }
+
+    private List<Message> awaitSaved(String conversationId) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (chatMemory.get(conversationId).isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        return chatMemory.get(conversationId);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+        private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,143 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import com.drk.SpringAIDemo.utils.MessageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MySQL 对话记忆导出导入测试类
+ * @Author drk
+ * @Date 2026/10/18 16:30
+ * @Version 1.0
+ */
+public class InMySqlChatMemoryTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final ChatMemoryCache chatMemoryCache = mock(ChatMemoryCache.class);
+    private final TokenCountEstimator tokenCountEstimator = mock(TokenCountEstimator.class);
+    private final InMySqlChatMemory chatMemory = new InMySqlChatMemory(chatMessageService, mock(ChatSessionService.class), objectMapper,
+            mock(ChatMemoryWriteBehindBuffer.class), chatMemoryCache, tokenCountEstimator, mock(ChatMemoryArchive.class),
+            new MessageCodec(objectMapper, "json"));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExportedNdjsonImportsBackUnchanged() throws Exception {
+        List<ChatMessageEntity> rows = List.of(entity(1L, "USER", "你好"), entity(2L, "ASSISTANT", "第一行\n第二行"));
+        doAnswer(invocation -> {
+            rows.forEach(invocation.<Consumer<ChatMessageEntity>>getArgument(3));
+            return null;
+        }).when(chatMessageService).exportMessages(eq("c1"), isNull(), isNull(), any());
+        when(chatMessageService.importMessages(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chatMemory.exportMessages("c1", null, null, out);
+        String ndjson = out.toString(StandardCharsets.UTF_8);
+        int imported = chatMemory.importMessages(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, ndjson.lines().count());
+        assertEquals(2, imported);
+        ArgumentCaptor<List<ChatMessageEntity>> batch = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageService).importMessages(batch.capture());
+        assertEquals(rows, batch.getValue());
+        verify(chatMemoryCache).invalidate("c1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportFillsMissingTokenCount() throws Exception {
+        when(chatMessageService.importMessages(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(tokenCountEstimator.estimate("hi")).thenReturn(1);
+
+        String ndjson = "{\"conversationId\":\"c1\",\"messageType\":\"USER\",\"content\":\"hi\"}\n";
+        chatMemory.importMessages(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        ArgumentCaptor<List<ChatMessageEntity>> batch = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageService).importMessages(batch.capture());
+        assertNull(batch.getValue().get(0).getId());
+        assertEquals(1, batch.getValue().get(0).getTokenCount());
+    }
+
+    @Test
+    public void testImportRejectsInvalidLineWithLineNumber() {
+        String ndjson = "{\"conversationId\":\"c1\",\"messageType\":\"USER\",\"content\":\"hi\"}\n\n{\"conversationId\":\"c1\"}\n";
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> chatMemory.importMessages(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8))));
+
+        assertTrue(error.getMessage().contains("第 3 行"));
+        verify(chatMessageService, never()).importMessages(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetryWithSameRequestIdSkipsStoredMessages() {
+        ChatMessageEntity stored = entity(1L, "USER", "你好");
+        stored.setMessageKey("req-1:USER:0");
+        when(chatMessageService.listByMessageKeys(anyList())).thenReturn(List.of(stored));
+
+        chatMemory.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好！")), "req-1");
+
+        ArgumentCaptor<List<ChatMessageEntity>> saved = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageService).saveMessages(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals("req-1:ASSISTANT:0", saved.getValue().get(0).getMessageKey());
+    }
+
+    @Test
+    public void testRetryIsNoOpWhenAllMessagesStored() {
+        ChatMessageEntity stored = entity(1L, "USER", "你好");
+        stored.setMessageKey("req-1:USER:0");
+        when(chatMessageService.listByMessageKeys(anyList())).thenReturn(List.of(stored));
+
+        chatMemory.add("c1", List.of(new UserMessage("你好")), "req-1");
+
+        verify(chatMessageService, never()).saveMessages(anyList());
+        verify(chatMemoryCache, never()).append(any(), anyList(), any(), anyInt());
+    }
+
+    @Test
+    public void testFindReplyReturnsStoredAssistantMessage() {
+        ChatMessageEntity reply = entity(2L, "ASSISTANT", "已生成的回复");
+        reply.setMessageKey("req-1:ASSISTANT:0");
+        when(chatMessageService.listByMessageKeys(argThat(probe -> probe.size() == 1
+                && "req-1:ASSISTANT:0".equals(probe.get(0).getMessageKey())))).thenReturn(List.of(reply));
+
+        assertEquals("已生成的回复", chatMemory.findReply("c1", "req-1").orElseThrow());
+        assertTrue(chatMemory.findReply("c1", "req-2").isEmpty());
+    }
+
+    private ChatMessageEntity entity(Long id, String type, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId("c1");
+        entity.setMessageType(type);
+        entity.setContent(content);
+        entity.setMetadata("{\"messageType\": \"" + type + "\"}");
+        entity.setTokenCount(3);
+        entity.setCreatedAt(LocalDateTime.of(2026, 10, 1, 9, 30));
+        return entity;
+    }
+}
@@ -0,0 +1,168 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 工具并行执行与结果缓存测试类
+ * @Author drk
+ * @Date 2026/10/19 01:15
+ * @Version 1.0
+ */
+public class ParallelToolCallingManagerTest {
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    private static final AtomicInteger MAX_ACTIVE = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ParallelToolCallingManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        manager = new ParallelToolCallingManager(name -> null, DefaultToolExecutionExceptionProcessor.builder().build(),
+                new StaticListableBeanFactory().getBeanProvider(ObservationRegistry.class),
+                new BlockingCallScheduler(false), meterRegistry);
+        ReflectionTestUtils.setField(manager, "parallel", true);
+        ReflectionTestUtils.setField(manager, "maxConcurrency", 4);
+        ReflectionTestUtils.setField(manager, "ttlPolicies", List.of("maps_geo=1m"));
+        ReflectionTestUtils.setField(manager, "maxEntries", 100L);
+        manager.init();
+        MAX_ACTIVE.set(0);
+    }
+
+    @Test
+    public void testToolCallsOfOneTurnRunConcurrently() {
+        SlowTool a = new SlowTool("a", 300);
+        SlowTool b = new SlowTool("b", 300);
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(a, b), toolCalls(call("1", "a", "{}"), call("2", "b", "{}")));
+
+        assertEquals(2, MAX_ACTIVE.get(), "两个工具应同时执行");
+        List<ToolResponseMessage.ToolResponse> responses = responses(result);
+        assertEquals(List.of("1", "2"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        assertEquals(List.of("a:{}", "b:{}"), responses.stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+        assertEquals(1, meterRegistry.get("chat.tool.batch").tag("parallel", "true").timer().count());
+    }
+
+    @Test
+    public void testDeterministicToolResultReusedAcrossTurns() {
+        SlowTool geo = new SlowTool("spring_ai_mcp_client_amap_maps_geo", 0);
+
+        manager.executeToolCalls(prompt(geo), toolCalls(call("1", geo.name, "{\"address\":\"北京\"}")));
+        ToolExecutionResult second = manager.executeToolCalls(prompt(geo), toolCalls(call("2", geo.name, "{\"address\":\"北京\"}")));
+        manager.executeToolCalls(prompt(geo), toolCalls(call("3", geo.name, "{\"address\":\"上海\"}")));
+
+        assertEquals(2, geo.calls.get());
+        assertEquals(geo.name + ":{\"address\":\"北京\"}", responses(second).get(0).responseData());
+        assertEquals(1.0, meterRegistry.get("chat.tool.cache").tag("tool", geo.name).tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("chat.tool.cache").tag("tool", geo.name).tag("result", "miss").counter().count());
+    }
+
+    @Test
+    public void testToolWithoutTtlAlwaysExecuted() {
+        SlowTool alarm = new SlowTool("setAlarm", 0);
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(alarm),
+                toolCalls(call("1", "setAlarm", "{}"), call("2", "setAlarm", "{}")));
+
+        assertEquals(2, alarm.calls.get());
+        assertEquals(2, responses(result).size());
+        assertTrue(meterRegistry.find("chat.tool.cache").counters().isEmpty());
+    }
+
+    @Test
+    public void testToolExceptionHandledAsBefore() {
+        SlowTool ok = new SlowTool("ok", 0);
+        SlowTool broken = new SlowTool("broken", 0);
+        broken.fail = true;
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(ok, broken),
+                toolCalls(call("1", "ok", "{}"), call("2", "broken", "{}")));
+
+        assertEquals("ok:{}", responses(result).get(0).responseData());
+        assertEquals("工具不可用", responses(result).get(1).responseData());
+    }
+
+    private static Prompt prompt(ToolCallback... tools) {
+        return new Prompt(List.of(new UserMessage("hi")), ToolCallingChatOptions.builder().toolCallbacks(tools).build());
+    }
+
+    private static AssistantMessage.ToolCall call(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    private static ChatResponse toolCalls(AssistantMessage.ToolCall... calls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(calls)))));
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> responses(ToolExecutionResult result) {
+        List<?> history = result.conversationHistory();
+        return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+    }
+
+    private static final class SlowTool implements ToolCallback {
+
+        private final String name;
+        private final long delayMs;
+        private final ToolDefinition definition;
+        private final AtomicInteger calls = new AtomicInteger();
+        private boolean fail;
+
+        private SlowTool(String name, long delayMs) {
+            this.name = name;
+            this.delayMs = delayMs;
+            this.definition = DefaultToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            calls.incrementAndGet();
+            if (fail) {
+                throw new ToolExecutionException(definition, new IllegalStateException("工具不可用"));
+            }
+            MAX_ACTIVE.accumulateAndGet(ACTIVE.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ACTIVE.decrementAndGet();
+            }
+            return name + ":" + toolInput;
+        }
+    }
+}
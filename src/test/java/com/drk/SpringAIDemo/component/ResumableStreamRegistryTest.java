@@ -0,0 +1,199 @@
+package com.drk.SpringAIDemo.component;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 可续传 SSE 流测试类
+ * @Author drk
+ * @Date 2026/10/18 19:40
+ * @Version 1.0
+ */
+public class ResumableStreamRegistryTest {
+
+    private ResumableStreamRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new ResumableStreamRegistry();
+        ReflectionTestUtils.setField(registry, "enabled", true);
+        ReflectionTestUtils.setField(registry, "maxFrames", 3);
+        ReflectionTestUtils.setField(registry, "ttlSeconds", 0L);
+        ReflectionTestUtils.setField(registry, "maxStreams", 10);
+        ReflectionTestUtils.setField(registry, "disconnectGraceMs", 10000L);
+    }
+
+    @Test
+    public void testFramesCarrySequentialIds() {
+        List<ServerSentEvent<String>> events = registry.start(Flux.just("a", "b", "[DONE]")).collectList().block();
+
+        assertEquals(List.of("a", "b", "[DONE]"), events.stream().map(ServerSentEvent::data).toList());
+        String streamId = events.get(0).id().substring(0, events.get(0).id().lastIndexOf(':'));
+        assertEquals(List.of(streamId + ":1", streamId + ":2", streamId + ":3"), events.stream().map(ServerSentEvent::id).toList());
+    }
+
+    @Test
+    public void testResumeReplaysFramesAfterLastEventIdWithoutResubscribing() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Flux<String> frames = Flux.just("a", "b", "[DONE]").doOnSubscribe(s -> subscriptions.incrementAndGet());
+        List<ServerSentEvent<String>> events = registry.start(frames).collectList().block();
+
+        List<ServerSentEvent<String>> resumed = registry.resume(events.get(0).id()).collectList().block();
+
+        assertEquals(List.of("b", "[DONE]"), resumed.stream().map(ServerSentEvent::data).toList());
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    public void testUnknownOrMalformedIdReturnsNull() {
+        assertNull(registry.resume(null));
+        assertNull(registry.resume("no-sequence"));
+        assertNull(registry.resume("unknown:1"));
+        assertNull(registry.resume("unknown:x"));
+    }
+
+    @Test
+    public void testResumeBeyondBufferReturnsExpired() {
+        List<ServerSentEvent<String>> events = registry.start(Flux.just("a", "b", "c", "d", "[DONE]").delayElements(Duration.ofMillis(1)))
+                .collectList().block(Duration.ofSeconds(5));
+        assertEquals(5, events.size());
+
+        // 缓冲只保留最后 3 帧，序号 1 之后的第 2 帧已被淘汰
+        List<ServerSentEvent<String>> resumed = registry.resume(events.get(0).id()).collectList().block();
+
+        assertEquals(List.of(ResumableStreamRegistry.EXPIRED_DATA), resumed.stream().map(ServerSentEvent::data).toList());
+    }
+
+    @Test
+    public void testFinishedStreamsAreEvicted() throws InterruptedException {
+        List<ServerSentEvent<String>> events = registry.start(Flux.just("a", "[DONE]")).collectList().block();
+        Thread.sleep(5);
+
+        registry.evictFinished();
+
+        assertEquals(0, registry.size());
+        assertNull(registry.resume(events.get(0).id()));
+    }
+
+    @Test
+    public void testAbandonedStreamIsCancelledAfterGracePeriod() throws InterruptedException {
+        ReflectionTestUtils.setField(registry, "disconnectGraceMs", 50L);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> frames = Flux.interval(Duration.ofMillis(10)).map(String::valueOf).doOnCancel(() -> cancelled.set(true));
+
+        registry.start(frames).take(2).collectList().block(Duration.ofSeconds(5));
+        Thread.sleep(200);
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void testSlowClientEndsWithErrorWhileGenerationContinues() throws InterruptedException {
+        ReflectionTestUtils.setField(registry, "maxFrames", 5);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger produced = new AtomicInteger();
+        Flux<String> frames = Flux.range(1, 20).delayElements(Duration.ofMillis(1)).map(String::valueOf)
+                .doOnNext(frame -> produced.incrementAndGet())
+                .doOnCancel(() -> cancelled.set(true));
+
+        // 先只读取 1 帧，积压超过 max-frames 后再继续读取
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicInteger received = new AtomicInteger();
+        BaseSubscriber<ServerSentEvent<String>> client = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(ServerSentEvent<String> event) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            protected void hookOnError(Throwable throwable) {
+                error.set(throwable);
+            }
+        };
+        registry.start(frames).subscribe(client);
+        Thread.sleep(300);
+        client.request(Long.MAX_VALUE);
+        Thread.sleep(100);
+
+        assertNotNull(error.get(), "积压超过 max-frames 后连接应以错误结束");
+        assertEquals(6, received.get(), "只写出已缓冲的帧");
+        assertEquals(20, produced.get(), "生成按模型速度进行，不受慢客户端限制");
+        assertFalse(cancelled.get());
+    }
+
+    @Test
+    public void testSlowClientIsBoundedWhenResumeDisabled() {
+        ReflectionTestUtils.setField(registry, "enabled", false);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicInteger received = new AtomicInteger();
+        BaseSubscriber<ServerSentEvent<String>> client = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(ServerSentEvent<String> event) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            protected void hookOnError(Throwable throwable) {
+                error.set(throwable);
+            }
+        };
+        registry.start(Flux.range(1, 20).map(String::valueOf)).subscribe(client);
+        client.request(Long.MAX_VALUE);
+
+        assertNotNull(error.get(), "积压超过 max-frames 后连接应以错误结束");
+        assertEquals(4, received.get(), "只写出已缓冲的帧");
+    }
+
+    @Test
+    public void testNeverSubscribedStreamIsEvicted() throws InterruptedException {
+        ReflectionTestUtils.setField(registry, "disconnectGraceMs", 20L);
+        AtomicInteger subscriptions = new AtomicInteger();
+        registry.start(Flux.just("a").doOnSubscribe(s -> subscriptions.incrementAndGet()));
+        assertEquals(1, registry.size());
+
+        Thread.sleep(100);
+        registry.evictFinished();
+
+        assertEquals(0, registry.size());
+        assertEquals(0, subscriptions.get());
+    }
+
+    @Test
+    public void testReconnectWithinGracePeriodKeepsGenerating() throws InterruptedException {
+        ReflectionTestUtils.setField(registry, "disconnectGraceMs", 100L);
+        ReflectionTestUtils.setField(registry, "maxFrames", 100);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> frames = Flux.range(1, 20).delayElements(Duration.ofMillis(10)).map(String::valueOf)
+                .concatWith(Flux.just("[DONE]")).doOnCancel(() -> cancelled.set(true));
+
+        List<ServerSentEvent<String>> first = registry.start(frames).take(2).collectList().block(Duration.ofSeconds(5));
+        Thread.sleep(30);
+        List<ServerSentEvent<String>> resumed = registry.resume(first.get(1).id()).collectList().block(Duration.ofSeconds(5));
+
+        assertFalse(cancelled.get());
+        assertEquals("[DONE]", resumed.get(resumed.size() - 1).data());
+    }
+}
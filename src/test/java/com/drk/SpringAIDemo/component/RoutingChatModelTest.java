@@ -0,0 +1,268 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.tools.DateTimeTools;
+import com.drk.SpringAIDemo.tools.TimingTools;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 多模型路由测试类，后端为本地的 OpenAI 兼容桩服务
+ * @Author drk
+ * @Date 2026/10/18 22:20
+ * @Version 1.0
+ */
+public class RoutingChatModelTest {
+
+    private static final Pattern TOOL_NAME = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*read_file)\"");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void testSlowPrimaryIsHedged() {
+        ChatModel fast = stub("fast", 0, 200);
+        // 预热 HTTP 客户端，避免首次调用的初始化耗时影响计时
+        fast.call(new Prompt("warm up"));
+        RoutingChatModel model = routing(true, Map.of(
+                "slow", stub("slow", 1500, 200),
+                "fast", fast));
+
+        long start = System.nanoTime();
+        ChatResponse response = model.call(new Prompt("hi"));
+
+        assertEquals("fast", response.getResult().getOutput().getText());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1200);
+        assertEquals(1.0, meterRegistry.counter("chat.routing.hedges").count());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.wins", "backend", "fast").count());
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() {
+        RoutingChatModel model = routing(true, Map.of(
+                "primary", stub("primary", 0, 200),
+                "secondary", stub("secondary", 0, 200)));
+
+        assertEquals("primary", model.call(new Prompt("hi")).getResult().getOutput().getText());
+        assertEquals(0.0, meterRegistry.counter("chat.routing.hedges").count());
+    }
+
+    @Test
+    public void testToolPromptIsHedgedAndToolRunsOnceOnWinner() {
+        // 与 ChatConfig 一致：路由模型 + ToolCallbackRegistry 的 advisor，每个请求都带 MCP 工具
+        McpSyncClient client = mock(McpSyncClient.class);
+        when(client.getClientInfo()).thenReturn(new McpSchema.Implementation("spring-ai-mcp-client - fs", "1.0"));
+        when(client.listTools()).thenReturn(new McpSchema.ListToolsResult(List.of(new McpSchema.Tool("read_file", "读取文件",
+                new McpSchema.JsonSchema("object", Map.of("path", Map.of("type", "string")), List.of("path"), null, null, null))), null));
+        when(client.callTool(any())).thenReturn(new McpSchema.CallToolResult(List.of(new McpSchema.TextContent("ok")), false));
+        @SuppressWarnings("unchecked")
+        ObjectProvider<List<McpSyncClient>> clients = mock(ObjectProvider.class);
+        when(clients.getIfAvailable(any())).thenReturn(List.of(client));
+        ToolCallbackRegistry registry = new ToolCallbackRegistry(meterRegistry, new DateTimeTools(), new TimingTools(), clients);
+        registry.afterSingletonsInstantiated();
+
+        ChatModel fast = stub("fast", 0, 200);
+        fast.call(new Prompt("warm up"));
+        ChatClient chatClient = ChatClient.builder(routing(true, Map.of(
+                        "slow", stub("slow", 800, 200),
+                        "fast", fast)))
+                .defaultAdvisors(registry.advisor())
+                .build();
+
+        assertEquals("fast", chatClient.prompt("读取 a.txt").call().content());
+        String streamed = chatClient.prompt("读取 a.txt").stream().content()
+                .collect(Collectors.joining())
+                .block(Duration.ofSeconds(10));
+        assertEquals("fast", streamed);
+
+        // 落败的后端不执行工具，胜出的后端返回工具调用后只执行一次
+        verify(client, times(2)).callTool(any());
+        assertEquals(2.0, meterRegistry.counter("chat.routing.hedges").count());
+    }
+
+    @Test
+    public void testBackendPromptDisablesInternalToolExecution() {
+        Prompt prompt = new Prompt("hi", ToolCallingChatOptions.builder().toolCallbacks(List.of()).build());
+
+        Prompt backendPrompt = RoutingChatModel.withoutInternalToolExecution(prompt);
+
+        assertEquals(Boolean.FALSE, ((ToolCallingChatOptions) backendPrompt.getOptions()).getInternalToolExecutionEnabled());
+        assertNull(((ToolCallingChatOptions) prompt.getOptions()).getInternalToolExecutionEnabled());
+        Prompt external = new Prompt("hi", ToolCallingChatOptions.builder().internalToolExecutionEnabled(false).build());
+        assertSame(external, RoutingChatModel.withoutInternalToolExecution(external));
+    }
+
+    @Test
+    public void testCallFallsBackOnError() {
+        RoutingChatModel model = routing(false, Map.of(
+                "broken", stub("broken", 0, 500),
+                "healthy", stub("healthy", 0, 200)));
+
+        assertEquals("healthy", model.call(new Prompt("hi")).getResult().getOutput().getText());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.errors", "backend", "broken").count());
+    }
+
+    @Test
+    public void testStreamFallsBackBeforeFirstToken() {
+        RoutingChatModel model = routing(false, Map.of(
+                "broken", stub("broken", 0, 500),
+                "healthy", stub("healthy", 0, 200)));
+
+        String text = model.stream(new Prompt("hi"))
+                .map(response -> response.getResult() == null || response.getResult().getOutput().getText() == null
+                        ? "" : response.getResult().getOutput().getText())
+                .collect(Collectors.joining())
+                .block(Duration.ofSeconds(10));
+
+        assertEquals("healthy", text);
+    }
+
+    @Test
+    public void testRouteOrdersByObservedPercentile() {
+        RoutingChatModel model = routing(false, Map.of(
+                "a", stub("a", 0, 200),
+                "b", stub("b", 0, 200)));
+        List<RoutingChatModel.Backend> initial = model.route(false);
+        assertEquals("a", initial.get(0).name());
+
+        for (int i = 0; i < 3; i++) {
+            initial.get(0).record(TimeUnit.MILLISECONDS.toNanos(900), false, meterRegistry);
+            initial.get(1).record(TimeUnit.MILLISECONDS.toNanos(100), false, meterRegistry);
+        }
+
+        assertEquals("b", model.route(false).get(0).name());
+        assertEquals(Duration.ofMillis(100), model.hedgeDelay(model.route(false).get(0), false));
+    }
+
+    @Test
+    public void testLatencyWindowPercentile() {
+        RoutingChatModel.LatencyWindow window = new RoutingChatModel.LatencyWindow(4);
+        for (long sample : new long[]{50, 10, 20, 30, 40}) {
+            window.record(sample);
+        }
+
+        assertEquals(4, window.size());
+        // 最早的 50 已被覆盖
+        assertEquals(40, window.percentile(0.95));
+        assertEquals(10, window.percentile(0.25));
+    }
+
+    private RoutingChatModel routing(boolean hedge, Map<String, ChatModel> backends) {
+        // Map.of 无序，按名称固定优先级
+        Map<String, ChatModel> ordered = new LinkedHashMap<>();
+        backends.keySet().stream().sorted((x, y) -> order(x) - order(y)).forEach(name -> ordered.put(name, backends.get(name)));
+        return new RoutingChatModel(ordered, new RoutingChatModel.Settings(
+                hedge, 0.95, Duration.ofMillis(200), Duration.ofMillis(10), 3, 10), meterRegistry);
+    }
+
+    private static int order(String name) {
+        return List.of("slow", "primary", "broken", "a", "fast", "secondary", "healthy", "b").indexOf(name);
+    }
+
+    /**
+     * 启动一个 OpenAI 兼容的桩服务，返回固定内容
+     */
+    private ChatModel stub(String content, long delayMs, int status) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/v1/chat/completions", exchange -> {
+                String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                sleep(delayMs);
+                boolean stream = request.contains("\"stream\":true");
+                Matcher tool = TOOL_NAME.matcher(request);
+                // 请求带工具且还没有工具结果时，像真实模型一样先返回工具调用
+                boolean callTool = tool.find() && !request.contains("\"role\":\"tool\"");
+                String body;
+                if (status != 200) {
+                    body = "{\"error\":{\"message\":\"stub failure\"}}";
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                } else if (callTool && stream) {
+                    body = "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\""
+                            + tool.group(1) + "\",\"arguments\":\"{\\\"path\\\":\\\"a.txt\\\"}\"}}]},\"finish_reason\":null}]}\n\n"
+                            + "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"tool_calls\"}]}\n\ndata: [DONE]\n\n";
+                    exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                } else if (callTool) {
+                    body = "{\"id\":\"1\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":null,\"tool_calls\":[{\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\""
+                            + tool.group(1) + "\",\"arguments\":\"{\\\"path\\\":\\\"a.txt\\\"}\"}}]},\"finish_reason\":\"tool_calls\"}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}";
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                } else if (stream) {
+                    body = "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\""
+                            + content + "\"},\"finish_reason\":null}]}\n\ndata: [DONE]\n\n";
+                    exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                } else {
+                    body = "{\"id\":\"1\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                            + content + "\"},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}";
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                try {
+                    exchange.sendResponseHeaders(status, bytes.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(bytes);
+                    }
+                } catch (IOException e) {
+                    // 对冲落败的请求已被客户端取消
+                }
+            });
+            server.start();
+            servers.add(server);
+            OpenAiApi api = OpenAiApi.builder()
+                    .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                    .apiKey("stub")
+                    .build();
+            return OpenAiChatModel.builder()
+                    .openAiApi(api)
+                    .defaultOptions(OpenAiChatOptions.builder().model("stub").build())
+                    .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 语义响应缓存测试类
+ * @Author drk
+ * @Date 2026/10/18 20:40
+ * @Version 1.0
+ */
+public class SemanticResponseCacheTest {
+
+    private static final Map<String, float[]> EMBEDDINGS = Map.of(
+            "今天天气怎么样", new float[]{1f, 0f, 0f},
+            "今天天气如何", new float[]{0.99f, 0.1f, 0f},
+            "讲个笑话", new float[]{0f, 1f, 0f},
+            "请告诉我张伟出演过的5部电影", new float[]{0f, 0.6f, 0.8f},
+            "请告诉我张玮出演过的5部电影", new float[]{0f, 0.61f, 0.79f});
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private SemanticResponseCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> EMBEDDINGS.get(invocation.<String>getArgument(0)));
+        cache = new SemanticResponseCache(embeddingModel, meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "endpoints", Set.of("ask2"));
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.95);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+    }
+
+    @Test
+    public void testNearDuplicatePromptHitsCache() {
+        assertEquals("reply-1", cache.get("ask2", "今天天气怎么样", null, this::call));
+        assertEquals("reply-1", cache.get("ask2", "今天天气如何", null, this::call));
+        assertEquals("reply-2", cache.get("ask2", "讲个笑话", null, this::call));
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, meterRegistry.counter("chat.semantic.cache.requests", "endpoint", "ask2", "result", "hit").count());
+        assertEquals(2.0, meterRegistry.counter("chat.semantic.cache.requests", "endpoint", "ask2", "result", "miss").count());
+        assertEquals(3, meterRegistry.get("chat.semantic.cache.lookup").timer().count());
+    }
+
+    @Test
+    public void testEndpointNotOptedInIsNotCached() {
+        cache.get("ask", "今天天气怎么样", null, this::call);
+        cache.get("ask", "今天天气怎么样", null, this::call);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDifferentOptionsDoNotMatch() {
+        cache.get("ask2", "今天天气怎么样", "A", this::call);
+        cache.get("ask2", "今天天气怎么样", "B", this::call);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testNearDuplicateEntityNamesMiss() {
+        ReflectionTestUtils.setField(cache, "endpoints", Set.of("films"));
+        String zhangWei = "请告诉我张伟出演过的5部电影";
+        String zhangWei2 = "请告诉我张玮出演过的5部电影";
+        assertTrue(SemanticResponseCache.dot(SemanticResponseCache.normalize(EMBEDDINGS.get(zhangWei)),
+                SemanticResponseCache.normalize(EMBEDDINGS.get(zhangWei2))) > 0.95, "两个名字的向量足以命中");
+
+        assertEquals("reply-1", cache.get("films", zhangWei, SemanticResponseCache.exactEntity("films", "张伟"), this::call));
+        assertEquals("reply-2", cache.get("films", zhangWei2, SemanticResponseCache.exactEntity("films", "张玮"), this::call));
+        assertEquals("reply-1", cache.get("films", zhangWei, SemanticResponseCache.exactEntity("films", " 张伟 "), this::call));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testExpiredAndOverflowEntriesAreEvicted() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 1);
+        cache.get("ask2", "今天天气怎么样", null, this::call);
+        cache.get("ask2", "讲个笑话", null, this::call);
+        // 容量为 1，第一条已被淘汰
+        cache.get("ask2", "今天天气怎么样", null, this::call);
+        assertEquals(3, calls.get());
+        assertEquals(1.0, meterRegistry.get("chat.semantic.cache.size").gauge().value());
+
+        ReflectionTestUtils.setField(cache, "ttlSeconds", -1L);
+        cache.get("ask2", "今天天气怎么样", null, this::call);
+        assertEquals(4, calls.get());
+    }
+
+    private String call() {
+        return "reply-" + calls.incrementAndGet();
+    }
+}
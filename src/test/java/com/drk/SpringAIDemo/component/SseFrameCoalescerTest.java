@@ -0,0 +1,70 @@
+package com.drk.SpringAIDemo.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SSE 分帧合并测试类
+ * @Author drk
+ * @Date 2026/10/18 19:00
+ * @Version 1.0
+ */
+public class SseFrameCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SseFrameCoalescer coalescer;
+
+    @BeforeEach
+    public void setUp() {
+        coalescer = new SseFrameCoalescer(meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "maxBytes", 8);
+        ReflectionTestUtils.setField(coalescer, "maxLatencyMs", 50L);
+    }
+
+    @Test
+    public void testBurstIsSplitByBytesWithoutLosingContent() {
+        List<String> frames = coalescer.coalesce(Flux.just("ab", "cd", "ef", "gh", "ij", "k"), "test").collectList().block();
+
+        assertEquals("abcdefghijk", String.join("", frames));
+        assertEquals(List.of("abcdefgh", "ijk"), frames);
+        assertEquals(6.0, meterRegistry.get("chat.stream.tokens").counter().count());
+        assertEquals(2.0, meterRegistry.get("chat.stream.frames").counter().count());
+        assertEquals(11.0, meterRegistry.get("chat.stream.frame.bytes").summary().totalAmount());
+    }
+
+    @Test
+    public void testSlowTokensAreFlushedAfterLatency() {
+        Flux<String> tokens = Flux.just("a", "b").concatWith(Flux.just("c").delaySubscription(Duration.ofMillis(200)));
+
+        List<String> frames = coalescer.coalesce(tokens, "test").collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("ab", "c"), frames);
+    }
+
+    @Test
+    public void testErrorIsPropagatedAfterBufferedFrames() {
+        Flux<String> tokens = Flux.just("a", "b").concatWith(Flux.error(new IllegalStateException("boom")));
+
+        List<String> received = coalescer.coalesce(tokens, "test")
+                .onErrorResume(e -> Flux.just("error:" + e.getMessage()))
+                .collectList().block();
+
+        assertEquals("error:boom", received.get(received.size() - 1));
+    }
+
+    @Test
+    public void testUtf8Length() {
+        assertEquals(1, SseFrameCoalescer.utf8Length("a"));
+        assertEquals(3, SseFrameCoalescer.utf8Length("你"));
+        assertEquals(4, SseFrameCoalescer.utf8Length("😀"));
+    }
+}
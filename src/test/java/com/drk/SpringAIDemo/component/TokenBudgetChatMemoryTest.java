@@ -0,0 +1,143 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import com.drk.SpringAIDemo.utils.MessageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按 token 预算裁剪的对话记忆测试类
+ * @Author drk
+ * @Date 2026/10/19 16:10
+ * @Version 1.0
+ */
+public class TokenBudgetChatMemoryTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final ChatMemoryWriteBehindBuffer writeBehindBuffer = mock(ChatMemoryWriteBehindBuffer.class);
+    private final ChatMemoryArchive chatMemoryArchive = mock(ChatMemoryArchive.class);
+    private final InMySqlChatMemory inMySqlChatMemory = new InMySqlChatMemory(chatMessageService, mock(ChatSessionService.class), objectMapper,
+            writeBehindBuffer, mock(ChatMemoryCache.class), mock(TokenCountEstimator.class), chatMemoryArchive,
+            new MessageCodec(objectMapper, "json"));
+    private final TokenBudgetChatMemory chatMemory = new TokenBudgetChatMemory(inMySqlChatMemory, chatMessageService,
+            writeBehindBuffer, chatMemoryArchive);
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(chatMemory, "maxTokens", 10);
+        ReflectionTestUtils.setField(chatMemory, "pageSize", 50);
+        when(writeBehindBuffer.pendingSnapshot("c1")).thenReturn(List.of());
+    }
+
+    @Test
+    public void testStoredHistoryIsReturnedOldestFirst() {
+        // 数据库按时间倒序返回
+        when(chatMessageService.listLatestWithinTokens(eq("c1"), eq(10), eq(50), anyCollection()))
+                .thenReturn(List.of(entity(3L, "ASSISTANT", "回答", 3), entity(2L, "USER", "问题", 3)));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        assertEquals(List.of("问题", "回答"), texts(messages));
+        verify(chatMemoryArchive).rehydrate("c1");
+    }
+
+    @Test
+    public void testSummaryIsPrependedAndCountsAgainstBudget() {
+        ChatMessageEntity summary = entity(1L, "SYSTEM", "摘要", 4);
+        summary.setMetadata(ChatMemoryCompactor.SUMMARY_METADATA);
+        when(chatMessageService.getSummary("c1")).thenReturn(summary);
+        when(chatMessageService.listLatestWithinTokens(eq("c1"), eq(6), eq(50), anyCollection()))
+                .thenReturn(List.of(entity(3L, "ASSISTANT", "回答", 3), entity(2L, "USER", "问题", 3)));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        assertEquals(List.of("摘要", "问题", "回答"), texts(messages));
+        assertEquals(MessageType.SYSTEM, messages.get(0).getMessageType());
+        // 摘要已单独读取，分页时跳过
+        verify(chatMessageService).listLatestWithinTokens(eq("c1"), eq(6), eq(50), eq(Set.of(1L)));
+    }
+
+    @Test
+    public void testSummaryOverBudgetIsDropped() {
+        ChatMessageEntity summary = entity(1L, "SYSTEM", "过长的摘要", 11);
+        summary.setMetadata(ChatMemoryCompactor.SUMMARY_METADATA);
+        when(chatMessageService.getSummary("c1")).thenReturn(summary);
+        when(chatMessageService.listLatestWithinTokens(eq("c1"), eq(10), eq(50), anyCollection()))
+                .thenReturn(List.of(entity(2L, "USER", "问题", 3)));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        assertEquals(List.of("问题"), texts(messages));
+        verify(chatMessageService).listLatestWithinTokens(eq("c1"), eq(10), eq(50), eq(Set.of()));
+    }
+
+    @Test
+    public void testPendingMessagesAreCountedFirstAndSkippedInStore() {
+        // 已刷入数据库但仍在缓冲快照中的消息带有 id，未刷入的没有
+        when(writeBehindBuffer.pendingSnapshot("c1"))
+                .thenReturn(List.of(entity(5L, "USER", "新问题", 3), entity(null, "ASSISTANT", "新回答", 2)));
+        when(chatMessageService.listLatestWithinTokens(eq("c1"), eq(5), eq(50), anyCollection()))
+                .thenReturn(List.of(entity(4L, "ASSISTANT", "旧回答", 3)));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        assertEquals(List.of("旧回答", "新问题", "新回答"), texts(messages));
+        verify(chatMessageService).listLatestWithinTokens(eq("c1"), eq(5), eq(50), eq(Set.of(5L)));
+    }
+
+    @Test
+    public void testPendingMessagesExhaustingBudgetSkipStore() {
+        when(writeBehindBuffer.pendingSnapshot("c1"))
+                .thenReturn(List.of(entity(null, "USER", "较早", 6), entity(null, "ASSISTANT", "最新", 6)));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        // 只保留放得下的最新一条，不再查询数据库
+        assertEquals(List.of("最新"), texts(messages));
+        verify(chatMessageService, never()).listLatestWithinTokens(anyString(), anyInt(), anyInt(), anyCollection());
+    }
+
+    @Test
+    public void testMissingTokenCountIsFree() {
+        when(writeBehindBuffer.pendingSnapshot("c1")).thenReturn(List.of(entity(null, "USER", "未计数", null)));
+        when(chatMessageService.listLatestWithinTokens(eq("c1"), eq(10), eq(50), anyCollection())).thenReturn(List.of());
+
+        assertEquals(List.of("未计数"), texts(chatMemory.get("c1")));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    private static ChatMessageEntity entity(Long id, String type, String content, Integer tokenCount) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId("c1");
+        entity.setMessageType(type);
+        entity.setContent(content);
+        entity.setTokenCount(tokenCount);
+        entity.setCreatedAt(LocalDateTime.of(2026, 10, 1, 9, 30));
+        return entity;
+    }
+}
@@ -0,0 +1,125 @@
+package com.drk.SpringAIDemo.component;
+
+import com.drk.SpringAIDemo.tools.DateTimeTools;
+import com.drk.SpringAIDemo.tools.TimingTools;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 工具回调注册表测试类
+ * @Author drk
+ * @Date 2026/10/19 00:55
+ * @Version 1.0
+ */
+public class ToolCallbackRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private McpSyncClient client;
+    private ToolCallbackRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        client = mock(McpSyncClient.class);
+        when(client.getClientInfo()).thenReturn(new McpSchema.Implementation("spring-ai-mcp-client - fs", "1.0"));
+        when(client.listTools()).thenReturn(new McpSchema.ListToolsResult(List.of(tool("read_file")), null));
+        when(client.callTool(any())).thenReturn(new McpSchema.CallToolResult(List.of(new McpSchema.TextContent("ok")), false));
+
+        @SuppressWarnings("unchecked")
+        ObjectProvider<List<McpSyncClient>> clients = mock(ObjectProvider.class);
+        when(clients.getIfAvailable(any())).thenReturn(List.of(client));
+        registry = new ToolCallbackRegistry(meterRegistry, new DateTimeTools(), new TimingTools(), clients);
+        registry.afterSingletonsInstantiated();
+    }
+
+    @Test
+    public void testLocalToolsBuiltOnce() {
+        ToolCallback[] first = registry.localTools(DateTimeTools.class);
+        assertSame(first, registry.localTools(DateTimeTools.class));
+        assertEquals("getCurrentDateTime", first[0].getToolDefinition().name());
+        assertSame(first[0].getToolDefinition(), first[0].getToolDefinition());
+        assertThrows(IllegalArgumentException.class, () -> registry.localTools(String.class));
+    }
+
+    @Test
+    public void testToolCallRecordsDuration() {
+        registry.localTools(DateTimeTools.class)[0].call("{}");
+        registry.mcpTools().get(0).call("{}");
+
+        assertEquals(1, meterRegistry.get("chat.tool.duration").tag("tool", "getCurrentDateTime")
+                .tag("source", "local").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("chat.tool.duration").tag("source", "mcp")
+                .tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testToolsChangedReplacesOnlyThatClient() {
+        ToolCallback before = registry.mcpTools().get(0);
+        assertTrue(before.getToolDefinition().name().endsWith("read_file"));
+        assertTrue(before.getToolDefinition().inputSchema().contains("path"));
+
+        registry.onToolsChanged("other", List.of(tool("ignored")));
+        assertSame(before, registry.mcpTools().get(0));
+
+        registry.onToolsChanged("fs", List.of(tool("read_file"), tool("write_file")));
+        assertEquals(2, registry.mcpTools().size());
+        assertTrue(registry.mcpTools().get(1).getToolDefinition().name().endsWith("write_file"));
+    }
+
+    @Test
+    public void testAdvisorAddsMcpToolsWithoutOverriding() {
+        AtomicReference<Prompt> captured = new AtomicReference<>();
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                captured.set(prompt);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(call(prompt));
+            }
+        };
+        ChatClient chatClient = ChatClient.builder(stub)
+                .defaultOptions(ToolCallingChatOptions.builder().internalToolExecutionEnabled(false).build())
+                .defaultAdvisors(registry.advisor())
+                .build();
+
+        chatClient.prompt("hi").options(ToolCallingChatOptions.builder()
+                        .toolCallbacks(registry.localTools(DateTimeTools.class))
+                        .internalToolExecutionEnabled(false)
+                        .build())
+                .call().content();
+
+        ToolCallingChatOptions options = (ToolCallingChatOptions) captured.get().getOptions();
+        List<String> names = options.getToolCallbacks().stream().map(callback -> callback.getToolDefinition().name()).toList();
+        assertEquals(2, names.size());
+        assertEquals("getCurrentDateTime", names.get(0));
+        assertTrue(names.get(1).endsWith("read_file"));
+    }
+
+    private static McpSchema.Tool tool(String name) {
+        return new McpSchema.Tool(name, "文件工具",
+                new McpSchema.JsonSchema("object", Map.<String, Object>of("path", Map.of("type", "string")), List.of("path"), false, null, null));
+    }
+}
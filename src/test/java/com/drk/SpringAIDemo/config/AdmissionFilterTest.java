@@ -0,0 +1,87 @@
+package com.drk.SpringAIDemo.config;
+
+import com.drk.SpringAIDemo.component.ChatAdmissionControl;
+import com.drk.SpringAIDemo.component.ChatAdmissionControl.EndpointClass;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServlet;
+import org.apache.catalina.filters.RemoteIpFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 模型接口准入过滤器测试类
+ * @Author drk
+ * @Date 2026/10/19 15:30
+ * @Version 1.0
+ */
+public class AdmissionFilterTest {
+
+    private final ChatAdmissionControl admissionControl = mock(ChatAdmissionControl.class);
+
+    @BeforeEach
+    public void setUp() {
+        when(admissionControl.isEnabled()).thenReturn(true);
+        when(admissionControl.acquire(any(), anyString())).thenReturn(mock(ChatAdmissionControl.Permit.class));
+    }
+
+    @Test
+    public void testClientsBehindProxyAreKeyedByForwardedAddress() throws Exception {
+        AdmissionFilter filter = new AdmissionFilter(admissionControl, new ObjectMapper(), "");
+
+        // RemoteIpFilter 与 server.forward-headers-strategy=native 使用的 RemoteIpValve 规则相同
+        behindRemoteIpFilter(filter).doFilter(proxied("203.0.113.7"), new MockHttpServletResponse());
+        behindRemoteIpFilter(filter).doFilter(proxied("198.51.100.9"), new MockHttpServletResponse());
+
+        verify(admissionControl).acquire(EndpointClass.BLOCKING, "203.0.113.7");
+        verify(admissionControl).acquire(EndpointClass.BLOCKING, "198.51.100.9");
+        verify(admissionControl, never()).acquire(any(), eq("10.0.0.5"));
+    }
+
+    @Test
+    public void testForwardedHeaderFromUntrustedClientIsIgnored() throws Exception {
+        AdmissionFilter filter = new AdmissionFilter(admissionControl, new ObjectMapper(), "");
+        MockHttpServletRequest request = proxied("203.0.113.7");
+        request.setRemoteAddr("198.51.100.20");
+
+        behindRemoteIpFilter(filter).doFilter(request, new MockHttpServletResponse());
+
+        verify(admissionControl).acquire(EndpointClass.BLOCKING, "198.51.100.20");
+    }
+
+    @Test
+    public void testConfiguredHeaderTakesPrecedenceOverAddress() throws Exception {
+        AdmissionFilter filter = new AdmissionFilter(admissionControl, new ObjectMapper(), "X-User-Id");
+        MockHttpServletRequest withUser = request();
+        withUser.addHeader("X-User-Id", "u42");
+
+        filter.doFilter(withUser, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(admissionControl).acquire(EndpointClass.BLOCKING, "u42");
+        verify(admissionControl).acquire(EndpointClass.BLOCKING, "10.0.0.5");
+    }
+
+    private static MockFilterChain behindRemoteIpFilter(AdmissionFilter filter) {
+        return new MockFilterChain(new HttpServlet() {
+        }, new RemoteIpFilter(), filter);
+    }
+
+    private static MockHttpServletRequest proxied(String clientAddress) {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Forwarded-For", clientAddress);
+        return request;
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chat/ask");
+        // 内网的反向代理
+        request.setRemoteAddr("10.0.0.5");
+        return request;
+    }
+}
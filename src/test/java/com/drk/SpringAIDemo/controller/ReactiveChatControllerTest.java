@@ -0,0 +1,89 @@
+package com.drk.SpringAIDemo.controller;
+
+import com.drk.SpringAIDemo.component.BlockingCallScheduler;
+import com.drk.SpringAIDemo.component.ChatMetrics;
+import com.drk.SpringAIDemo.exception.ModelTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 对话接口响应式版本测试类
+ * @Author drk
+ * @Date 2026/10/19 00:40
+ * @Version 1.0
+ */
+public class ReactiveChatControllerTest {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicReference<List<String>> chunks = new AtomicReference<>(List.of("hello", " world"));
+    private final AtomicReference<Duration> chunkDelay = new AtomicReference<>(Duration.ofMillis(5));
+    private ReactiveChatController controller;
+
+    @BeforeEach
+    public void setUp() {
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException("响应式接口不应使用阻塞调用");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.fromIterable(chunks.get())
+                        .delayElements(chunkDelay.get())
+                        .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))))
+                        .doOnCancel(() -> cancelled.set(true));
+            }
+        };
+        ChatMetrics chatMetrics = new ChatMetrics(new SimpleMeterRegistry(), new JTokkitTokenCountEstimator());
+        controller = new ReactiveChatController(ChatClient.builder(stub).build(), mock(ImageModel.class), chatMetrics,
+                new BlockingCallScheduler(false));
+        ReflectionTestUtils.setField(controller, "timeoutMs", 1000L);
+    }
+
+    @Test
+    public void testAskAggregatesStreamedResponse() {
+        ChatResponse response = controller.ask("hi").block(Duration.ofSeconds(5));
+
+        assertEquals("hello world", response.getResult().getOutput().getText());
+        assertEquals("hello world", controller.ask2("hi").block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void testFilmsConvertsJoinedReply() {
+        chunks.set(List.of("{\"actor\": \"周星驰\", ", "\"movies\": [\"功夫\", \"少林足球\"]}"));
+
+        String films = controller.films("周星驰").block(Duration.ofSeconds(5));
+
+        assertTrue(films.contains("周星驰"));
+        assertTrue(films.contains("少林足球"));
+    }
+
+    @Test
+    public void testTimeoutCancelsModelStream() {
+        chunkDelay.set(Duration.ofMillis(300));
+        ReflectionTestUtils.setField(controller, "timeoutMs", 100L);
+
+        assertThrows(ModelTimeoutException.class, () -> controller.ask2("hi").block(Duration.ofSeconds(5)));
+        assertTrue(cancelled.get());
+    }
+}
@@ -0,0 +1,202 @@
+package com.drk.SpringAIDemo.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.mapper.ChatMessageMapper;
+import com.drk.SpringAIDemo.service.ChatMessageService;
+import com.drk.SpringAIDemo.service.ChatSessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话消息服务测试类
+ * @Author drk
+ * @Date 2026/10/19 10:20
+ * @Version 1.0
+ */
+public class ChatMessageServiceImplTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private final ChatMessageMapper chatMessageMapper = mock(ChatMessageMapper.class);
+    private final ChatSessionService chatSessionService = mock(ChatSessionService.class);
+    private final ChatMessageServiceImpl chatMessageService = new ChatMessageServiceImpl();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(chatMessageService, "baseMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(chatMessageService, "chatSessionService", chatSessionService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportGivesFreshIdWhenIdIsTakenByAnotherConversation() {
+        // 另一个库导出的消息，自增ID与本库其他对话的消息冲突
+        when(chatMessageMapper.selectList(any(Wrapper.class))).thenReturn(List.of(entity(1L, "other", "USER", "别的对话", T0)));
+        ChatMessageEntity imported = entity(1L, "c1", "USER", "你好", T0.plusMinutes(1));
+        ChatMessageEntity unique = entity(2L, "c1", "ASSISTANT", "你好呀", T0.plusMinutes(2));
+
+        List<ChatMessageEntity> fresh = chatMessageService.importMessages(List.of(imported, unique));
+
+        assertEquals(List.of(imported, unique), fresh);
+        assertNull(imported.getId());
+        assertEquals(2L, unique.getId());
+        ArgumentCaptor<List<ChatMessageEntity>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageMapper).insertBatch(inserted.capture());
+        assertEquals(2, inserted.getValue().size());
+        verify(chatMessageMapper, never()).insertIgnoreBatch(anyList());
+        verify(chatSessionService).recordMessages(fresh);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportSkipsMessagesAlreadyInSameConversation() {
+        // ID 1 已在同一对话中；ID 5 曾被改写为新ID导入，只能按内容识别
+        when(chatMessageMapper.selectList(any(Wrapper.class))).thenReturn(List.of(
+                entity(1L, "c1", "USER", "你好", T0),
+                entity(5L, "other", "USER", "别的对话", T0)));
+        when(chatMessageMapper.selectByContentKeys(anyList())).thenReturn(List.of(entity(900L, "c1", "ASSISTANT", "你好呀", T0.plusMinutes(1))));
+        ChatMessageEntity sameId = entity(1L, "c1", "USER", "你好", T0);
+        ChatMessageEntity reimported = entity(5L, "c1", "ASSISTANT", "你好呀", T0.plusMinutes(1));
+        ChatMessageEntity edited = entity(6L, "c1", "ASSISTANT", "内容不同", T0.plusMinutes(1));
+
+        List<ChatMessageEntity> fresh = chatMessageService.importMessages(List.of(sameId, reimported, edited));
+
+        assertEquals(List.of(edited), fresh);
+        verify(chatMessageMapper).insertBatch(List.of(edited));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportDedupesIdsWithinBatch() {
+        when(chatMessageMapper.selectList(any(Wrapper.class))).thenReturn(List.of());
+        ChatMessageEntity first = entity(7L, "c1", "USER", "a", T0);
+        ChatMessageEntity second = entity(7L, "c2", "USER", "b", T0);
+
+        chatMessageService.importMessages(List.of(first, second));
+
+        assertEquals(7L, first.getId());
+        assertNull(second.getId());
+    }
+
+    @Test
+    public void testReplaceWithSummaryDeletesCompactedAndInsertsSummary() {
+        List<ChatMessageEntity> compacted = List.of(entity(1L, "c1", "USER", "a", T0), entity(2L, "c1", "ASSISTANT", "b", T0));
+        ChatMessageEntity summary = entity(2L, "c1", "SYSTEM", "摘要", T0);
+        when(chatMessageMapper.delete(any(Wrapper.class))).thenReturn(2);
+        SimpleTransactionStatus status = new SimpleTransactionStatus();
+
+        assertTrue(transactional(status).replaceWithSummary("c1", compacted, summary));
+
+        verify(chatMessageMapper).insertWithId(summary);
+        verify(chatSessionService).adjustMessageCount("c1", -1);
+        assertFalse(status.isRollbackOnly());
+    }
+
+    @Test
+    public void testReplaceWithSummaryRollsBackWhenMessagesWereDeletedConcurrently() {
+        List<ChatMessageEntity> compacted = List.of(entity(1L, "c1", "USER", "a", T0), entity(2L, "c1", "ASSISTANT", "b", T0));
+        // 另一个压缩任务已删除其中一条
+        when(chatMessageMapper.delete(any(Wrapper.class))).thenReturn(1);
+        SimpleTransactionStatus status = new SimpleTransactionStatus();
+
+        assertFalse(transactional(status).replaceWithSummary("c1", compacted, entity(2L, "c1", "SYSTEM", "摘要", T0)));
+
+        assertTrue(status.isRollbackOnly());
+        verify(chatMessageMapper, never()).insertWithId(any());
+        verify(chatSessionService, never()).adjustMessageCount(anyString(), anyInt());
+    }
+
+    @Test
+    public void testLatestWithinTokensStopsAtFirstMessageOverBudget() {
+        when(chatMessageMapper.selectPageBefore("c1", null, null, 50)).thenReturn(List.of(
+                tokens(entity(10L, "c1", "ASSISTANT", "回答", T0.plusMinutes(3)), 3),
+                tokens(entity(9L, "c1", "USER", "问题", T0.plusMinutes(2)), 4),
+                tokens(entity(8L, "c1", "ASSISTANT", "长回答", T0.plusMinutes(1)), 5),
+                tokens(entity(7L, "c1", "USER", "短", T0), 1)));
+
+        List<ChatMessageEntity> latest = chatMessageService.listLatestWithinTokens("c1", 8, 50, List.of());
+
+        // 更早的消息即使放得下也不取，保证上下文连续
+        assertEquals(List.of(10L, 9L), latest.stream().map(ChatMessageEntity::getId).toList());
+    }
+
+    @Test
+    public void testLatestWithinTokensSkipsGivenIdsWithoutCountingThem() {
+        when(chatMessageMapper.selectPageBefore("c1", null, null, 50)).thenReturn(List.of(
+                tokens(entity(10L, "c1", "SYSTEM", "摘要", T0.plusMinutes(2)), 100),
+                tokens(entity(9L, "c1", "USER", "问题", T0.plusMinutes(1)), 4),
+                tokens(entity(8L, "c1", "ASSISTANT", "回答", T0), null)));
+
+        List<ChatMessageEntity> latest = chatMessageService.listLatestWithinTokens("c1", 4, 50, List.of(10L));
+
+        assertEquals(List.of(9L, 8L), latest.stream().map(ChatMessageEntity::getId).toList());
+    }
+
+    @Test
+    public void testLatestWithinTokensPagesWithCursorOfLastRow() {
+        when(chatMessageMapper.selectPageBefore("c1", null, null, 2)).thenReturn(List.of(
+                tokens(entity(10L, "c1", "ASSISTANT", "回答", T0.plusMinutes(3)), 1),
+                tokens(entity(9L, "c1", "USER", "问题", T0.plusMinutes(2)), 1)));
+        when(chatMessageMapper.selectPageBefore("c1", T0.plusMinutes(2), 9L, 2)).thenReturn(List.of(
+                tokens(entity(8L, "c1", "ASSISTANT", "旧回答", T0.plusMinutes(1)), 1)));
+
+        List<ChatMessageEntity> latest = chatMessageService.listLatestWithinTokens("c1", 100, 2, List.of());
+
+        assertEquals(List.of(10L, 9L, 8L), latest.stream().map(ChatMessageEntity::getId).toList());
+        // 不满一页说明已到最早的消息
+        verify(chatMessageMapper, times(2)).selectPageBefore(eq("c1"), any(), any(), eq(2));
+    }
+
+    @Test
+    public void testSummaryIsNotQueriedWhenCompactionDisabled() {
+        when(chatMessageMapper.selectSummary("c1")).thenReturn(entity(1L, "c1", "SYSTEM", "摘要", T0));
+
+        assertNull(chatMessageService.getSummary("c1"));
+        verify(chatMessageMapper, never()).selectSummary(anyString());
+
+        ReflectionTestUtils.setField(chatMessageService, "compactionEnabled", true);
+        assertEquals("摘要", chatMessageService.getSummary("c1").getContent());
+    }
+
+    /**
+     * 经过 @Transactional 拦截器调用，使 TransactionAspectSupport.currentTransactionStatus() 可用
+     */
+    private ChatMessageService transactional(SimpleTransactionStatus status) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        ProxyFactory proxyFactory = new ProxyFactory(chatMessageService);
+        proxyFactory.addAdvice(new TransactionInterceptor((TransactionManager) transactionManager, new AnnotationTransactionAttributeSource()));
+        return (ChatMessageService) proxyFactory.getProxy();
+    }
+
+    static ChatMessageEntity entity(Long id, String conversationId, String type, String content, LocalDateTime createdAt) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setConversationId(conversationId);
+        entity.setMessageType(type);
+        entity.setContent(content);
+        entity.setCreatedAt(createdAt);
+        return entity;
+    }
+
+    private static ChatMessageEntity tokens(ChatMessageEntity entity, Integer tokenCount) {
+        entity.setTokenCount(tokenCount);
+        return entity;
+    }
+}
@@ -0,0 +1,143 @@
+package com.drk.SpringAIDemo.service.impl;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.drk.SpringAIDemo.entity.ChatSessionEntity;
+import com.drk.SpringAIDemo.mapper.ChatSessionMapper;
+import com.drk.SpringAIDemo.pojo.ConversationPage;
+import com.drk.SpringAIDemo.pojo.ConversationSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话摘要服务测试类
+ * @Author drk
+ * @Date 2026/10/19 14:10
+ * @Version 1.0
+ */
+public class ChatSessionServiceImplTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private final ChatSessionMapper chatSessionMapper = mock(ChatSessionMapper.class);
+    private final ChatSessionServiceImpl chatSessionService = new ChatSessionServiceImpl();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(chatSessionService, "baseMapper", chatSessionMapper);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordMessagesMergesDeltasPerConversation() {
+        chatSessionService.recordMessages(List.of(
+                message("c1", "USER", "第一个问题"),
+                message("c1", "ASSISTANT", "回答"),
+                message("c2", "ASSISTANT", "只有回答"),
+                message("c1", "USER", "第二个问题")));
+
+        ArgumentCaptor<List<ChatSessionEntity>> deltas = ArgumentCaptor.forClass(List.class);
+        verify(chatSessionMapper).upsertBatch(deltas.capture());
+        List<ChatSessionEntity> upserted = deltas.getValue();
+        assertEquals(2, upserted.size());
+
+        ChatSessionEntity c1 = upserted.get(0);
+        assertEquals("c1", c1.getSessionId());
+        assertEquals(3, c1.getMessageCount());
+        // 标题取本批第一条用户消息，预览取最后一条
+        assertEquals("第一个问题", c1.getSessionName());
+        assertEquals("第二个问题", c1.getLastMessage());
+
+        ChatSessionEntity c2 = upserted.get(1);
+        assertEquals("c2", c2.getSessionId());
+        assertEquals(1, c2.getMessageCount());
+        assertEquals("新对话", c2.getSessionName());
+        // 没有用户消息时不覆盖已有预览
+        assertNull(c2.getLastMessage());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordMessagesAbbreviatesTitleAndPreview() {
+        String longQuestion = "问".repeat(80);
+        chatSessionService.recordMessages(List.of(message("c1", "USER", longQuestion)));
+
+        ArgumentCaptor<List<ChatSessionEntity>> deltas = ArgumentCaptor.forClass(List.class);
+        verify(chatSessionMapper).upsertBatch(deltas.capture());
+        ChatSessionEntity c1 = deltas.getValue().get(0);
+        assertEquals(30, c1.getSessionName().length());
+        assertEquals(50, c1.getLastMessage().length());
+    }
+
+    @Test
+    public void testRecordMessagesSkipsEmptyBatch() {
+        chatSessionService.recordMessages(List.of());
+
+        verify(chatSessionMapper, never()).upsertBatch(any());
+    }
+
+    @Test
+    public void testFullPageReturnsCursorOfLastRow() {
+        when(chatSessionMapper.selectPageBefore(null, null, 2))
+                .thenReturn(List.of(session(9L, "c9", T0.plusMinutes(5)), session(7L, "c7", T0)));
+
+        ConversationPage page = chatSessionService.listConversations(null, 2);
+
+        assertEquals(List.of("c9", "c7"), page.getItems().stream().map(ConversationSummary::getConversationId).toList());
+        assertEquals(T0 + "_7", page.getNextCursor());
+    }
+
+    @Test
+    public void testCursorIsPassedToNextPageAndShortPageEnds() {
+        when(chatSessionMapper.selectPageBefore(T0, 7L, 2)).thenReturn(List.of(session(3L, "c3", T0.minusMinutes(1))));
+
+        ConversationPage page = chatSessionService.listConversations(T0 + "_7", 2);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testEmptyPageHasNoCursor() {
+        when(chatSessionMapper.selectPageBefore(null, null, 20)).thenReturn(List.of());
+
+        ConversationPage page = chatSessionService.listConversations(null, 20);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testInvalidCursorAndSizeAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> chatSessionService.listConversations("not-a-cursor", 20));
+        assertThrows(IllegalArgumentException.class, () -> chatSessionService.listConversations(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> chatSessionService.listConversations(null, -1));
+        verify(chatSessionMapper, never()).selectPageBefore(any(), any(), anyInt());
+    }
+
+    private static ChatMessageEntity message(String conversationId, String type, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setConversationId(conversationId);
+        entity.setMessageType(type);
+        entity.setContent(content);
+        return entity;
+    }
+
+    private static ChatSessionEntity session(Long id, String sessionId, LocalDateTime updatedAt) {
+        ChatSessionEntity entity = new ChatSessionEntity();
+        entity.setId(id);
+        entity.setSessionId(sessionId);
+        entity.setSessionName(sessionId);
+        entity.setMessageCount(1);
+        entity.setUpdatedAt(updatedAt);
+        return entity;
+    }
+}
@@ -0,0 +1,79 @@
+package com.drk.SpringAIDemo.utils;
+
+import com.drk.SpringAIDemo.entity.ChatMessageEntity;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.metadata.Usage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对话消息编解码器测试类
+ * @Author drk
+ * @Date 2026/10/18 17:20
+ * @Version 1.0
+ */
+public class MessageCodecTest {
+
+    private final JsonMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "smile"})
+    public void testAssistantToolCallsAndUsageRoundTrip(String format) {
+        MessageCodec codec = new MessageCodec(objectMapper, format);
+        AssistantMessage original = new AssistantMessage("查询天气",
+                Map.of("finishReason", "TOOL_CALLS", "usage", new DefaultUsage(12, 5, 17)),
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "getWeather", "{\"city\":\"杭州\"}")));
+
+        ChatMessageEntity entity = new ChatMessageEntity();
+        codec.encode(original, entity);
+        AssistantMessage decoded = (AssistantMessage) codec.decode(entity);
+
+        assertEquals("smile".equals(format), entity.getMetadataBin() != null);
+        assertEquals("smile".equals(format), entity.getMetadata() == null);
+        assertEquals("查询天气", decoded.getText());
+        assertEquals(original.getToolCalls(), decoded.getToolCalls());
+        assertEquals("TOOL_CALLS", decoded.getMetadata().get("finishReason"));
+        Usage usage = (Usage) decoded.getMetadata().get("usage");
+        assertEquals(12, usage.getPromptTokens());
+        assertEquals(17, usage.getTotalTokens());
+    }
+
+    @Test
+    public void testToolResponseRoundTrip() {
+        MessageCodec codec = new MessageCodec(objectMapper, "smile");
+        ToolResponseMessage original = new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-1", "getWeather", "晴")));
+
+        ChatMessageEntity entity = new ChatMessageEntity();
+        codec.encode(original, entity);
+        Message decoded = codec.decode(entity);
+
+        assertEquals(original.getResponses(), ((ToolResponseMessage) decoded).getResponses());
+    }
+
+    @Test
+    public void testLegacyMetadataJsonStillReadable() {
+        MessageCodec codec = new MessageCodec(objectMapper, "smile");
+
+        Message decoded = codec.decode("USER", "你好", "{\"messageType\": \"USER\", \"source\": \"web\"}", null);
+
+        assertInstanceOf(UserMessage.class, decoded);
+        assertEquals("web", decoded.getMetadata().get("source"));
+        assertEquals("你好", decoded.getText());
+    }
+
+    @Test
+    public void testUnknownFormatRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageCodec(objectMapper, "xml"));
+    }
+}